@@ -0,0 +1,430 @@
+package com.humbletools.smalljavatools;
+import java.util.Arrays;
+
+/**
+ * CSVAggregation est le rsultat d'un CSVAggregator : un groupe par valeur distincte des cellules cls, numrot de 0  getGroupCount() exclu dans l'ordre
+ * de premire apparition. Les valeurs cls sont codes par un CSVDictionary par cellule cl, et les groupes sont retrouvs  partir des codes par une
+ * table  adressage ouvert ; les comptes, sommes, minimums et maximums sont rangs dans des tableaux primitifs indexs par groupe et par mesure. Les
+ * mesures DOUBLE sont conserves sous forme de bits dans ces mmes tableaux long[].</br></br> Une CSVAggregation n'est pas thread-safe ; deux agrgations
+ * cres par le mme CSVAggregator se fusionnent par merge.
+ *
+ * @author lmadeuf
+ */
+public final class CSVAggregation {
+
+	private static final int INITIAL_CAPACITY = 16;
+
+	private final int[] keyCells;
+	private final CSVSchema measures;
+	private final int measureCount;
+	private final boolean[] floating;
+	private final int[] distinctCells;
+	private final int distinctPrecision;
+	private final CSVDictionary[] dictionaries;
+
+	private int groupCount;
+	private int[] groupCodes;
+	private int[] slots;
+	private long[] counts;
+	private long[] valueCounts;
+	private long[] sums;
+	private long[] minimums;
+	private long[] maximums;
+	private CSVHyperLogLog[] sketches;
+
+	private final int[] rowCodes;
+	private CSVRowCursor loadedRow;
+
+	CSVAggregation(final int[] keyCells, final CSVSchema measures, final int measureCount, final int[] distinctCells, final int distinctPrecision) {
+		this.keyCells = keyCells;
+		this.measures = measures;
+		this.measureCount = measureCount;
+		this.distinctCells = distinctCells;
+		this.distinctPrecision = distinctPrecision;
+		floating = new boolean[measureCount];
+		for (int measure = 0; measure < measureCount; measure++) {
+			floating[measure] = measures.getColumnType(measure) == CSVColumnType.DOUBLE;
+		}
+		dictionaries = new CSVDictionary[keyCells.length];
+		for (int k = 0; k < keyCells.length; k++) {
+			dictionaries[k] = new CSVDictionary();
+		}
+		rowCodes = new int[keyCells.length];
+		if (keyCells.length > 1) {
+			groupCodes = new int[INITIAL_CAPACITY * keyCells.length];
+			slots = new int[INITIAL_CAPACITY * 2];
+		}
+		counts = new long[INITIAL_CAPACITY];
+		valueCounts = new long[INITIAL_CAPACITY * measureCount];
+		sums = new long[INITIAL_CAPACITY * measureCount];
+		minimums = new long[INITIAL_CAPACITY * measureCount];
+		maximums = new long[INITIAL_CAPACITY * measureCount];
+		sketches = new CSVHyperLogLog[INITIAL_CAPACITY * distinctCells.length];
+	}
+
+	/**
+	 * Agrge la ligne courante du curseur, lue directement dans le tampon
+	 *
+	 * @throws IllegalStateException si une cellule cl ou mesure est absente ou mal forme
+	 */
+	void add(final CSVRowCursor row) {
+		for (final int keyCell : keyCells) {
+			checkCell(row, keyCell, "cl");
+		}
+		for (final int distinctCell : distinctCells) {
+			checkCell(row, distinctCell, "de compte distinct");
+		}
+		for (int k = 0; k < keyCells.length; k++) {
+			rowCodes[k] = row.getCode(keyCells[k], dictionaries[k]);
+		}
+		final int group = findGroup(rowCodes);
+		counts[group]++;
+		for (int measure = 0; measure < measureCount; measure++) {
+			if (!measures.isNull(row, measure)) {
+				if (floating[measure]) {
+					addDouble(group, measure, measures.decodeDouble(row, measure), row.getLineNumber());
+				} else {
+					addLong(group, measure, measures.decodeLong(row, measure), row.getLineNumber());
+				}
+			}
+		}
+		for (int distinct = 0; distinct < distinctCells.length; distinct++) {
+			if (row.getCellLength(distinctCells[distinct]) > 0) {
+				getSketch(group, distinct).add(row.getCell(distinctCells[distinct]));
+			}
+		}
+	}
+
+	/**
+	 * Agrge une ligne dj dcoupe en cellules (lecture parallle, numro de ligne inconnu)
+	 */
+	void add(final String[] cells) {
+		if (loadedRow == null) {
+			loadedRow = new CSVRowCursor(null, ';');
+		}
+		loadedRow.load(cells, 0L);
+		add(loadedRow);
+	}
+
+	/**
+	 * Ajoute  cette agrgation les groupes de other, cre par le mme CSVAggregator. Les groupes de other absents de cette agrgation y sont ajouts
+	 *  la suite ; other n'est pas modifie.
+	 *
+	 * @throws IllegalStateException si la somme d'une mesure entire dpasse la capacit d'un long
+	 */
+	public void merge(final CSVAggregation other) {
+		if ((other == null) || (other.measures != measures) || (other.measureCount != measureCount) || !Arrays.equals(other.keyCells, keyCells)
+				|| !Arrays.equals(other.distinctCells, distinctCells) || (other.distinctPrecision != distinctPrecision)) {
+			throw new IllegalArgumentException("L'agrgation  fusionner doit tre cre par le mme CSVAggregator, avec les mmes mesures !");
+		}
+		for (int otherGroup = 0; otherGroup < other.groupCount; otherGroup++) {
+			for (int k = 0; k < keyCells.length; k++) {
+				rowCodes[k] = dictionaries[k].code(other.dictionaries[k].getValue(other.getGroupCode(otherGroup, k)));
+			}
+			final int group = findGroup(rowCodes);
+			counts[group] += other.counts[otherGroup];
+			for (int measure = 0; measure < measureCount; measure++) {
+				final int otherIndex = (otherGroup * measureCount) + measure;
+				final long otherValueCount = other.valueCounts[otherIndex];
+				if (otherValueCount == 0L) {
+					continue;
+				}
+				final int index = (group * measureCount) + measure;
+				if (valueCounts[index] == 0L) {
+					sums[index] = other.sums[otherIndex];
+					minimums[index] = other.minimums[otherIndex];
+					maximums[index] = other.maximums[otherIndex];
+				} else if (floating[measure]) {
+					final double sum = Double.longBitsToDouble(sums[index]) + Double.longBitsToDouble(other.sums[otherIndex]);
+					final double minimum = Math.min(Double.longBitsToDouble(minimums[index]), Double.longBitsToDouble(other.minimums[otherIndex]));
+					final double maximum = Math.max(Double.longBitsToDouble(maximums[index]), Double.longBitsToDouble(other.maximums[otherIndex]));
+					sums[index] = Double.doubleToRawLongBits(sum);
+					minimums[index] = Double.doubleToRawLongBits(minimum);
+					maximums[index] = Double.doubleToRawLongBits(maximum);
+				} else {
+					sums[index] = checkedSum(sums[index], other.sums[otherIndex], measure, 0L);
+					minimums[index] = Math.min(minimums[index], other.minimums[otherIndex]);
+					maximums[index] = Math.max(maximums[index], other.maximums[otherIndex]);
+				}
+				valueCounts[index] += otherValueCount;
+			}
+			for (int distinct = 0; distinct < distinctCells.length; distinct++) {
+				final CSVHyperLogLog otherSketch = other.sketches[(otherGroup * distinctCells.length) + distinct];
+				if (otherSketch != null) {
+					final int index = (group * distinctCells.length) + distinct;
+					if (sketches[index] == null) {
+						sketches[index] = otherSketch.copy();
+					} else {
+						sketches[index].merge(otherSketch);
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Retourne le groupe des codes cls codes, en le crant s'il n'existe pas encore
+	 */
+	private int findGroup(final int[] codes) {
+		if (codes.length == 0) {
+			if (groupCount == 0) {
+				addGroup();
+			}
+			return 0;
+		}
+		if (codes.length == 1) {
+			// les codes du dictionnaire sont attribus dans l'ordre d'apparition, comme les groupes : le code est le groupe
+			if (codes[0] == groupCount) {
+				addGroup();
+			}
+			return codes[0];
+		}
+		int hash = 0;
+		for (final int code : codes) {
+			hash = (31 * hash) + code;
+		}
+		final int mask = slots.length - 1;
+		int slot = mix(hash) & mask;
+		while (slots[slot] != 0) {
+			final int group = slots[slot] - 1;
+			if (matchesGroup(group, codes)) {
+				return group;
+			}
+			slot = (slot + 1) & mask;
+		}
+		final int group = groupCount;
+		addGroup();
+		System.arraycopy(codes, 0, groupCodes, group * codes.length, codes.length);
+		slots[slot] = group + 1;
+		if ((groupCount * 2) > slots.length) {
+			rehash();
+		}
+		return group;
+	}
+
+	private boolean matchesGroup(final int group, final int[] codes) {
+		final int start = group * codes.length;
+		for (int k = 0; k < codes.length; k++) {
+			if (groupCodes[start + k] != codes[k]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private void addGroup() {
+		if (groupCount == counts.length) {
+			final int capacity = groupCount * 2;
+			counts = Arrays.copyOf(counts, capacity);
+			valueCounts = Arrays.copyOf(valueCounts, capacity * measureCount);
+			sums = Arrays.copyOf(sums, capacity * measureCount);
+			minimums = Arrays.copyOf(minimums, capacity * measureCount);
+			maximums = Arrays.copyOf(maximums, capacity * measureCount);
+			sketches = Arrays.copyOf(sketches, capacity * distinctCells.length);
+			if (groupCodes != null) {
+				groupCodes = Arrays.copyOf(groupCodes, capacity * keyCells.length);
+			}
+		}
+		groupCount++;
+	}
+
+	private void rehash() {
+		slots = new int[slots.length * 2];
+		final int mask = slots.length - 1;
+		for (int group = 0; group < groupCount; group++) {
+			int hash = 0;
+			for (int k = 0; k < keyCells.length; k++) {
+				hash = (31 * hash) + groupCodes[(group * keyCells.length) + k];
+			}
+			int slot = mix(hash) & mask;
+			while (slots[slot] != 0) {
+				slot = (slot + 1) & mask;
+			}
+			slots[slot] = group + 1;
+		}
+	}
+
+	private static int mix(final int hash) {
+		final int h = hash * 0x9E3779B9;
+		return h ^ (h >>> 16);
+	}
+
+	private void addLong(final int group, final int measure, final long value, final long lineNumber) {
+		final int index = (group * measureCount) + measure;
+		if (valueCounts[index]++ == 0L) {
+			sums[index] = value;
+			minimums[index] = value;
+			maximums[index] = value;
+		} else {
+			sums[index] = checkedSum(sums[index], value, measure, lineNumber);
+			if (value < minimums[index]) {
+				minimums[index] = value;
+			}
+			if (value > maximums[index]) {
+				maximums[index] = value;
+			}
+		}
+	}
+
+	private void addDouble(final int group, final int measure, final double value, final long lineNumber) {
+		final int index = (group * measureCount) + measure;
+		if (valueCounts[index]++ == 0L) {
+			sums[index] = Double.doubleToRawLongBits(value);
+			minimums[index] = sums[index];
+			maximums[index] = sums[index];
+		} else {
+			sums[index] = Double.doubleToRawLongBits(Double.longBitsToDouble(sums[index]) + value);
+			if (value < Double.longBitsToDouble(minimums[index])) {
+				minimums[index] = Double.doubleToRawLongBits(value);
+			}
+			if (value > Double.longBitsToDouble(maximums[index])) {
+				maximums[index] = Double.doubleToRawLongBits(value);
+			}
+		}
+	}
+
+	private static long checkedSum(final long sum, final long value, final int measure, final long lineNumber) {
+		final long result = sum + value;
+		if (((sum ^ result) & (value ^ result)) < 0L) {
+			throw new IllegalStateException(String.format("Ligne %d, mesure %d : la somme dpasse la capacit d'un long !", lineNumber, measure));
+		}
+		return result;
+	}
+
+	private CSVHyperLogLog getSketch(final int group, final int distinct) {
+		final int index = (group * distinctCells.length) + distinct;
+		if (sketches[index] == null) {
+			sketches[index] = new CSVHyperLogLog(distinctPrecision);
+		}
+		return sketches[index];
+	}
+
+	private int getGroupCode(final int group, final int k) {
+		return (keyCells.length == 1) ? group : groupCodes[(group * keyCells.length) + k];
+	}
+
+	private static void checkCell(final CSVRowCursor row, final int cellIndex, final String role) {
+		if (cellIndex >= row.getCellCount()) {
+			throw new IllegalStateException(String.format("Ligne %d : la cellule %s %d est absente (%d cellules lues) !", row.getLineNumber(), role,
+					cellIndex, row.getCellCount()));
+		}
+	}
+
+	/**
+	 * Retourne le nombre de groupes
+	 */
+	public int getGroupCount() {
+		return groupCount;
+	}
+
+	/**
+	 * Retourne les valeurs des cellules cls du groupe group, dans l'ordre des cellules cls
+	 */
+	public String[] getKey(final int group) {
+		checkGroup(group);
+		final String[] key = new String[keyCells.length];
+		for (int k = 0; k < keyCells.length; k++) {
+			key[k] = dictionaries[k].getValue(getGroupCode(group, k));
+		}
+		return key;
+	}
+
+	/**
+	 * Retourne le nombre de lignes du groupe group
+	 */
+	public long getCount(final int group) {
+		checkGroup(group);
+		return counts[group];
+	}
+
+	/**
+	 * Retourne le nombre de valeurs non vides de la mesure measure dans le groupe group. Si ce nombre est nul, la somme, le minimum et le maximum valent 0.
+	 */
+	public long getValueCount(final int group, final int measure) {
+		return valueCounts[index(group, measure)];
+	}
+
+	/**
+	 * Retourne la somme de la mesure entire (LONG, DECIMAL non mise  l'chelle ou DATE) measure du groupe group
+	 */
+	public long getLongSum(final int group, final int measure) {
+		return sums[longIndex(group, measure)];
+	}
+
+	/**
+	 * Retourne le minimum de la mesure entire measure du groupe group
+	 */
+	public long getLongMin(final int group, final int measure) {
+		return minimums[longIndex(group, measure)];
+	}
+
+	/**
+	 * Retourne le maximum de la mesure entire measure du groupe group
+	 */
+	public long getLongMax(final int group, final int measure) {
+		return maximums[longIndex(group, measure)];
+	}
+
+	/**
+	 * Retourne la somme de la mesure DOUBLE measure du groupe group
+	 */
+	public double getDoubleSum(final int group, final int measure) {
+		return Double.longBitsToDouble(sums[doubleIndex(group, measure)]);
+	}
+
+	/**
+	 * Retourne le minimum de la mesure DOUBLE measure du groupe group
+	 */
+	public double getDoubleMin(final int group, final int measure) {
+		return Double.longBitsToDouble(minimums[doubleIndex(group, measure)]);
+	}
+
+	/**
+	 * Retourne le maximum de la mesure DOUBLE measure du groupe group
+	 */
+	public double getDoubleMax(final int group, final int measure) {
+		return Double.longBitsToDouble(maximums[doubleIndex(group, measure)]);
+	}
+
+	/**
+	 * Retourne l'estimation du nombre de valeurs distinctes non vides du compte distinct distinct dans le groupe group
+	 */
+	public long getDistinctCount(final int group, final int distinct) {
+		checkGroup(group);
+		if ((distinct < 0) || (distinct >= distinctCells.length)) {
+			throw new IndexOutOfBoundsException(String.format("Le compte distinct %d n'existe pas !", distinct));
+		}
+		final CSVHyperLogLog sketch = sketches[(group * distinctCells.length) + distinct];
+		return (sketch != null) ? sketch.estimate() : 0L;
+	}
+
+	private int longIndex(final int group, final int measure) {
+		final int index = index(group, measure);
+		if (floating[measure]) {
+			throw new IllegalArgumentException(String.format("La mesure %d est de type DOUBLE !", measure));
+		}
+		return index;
+	}
+
+	private int doubleIndex(final int group, final int measure) {
+		final int index = index(group, measure);
+		if (!floating[measure]) {
+			throw new IllegalArgumentException(String.format("La mesure %d est de type %s !", measure, measures.getColumnType(measure)));
+		}
+		return index;
+	}
+
+	private int index(final int group, final int measure) {
+		checkGroup(group);
+		if ((measure < 0) || (measure >= measureCount)) {
+			throw new IndexOutOfBoundsException(String.format("La mesure %d n'existe pas !", measure));
+		}
+		return (group * measureCount) + measure;
+	}
+
+	private void checkGroup(final int group) {
+		if ((group < 0) || (group >= groupCount)) {
+			throw new IndexOutOfBoundsException(String.format("Le groupe %d n'existe pas !", group));
+		}
+	}
+}
@@ -0,0 +1,184 @@
+package com.humbletools.smalljavatools;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * CSVAggregator regroupe les lignes d'un fichier CSV selon une ou plusieurs cellules cls (GROUP BY) et calcule pour chaque groupe le nombre de lignes,
+ * la somme, le minimum et le maximum de mesures types, ainsi qu'une estimation du nombre de valeurs distinctes de certaines cellules (CSVHyperLogLog).
+ * Aucune ligne n'est conserve : le rsultat est une CSVAggregation dont les groupes sont stocks dans des tableaux primitifs.</br></br> Avec un CSVParser,
+ * les cellules sont lues directement dans le tampon de lecture, sans allocation par ligne. Avec un ParallelCSVParser, chaque thread de lecture alimente
+ * sa propre agrgation partielle, et les agrgations partielles sont fusionnes  la fin. Des agrgations cres par newAggregation peuvent aussi tre
+ * alimentes sparment (un fichier par agrgation par exemple) puis fusionnes par CSVAggregation.merge.</br></br> Les mesures et les comptes distincts
+ * sont numrots dans leur ordre de dclaration. Exemple : new CSVAggregator(0, 3).addDecimalMeasure(5, 2).addDistinctCount(1).aggregate(parser)
+ *
+ * @author lmadeuf
+ */
+public class CSVAggregator {
+
+	private final int[] keyCells;
+	private final CSVSchema measures = new CSVSchema();
+	private final List<Integer> distinctCells = new ArrayList<Integer>();
+	private int distinctPrecision = CSVHyperLogLog.DEFAULT_PRECISION;
+	private boolean header;
+
+	/**
+	 * Cre un CSVAggregator qui regroupe les lignes selon les cellules keyCells. Sans cellule cl, toutes les lignes forment un seul groupe.
+	 */
+	public CSVAggregator(final int... keyCells) {
+		if (keyCells == null) {
+			throw new IllegalArgumentException("L'argument keyCells doit tre renseign !");
+		}
+		for (final int keyCell : keyCells) {
+			if (keyCell < 0) {
+				throw new IllegalArgumentException("Les cellules cls doivent tre positives !");
+			}
+		}
+		this.keyCells = keyCells.clone();
+	}
+
+	/**
+	 * Ajoute une mesure entire (LONG) sur la cellule cellIndex
+	 */
+	public CSVAggregator addLongMeasure(final int cellIndex) {
+		measures.addLongColumn(cellIndex);
+		return this;
+	}
+
+	/**
+	 * Ajoute une mesure DOUBLE sur la cellule cellIndex
+	 */
+	public CSVAggregator addDoubleMeasure(final int cellIndex) {
+		measures.addDoubleColumn(cellIndex);
+		return this;
+	}
+
+	/**
+	 * Ajoute une mesure DECIMAL de scale dcimales sur la cellule cellIndex, somme sans erreur d'arrondi (valeurs non mises  l'chelle)
+	 */
+	public CSVAggregator addDecimalMeasure(final int cellIndex, final int scale) {
+		measures.addDecimalColumn(cellIndex, scale);
+		return this;
+	}
+
+	/**
+	 * Ajoute une mesure DATE au format pattern sur la cellule cellIndex (jours depuis le 01/01/1970), utile pour son minimum et son maximum
+	 */
+	public CSVAggregator addDateMeasure(final int cellIndex, final String pattern) {
+		measures.addDateColumn(cellIndex, pattern);
+		return this;
+	}
+
+	/**
+	 * Ajoute une estimation du nombre de valeurs distinctes non vides de la cellule cellIndex
+	 */
+	public CSVAggregator addDistinctCount(final int cellIndex) {
+		if (cellIndex < 0) {
+			throw new IllegalArgumentException("L'argument cellIndex doit tre positif !");
+		}
+		distinctCells.add(cellIndex);
+		return this;
+	}
+
+	/**
+	 * Fixe la prcision des CSVHyperLogLog des comptes distincts (CSVHyperLogLog.DEFAULT_PRECISION par dfaut). Chaque groupe dont un compte dpasse
+	 * CSVHyperLogLog.SPARSE_LIMIT valeurs occupe 2^precision octets pour ce compte.
+	 */
+	public CSVAggregator setDistinctPrecision(final int distinctPrecision) {
+		if ((distinctPrecision < 4) || (distinctPrecision > 18)) {
+			throw new IllegalArgumentException("L'argument distinctPrecision doit tre compris entre 4 et 18 !");
+		}
+		this.distinctPrecision = distinctPrecision;
+		return this;
+	}
+
+	/**
+	 * Indique si la premire ligne de donnes (aprs le "sep=" ventuel) est un en-tte,  ne pas agrger
+	 */
+	public CSVAggregator setHeader(final boolean header) {
+		this.header = header;
+		return this;
+	}
+
+	/**
+	 * Cre une agrgation vide pour les cls, mesures et comptes distincts dclars jusqu'ici
+	 */
+	public CSVAggregation newAggregation() {
+		final int[] distincts = new int[distinctCells.size()];
+		for (int i = 0; i < distincts.length; i++) {
+			distincts[i] = distinctCells.get(i);
+		}
+		return new CSVAggregation(keyCells, measures, measures.getColumnCount(), distincts, distinctPrecision);
+	}
+
+	/**
+	 * Agrge toutes les lignes restantes lues par parser
+	 *
+	 * @throws IOException - Si une erreur I/O survient
+	 * @throws IllegalStateException - Si une cellule cl ou mesure est absente ou mal forme, avec la ligne et la colonne en cause
+	 */
+	public CSVAggregation aggregate(final CSVParser parser) throws IOException, IllegalStateException {
+		if (parser == null) {
+			throw new IllegalArgumentException("L'argument parser doit tre renseign !");
+		}
+		final CSVAggregation aggregation = newAggregation();
+		try {
+			if (header && parser.hasNextLine()) {
+				parser.getNextRow();
+			}
+			while (parser.hasNextLine()) {
+				aggregation.add(parser.getNextRow());
+			}
+		} catch (final IllegalStateException ise) {
+			parser.close();
+			throw ise;
+		}
+		return aggregation;
+	}
+
+	/**
+	 * Agrge toutes les lignes du fichier lu par parser sur plusieurs coeurs : chaque thread de lecture agrge ses lignes dans une agrgation partielle, puis
+	 * les agrgations partielles sont fusionnes. Les numros de ligne ne sont pas connus des threads de lecture : les erreurs de dcodage indiquent la
+	 * ligne 0, et l'ordre des groupes dpend de l'ordre de lecture des plages.
+	 *
+	 * @throws IOException - Si une erreur I/O survient
+	 * @throws IllegalStateException - Si une cellule cl ou mesure est absente ou mal forme
+	 */
+	public CSVAggregation aggregate(final ParallelCSVParser parser) throws IOException, IllegalStateException {
+		if (parser == null) {
+			throw new IllegalArgumentException("L'argument parser doit tre renseign !");
+		}
+		final List<CSVAggregation> partials = new ArrayList<CSVAggregation>();
+		final ThreadLocal<CSVAggregation> partial = new ThreadLocal<CSVAggregation>() {
+			@Override
+			protected CSVAggregation initialValue() {
+				final CSVAggregation aggregation = newAggregation();
+				synchronized (partials) {
+					partials.add(aggregation);
+				}
+				return aggregation;
+			}
+		};
+		parser.parse(new CSVRowHandler() {
+			@Override
+			public void handleRow(final String[] cells) {
+				partial.get().add(cells);
+			}
+		}, false, header);
+		if (partials.isEmpty()) {
+			return newAggregation();
+		}
+		final CSVAggregation aggregation = partials.get(0);
+		for (int i = 1; i < partials.size(); i++) {
+			aggregation.merge(partials.get(i));
+		}
+		return aggregation;
+	}
+
+	/**
+	 * Retourne les cellules cls de ce CSVAggregator
+	 */
+	public int[] getKeyCells() {
+		return keyCells.clone();
+	}
+}
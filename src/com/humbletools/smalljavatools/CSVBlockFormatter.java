@@ -0,0 +1,19 @@
+package com.humbletools.smalljavatools;
+import java.io.IOException;
+
+/**
+ * CSVBlockFormatter produit les lignes d'un bloc pour CSVWriter.writeBlocks. Les blocs sont formats simultanment par plusieurs threads : l'implmentation
+ * doit donc tre thread-safe, chaque appel crivant dans son propre CSVWriter en mmoire.
+ *
+ * @author lmadeuf
+ */
+public interface CSVBlockFormatter {
+
+	/**
+	 * crit les lignes du bloc blockIndex
+	 *
+	 * @param blockIndex le rang du bloc, de 0 au nombre de blocs exclu
+	 * @param block le CSVWriter en mmoire qui reoit les lignes du bloc
+	 */
+	void formatBlock(int blockIndex, CSVWriter block) throws IOException;
+}
@@ -0,0 +1,369 @@
+package com.humbletools.smalljavatools;
+import java.io.FileInputStream;
+import java.io.FilterReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.Charset;
+
+/**
+ * CSVCharsets regroupe les dcodeurs rapides utiliss par les parseurs CSV et la dtection automatique de l'encodage d'un fichier.</br></br> Les
+ * encodages sur un octet (CP1252, ISO-8859-1...) sont dcods par une table de 256 caractres, UTF-8 par une boucle ddie ; dans les deux cas les suites
+ * d'octets ASCII sont copies directement. Les autres encodages passent par le CharsetDecoder du JDK.</br></br> La dtection reconnat les BOM UTF-8 et
+ * UTF-16, puis vrifie si les octets non ASCII forment de l'UTF-8 valide ;  dfaut, l'encodage par dfaut CSVParser.DEFAULT_CHARSET est retenu.
+ *
+ * @author lmadeuf
+ */
+public final class CSVCharsets {
+
+	/**
+	 * Valeur  passer comme charset aux constructeurs de CSVParser pour que l'encodage soit dtect  partir du dbut du fichier
+	 */
+	public static final String AUTO_DETECT = "AUTO";
+
+	/**
+	 * Nombre d'octets examins en dbut de fichier pour dtecter l'encodage
+	 */
+	public static final int DETECTION_PROBE_SIZE = 64 * 1024;
+
+	static final String UTF_8 = "UTF-8";
+
+	private static final char REPLACEMENT = '\uFFFD';
+
+	private static final char BYTE_ORDER_MARK = '\uFEFF';
+
+	/**
+	 * Plus petit point de code lgitime pour une squence UTF-8 de chaque longueur (rejette les encodages trop longs)
+	 */
+	private static final int[] MIN_CODE_POINTS = { 0, 0, 0x80, 0x800, 0x10000 };
+
+	private CSVCharsets() {
+	}
+
+	/**
+	 * Dtecte l'encodage du fichier filePath  partir de ses DETECTION_PROBE_SIZE premiers octets
+	 *
+	 * @throws IOException si le fichier ne peut pas tre lu
+	 */
+	public static String detect(final String filePath) throws IOException {
+		final InputStream in = new FileInputStream(filePath);
+		try {
+			final byte[] probe = new byte[DETECTION_PROBE_SIZE];
+			return detect(probe, readFully(in, probe));
+		} finally {
+			in.close();
+		}
+	}
+
+	/**
+	 * Dtecte l'encodage des length premiers octets de bytes. Un BOM dsigne directement l'encodage ; sinon UTF-8 est retenu si des octets non ASCII
+	 * forment des squences UTF-8 valides (une squence tronque en fin de sonde est tolre), et CSVParser.DEFAULT_CHARSET dans tous les autres cas.
+	 */
+	public static String detect(final byte[] bytes, final int length) {
+		if ((length >= 3) && ((bytes[0] & 0xFF) == 0xEF) && ((bytes[1] & 0xFF) == 0xBB) && ((bytes[2] & 0xFF) == 0xBF)) {
+			return UTF_8;
+		}
+		if ((length >= 2) && ((bytes[0] & 0xFF) == 0xFE) && ((bytes[1] & 0xFF) == 0xFF)) {
+			return "UTF-16BE";
+		}
+		if ((length >= 2) && ((bytes[0] & 0xFF) == 0xFF) && ((bytes[1] & 0xFF) == 0xFE)) {
+			return "UTF-16LE";
+		}
+		boolean multiByteFound = false;
+		int i = 0;
+		while (i < length) {
+			final int lead = bytes[i] & 0xFF;
+			if (lead < 0x80) {
+				i++;
+				continue;
+			}
+			final int sequenceLength = utf8SequenceLength(lead);
+			if (sequenceLength == 0) {
+				return CSVParser.DEFAULT_CHARSET;
+			}
+			if ((i + sequenceLength) > length) {
+				break;
+			}
+			for (int j = 1; j < sequenceLength; j++) {
+				if ((bytes[i + j] & 0xC0) != 0x80) {
+					return CSVParser.DEFAULT_CHARSET;
+				}
+			}
+			multiByteFound = true;
+			i += sequenceLength;
+		}
+		return multiByteFound ? UTF_8 : CSVParser.DEFAULT_CHARSET;
+	}
+
+	/**
+	 * Retourne le Reader le plus rapide disponible pour dcoder le flux dans l'encodage charset. Un BOM en tte de flux est ignor, en UTF-8 comme dans les
+	 * encodages UTF-16 et UTF-32 d'ordre d'octets explicite (UTF-16BE, UTF-16LE... retenus par detect()), dont le dcodeur du JDK le conserve.
+	 */
+	static Reader newReader(final InputStream in, final Charset charset) {
+		if (isUtf8(charset) || (singleByteTable(charset) != null)) {
+			return new DecodingReader(in, charset);
+		}
+		final Reader reader = new InputStreamReader(in, charset);
+		final String name = charset.name();
+		// les dcodeurs "UTF-16" et "UTF-32" consomment eux-mmes le BOM
+		if (name.startsWith("UTF-") && !"UTF-16".equals(name) && !"UTF-32".equals(name)) {
+			return new ByteOrderMarkSkippingReader(reader);
+		}
+		return reader;
+	}
+
+	static boolean isUtf8(final Charset charset) {
+		return UTF_8.equals(charset.name());
+	}
+
+	/**
+	 * Retourne la table de dcodage des 256 octets si charset est un encodage sur un octet compatible ASCII, null sinon
+	 */
+	static char[] singleByteTable(final Charset charset) {
+		if (!charset.canEncode() || (charset.newEncoder().maxBytesPerChar() != 1f)) {
+			return null;
+		}
+		final byte[] bytes = new byte[256];
+		for (int i = 0; i < bytes.length; i++) {
+			bytes[i] = (byte) i;
+		}
+		final char[] table = new String(bytes, charset).toCharArray();
+		if (table.length != 256) {
+			return null;
+		}
+		for (int i = 0; i < 0x80; i++) {
+			if (table[i] != i) {
+				return null;
+			}
+		}
+		return table;
+	}
+
+	/**
+	 * Dcode les octets [from, to[ de src avec la table d'un encodage sur un octet et retourne le nombre de caractres crits dans dst
+	 */
+	static int decodeSingleByte(final byte[] src, final int from, final int to, final char[] table, final char[] dst) {
+		int o = 0;
+		for (int i = from; i < to; i++) {
+			final byte b = src[i];
+			dst[o++] = (b >= 0) ? (char) b : table[b & 0xFF];
+		}
+		return o;
+	}
+
+	/**
+	 * Dcode les octets UTF-8 [from, to[ de src et retourne le nombre de caractres crits dans dst, qui doit pouvoir en contenir to - from. Les squences
+	 * invalides ou tronques sont remplaces par U+FFFD.
+	 */
+	static int decodeUtf8(final byte[] src, final int from, final int to, final char[] dst) {
+		int o = 0;
+		int i = from;
+		while (i < to) {
+			int b = src[i];
+			while (b >= 0) {
+				dst[o++] = (char) b;
+				if (++i == to) {
+					return o;
+				}
+				b = src[i];
+			}
+			final int lead = b & 0xFF;
+			final int sequenceLength = utf8SequenceLength(lead);
+			if ((sequenceLength == 0) || ((i + sequenceLength) > to)) {
+				dst[o++] = REPLACEMENT;
+				i++;
+				continue;
+			}
+			int codePoint = lead & (0xFF >> (sequenceLength + 1));
+			boolean valid = true;
+			for (int j = 1; j < sequenceLength; j++) {
+				final int next = src[i + j];
+				valid &= (next & 0xC0) == 0x80;
+				codePoint = (codePoint << 6) | (next & 0x3F);
+			}
+			if (!valid || (codePoint < MIN_CODE_POINTS[sequenceLength]) || ((codePoint >= 0xD800) && (codePoint <= 0xDFFF)) || (codePoint > 0x10FFFF)) {
+				dst[o++] = REPLACEMENT;
+				i++;
+			} else if (codePoint < 0x10000) {
+				dst[o++] = (char) codePoint;
+				i += sequenceLength;
+			} else {
+				dst[o++] = Character.highSurrogate(codePoint);
+				dst[o++] = Character.lowSurrogate(codePoint);
+				i += sequenceLength;
+			}
+		}
+		return o;
+	}
+
+	/**
+	 * Retourne la fin de la dernire squence UTF-8 complte parmi les octets [from, to[, pour ne pas couper une squence entre deux lectures
+	 */
+	static int completeUtf8End(final byte[] src, final int from, final int to) {
+		for (int i = to - 1; (i >= from) && (i >= (to - 3)); i--) {
+			final int b = src[i] & 0xFF;
+			if ((b & 0xC0) != 0x80) {
+				final int sequenceLength = utf8SequenceLength(b);
+				return ((sequenceLength > 1) && ((i + sequenceLength) > to)) ? i : to;
+			}
+		}
+		return to;
+	}
+
+	/**
+	 * Longueur de la squence UTF-8 introduite par l'octet lead, 0 si lead ne peut pas commencer une squence
+	 */
+	private static int utf8SequenceLength(final int lead) {
+		if (lead < 0x80) {
+			return 1;
+		} else if (lead < 0xC2) {
+			return 0;
+		} else if (lead < 0xE0) {
+			return 2;
+		} else if (lead < 0xF0) {
+			return 3;
+		} else if (lead < 0xF5) {
+			return 4;
+		}
+		return 0;
+	}
+
+	static int readFully(final InputStream in, final byte[] bytes) throws IOException {
+		int length = 0;
+		while (length < bytes.length) {
+			final int read = in.read(bytes, length, bytes.length - length);
+			if (read < 0) {
+				break;
+			}
+			length += read;
+		}
+		return length;
+	}
+
+	/**
+	 * Reader ignorant le BOM U+FEFF ventuel en tte du Reader dcod
+	 */
+	private static final class ByteOrderMarkSkippingReader extends FilterReader {
+		private boolean startOfInput = true;
+
+		private ByteOrderMarkSkippingReader(final Reader in) {
+			super(in);
+		}
+
+		@Override
+		public int read() throws IOException {
+			int c = super.read();
+			if (startOfInput && (c >= 0)) {
+				startOfInput = false;
+				if (c == BYTE_ORDER_MARK) {
+					c = super.read();
+				}
+			}
+			return c;
+		}
+
+		@Override
+		public int read(final char[] cbuf, final int off, final int len) throws IOException {
+			final int count = super.read(cbuf, off, len);
+			if (!startOfInput || (count <= 0)) {
+				return count;
+			}
+			startOfInput = false;
+			if (cbuf[off] != BYTE_ORDER_MARK) {
+				return count;
+			}
+			if (count == 1) {
+				return read(cbuf, off, len);
+			}
+			System.arraycopy(cbuf, off + 1, cbuf, off, count - 1);
+			return count - 1;
+		}
+	}
+
+	/**
+	 * Reader dcodant par blocs un flux en UTF-8 ou dans un encodage sur un octet
+	 */
+	private static final class DecodingReader extends Reader {
+		private static final int BUFFER_SIZE = 64 * 1024;
+
+		private final InputStream in;
+		private final char[] table;
+		private final boolean utf8;
+		private final byte[] bytes = new byte[BUFFER_SIZE];
+		private final char[] chars = new char[BUFFER_SIZE];
+		private int byteStart;
+		private int byteEnd;
+		private int charPosition;
+		private int charEnd;
+		private boolean endOfInput;
+		private boolean startOfInput = true;
+
+		private DecodingReader(final InputStream in, final Charset charset) {
+			this.in = in;
+			utf8 = isUtf8(charset);
+			table = utf8 ? null : singleByteTable(charset);
+		}
+
+		@Override
+		public int read(final char[] cbuf, final int off, final int len) throws IOException {
+			if (len == 0) {
+				return 0;
+			}
+			if ((charPosition == charEnd) && !fill()) {
+				return -1;
+			}
+			final int count = Math.min(len, charEnd - charPosition);
+			System.arraycopy(chars, charPosition, cbuf, off, count);
+			charPosition += count;
+			return count;
+		}
+
+		/**
+		 * Dcode le bloc d'octets suivant. Retourne false si le flux est puis.
+		 */
+		private boolean fill() throws IOException {
+			while (charPosition == charEnd) {
+				if (endOfInput && (byteStart == byteEnd)) {
+					return false;
+				}
+				if (!endOfInput) {
+					System.arraycopy(bytes, byteStart, bytes, 0, byteEnd - byteStart);
+					byteEnd -= byteStart;
+					byteStart = 0;
+					final int read = in.read(bytes, byteEnd, bytes.length - byteEnd);
+					if (read < 0) {
+						endOfInput = true;
+					} else {
+						byteEnd += read;
+					}
+				}
+				if (startOfInput && utf8) {
+					if (((byteEnd - byteStart) < 3) && !endOfInput) {
+						continue;
+					}
+					if (((byteEnd - byteStart) >= 3) && ((bytes[byteStart] & 0xFF) == 0xEF) && ((bytes[byteStart + 1] & 0xFF) == 0xBB)
+							&& ((bytes[byteStart + 2] & 0xFF) == 0xBF)) {
+						byteStart += 3;
+					}
+				}
+				startOfInput = false;
+				if (utf8) {
+					final int end = endOfInput ? byteEnd : completeUtf8End(bytes, byteStart, byteEnd);
+					charEnd = decodeUtf8(bytes, byteStart, end, chars);
+					byteStart = end;
+				} else {
+					charEnd = decodeSingleByte(bytes, byteStart, byteEnd, table, chars);
+					byteStart = byteEnd;
+				}
+				charPosition = 0;
+			}
+			return true;
+		}
+
+		@Override
+		public void close() throws IOException {
+			in.close();
+		}
+	}
+}
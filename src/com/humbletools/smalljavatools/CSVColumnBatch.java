@@ -0,0 +1,190 @@
+package com.humbletools.smalljavatools;
+
+/**
+ * CSVColumnBatch est un lot de lignes stock par colonnes, rempli par CSVParser.readBatch. Seules les colonnes dclares dans le CSVSchema (la projection)
+ * sont dcodes : les autres cellules sont seulement franchies par l'analyse de la ligne. Chaque colonne est un vecteur primitif de taille fixe, allou une
+ * fois pour toutes : un mme lot est rutilis d'un appel  l'autre, si bien que la mmoire consomme ne dpend pas de la taille du fichier.</br></br>
+ * Vecteurs par type de colonne : int[] pour INT, DATE (jours depuis le 01/01/1970) et ENUM (codes du dictionnaire du schma), long[] pour LONG et DECIMAL
+ * (valeur non mise  l'chelle), double[] pour DOUBLE. Seules les getRowCount() premires cases de chaque vecteur sont significatives.
+ *
+ * @author lmadeuf
+ */
+public final class CSVColumnBatch {
+
+	/**
+	 * Nombre de lignes par dfaut d'un lot
+	 */
+	public static final int DEFAULT_BATCH_SIZE = 64 * 1024;
+
+	private final CSVSchema schema;
+	private final int capacity;
+	private final int[][] intColumns;
+	private final long[][] longColumns;
+	private final double[][] doubleColumns;
+	private final boolean[][] nullColumns;
+	private int rowCount;
+	private long firstLineNumber;
+
+	/**
+	 * Cre un lot de DEFAULT_BATCH_SIZE lignes pour les colonnes du schma
+	 */
+	public CSVColumnBatch(final CSVSchema schema) {
+		this(schema, DEFAULT_BATCH_SIZE);
+	}
+
+	/**
+	 * Cre un lot de capacity lignes pour les colonnes du schma
+	 */
+	public CSVColumnBatch(final CSVSchema schema, final int capacity) {
+		if (schema == null) {
+			throw new IllegalArgumentException("L'argument schema doit tre renseign !");
+		}
+		if (capacity <= 0) {
+			throw new IllegalArgumentException("L'argument capacity doit tre strictement positif !");
+		}
+		this.schema = schema;
+		this.capacity = capacity;
+		final int columnCount = schema.getColumnCount();
+		intColumns = new int[columnCount][];
+		longColumns = new long[columnCount][];
+		doubleColumns = new double[columnCount][];
+		nullColumns = new boolean[columnCount][];
+		for (int column = 0; column < columnCount; column++) {
+			switch (schema.getColumnType(column)) {
+			case LONG:
+			case DECIMAL:
+				longColumns[column] = new long[capacity];
+				break;
+			case DOUBLE:
+				doubleColumns[column] = new double[capacity];
+				break;
+			default:
+				intColumns[column] = new int[capacity];
+				break;
+			}
+			nullColumns[column] = new boolean[capacity];
+		}
+	}
+
+	/**
+	 * Vide le lot sans librer ses vecteurs
+	 */
+	void clear() {
+		rowCount = 0;
+		firstLineNumber = 0L;
+	}
+
+	/**
+	 * Retourne true si le lot ne peut plus recevoir de ligne
+	 */
+	boolean isFull() {
+		return rowCount == capacity;
+	}
+
+	/**
+	 * Dcode les colonnes du schma depuis la ligne courante du curseur et les ajoute au lot
+	 *
+	 * @throws IllegalStateException si une cellule est absente ou mal forme
+	 */
+	void add(final CSVRowCursor row) {
+		if (rowCount == 0) {
+			firstLineNumber = row.getLineNumber();
+		}
+		final int index = rowCount;
+		for (int column = 0; column < nullColumns.length; column++) {
+			final boolean isNull = schema.isNull(row, column);
+			nullColumns[column][index] = isNull;
+			if (intColumns[column] != null) {
+				intColumns[column][index] = isNull ? 0 : (int) schema.decodeLong(row, column);
+			} else if (longColumns[column] != null) {
+				longColumns[column][index] = isNull ? 0L : schema.decodeLong(row, column);
+			} else {
+				doubleColumns[column][index] = isNull ? 0d : schema.decodeDouble(row, column);
+			}
+		}
+		rowCount++;
+	}
+
+	/**
+	 * Retourne le schma (la projection) de ce lot
+	 */
+	public CSVSchema getSchema() {
+		return schema;
+	}
+
+	/**
+	 * Retourne le nombre maximal de lignes du lot
+	 */
+	public int getCapacity() {
+		return capacity;
+	}
+
+	/**
+	 * Retourne le nombre de lignes actuellement dans le lot
+	 */
+	public int getRowCount() {
+		return rowCount;
+	}
+
+	/**
+	 * Retourne le numro (au sens de getNumberOfLinesRead()) de la premire ligne du lot
+	 */
+	public long getFirstLineNumber() {
+		return firstLineNumber;
+	}
+
+	/**
+	 * Retourne le vecteur de la colonne INT, DATE ou ENUM column
+	 */
+	public int[] getIntColumn(final int column) {
+		if (intColumns[column] == null) {
+			throw wrongVector(column, "int[]");
+		}
+		return intColumns[column];
+	}
+
+	/**
+	 * Retourne le vecteur de la colonne LONG ou DECIMAL column
+	 */
+	public long[] getLongColumn(final int column) {
+		if (longColumns[column] == null) {
+			throw wrongVector(column, "long[]");
+		}
+		return longColumns[column];
+	}
+
+	/**
+	 * Retourne le vecteur de la colonne DOUBLE column
+	 */
+	public double[] getDoubleColumn(final int column) {
+		if (doubleColumns[column] == null) {
+			throw wrongVector(column, "double[]");
+		}
+		return doubleColumns[column];
+	}
+
+	/**
+	 * Retourne le vecteur indiquant, pour chaque ligne, si la cellule de la colonne column tait vide
+	 */
+	public boolean[] getNullColumn(final int column) {
+		return nullColumns[column];
+	}
+
+	/**
+	 * Retourne l'instance canonique de la colonne ENUM column  la ligne row du lot, null si la cellule tait vide
+	 */
+	public String getString(final int column, final int row) {
+		if (schema.getColumnType(column) != CSVColumnType.ENUM) {
+			throw new IllegalArgumentException(String.format("La colonne %d est de type %s et non ENUM !", column, schema.getColumnType(column)));
+		}
+		if (row >= rowCount) {
+			throw new IndexOutOfBoundsException(String.format("Le lot ne contient que %d lignes !", rowCount));
+		}
+		return nullColumns[column][row] ? null : schema.getDictionary(column).getValue(intColumns[column][row]);
+	}
+
+	private IllegalArgumentException wrongVector(final int column, final String vector) {
+		return new IllegalArgumentException(String.format("La colonne %d est de type %s et n'est pas stocke dans un %s !", column, schema.getColumnType(column),
+				vector));
+	}
+}
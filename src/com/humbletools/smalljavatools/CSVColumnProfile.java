@@ -0,0 +1,429 @@
+package com.humbletools.smalljavatools;
+import java.util.Arrays;
+
+/**
+ * CSVColumnProfile est le profil d'une colonne tabli par un CSVProfiler : nombre de cellules renseignes, vides ou absentes, longueurs, valeurs
+ * extrmes, type dduit, nombre estim de valeurs distinctes (CSVHyperLogLog) et quantiles estims des valeurs numriques (CSVQuantileSketch).
+ * </br></br> Le type est dduit en liminant au fil de la lecture les types que contredit une cellule renseigne : une colonne reste LONG tant que toutes
+ * ses cellules sont des entiers, DECIMAL tant qu'elles sont des dcimaux simples, etc. Chaque type n'est donc essay que jusqu' sa premire
+ * contradiction, et la mmoire occupe ne dpend pas du nombre de lignes.
+ *
+ * @author lmadeuf
+ */
+public final class CSVColumnProfile {
+
+	/**
+	 * Nombre maximal de chiffres significatifs d'un DECIMAL, pour que sa valeur non mise  l'chelle tienne dans un long
+	 */
+	private static final int MAX_DECIMAL_DIGITS = 18;
+
+	/**
+	 * Puissances de 10 jusqu' 10^18, toutes reprsentables exactement par un double
+	 */
+	private static final double[] POWERS_OF_TEN = { 1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11, 1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18 };
+
+	private final int index;
+	private final String[] datePatterns;
+	private String name;
+
+	private long valueCount;
+	private long emptyCount;
+	private long missingCount;
+	private int minimumLength = Integer.MAX_VALUE;
+	private int maximumLength;
+	private String minimumText;
+	private String maximumText;
+
+	private boolean integer = true;
+	private boolean decimal = true;
+	private boolean numeric = true;
+	private int scale;
+	private int integerDigits;
+	private long minimumLong = Long.MAX_VALUE;
+	private long maximumLong = Long.MIN_VALUE;
+	private int dateMask;
+	private final int[] minimumDates;
+	private final int[] maximumDates;
+
+	private final CSVHyperLogLog distinct;
+	private CSVQuantileSketch quantiles;
+
+	CSVColumnProfile(final int index, final String[] datePatterns, final int distinctPrecision, final int quantileCapacity) {
+		this.index = index;
+		this.datePatterns = datePatterns;
+		dateMask = (1 << datePatterns.length) - 1;
+		minimumDates = new int[datePatterns.length];
+		maximumDates = new int[datePatterns.length];
+		Arrays.fill(minimumDates, Integer.MAX_VALUE);
+		Arrays.fill(maximumDates, Integer.MIN_VALUE);
+		distinct = new CSVHyperLogLog(distinctPrecision);
+		quantiles = new CSVQuantileSketch(quantileCapacity);
+	}
+
+	/**
+	 * Prend en compte la cellule d'indice cellIndex de la ligne courante de row
+	 */
+	void add(final CSVRowCursor row, final int cellIndex) {
+		final int length = row.getCellLength(cellIndex);
+		if (length == 0) {
+			emptyCount++;
+			return;
+		}
+		valueCount++;
+		minimumLength = Math.min(minimumLength, length);
+		maximumLength = Math.max(maximumLength, length);
+		final CharSequence cell = row.getCell(cellIndex);
+		distinct.add(cell);
+		if ((minimumText == null) || (compare(cell, minimumText) < 0)) {
+			minimumText = cell.toString();
+		}
+		if ((maximumText == null) || (compare(cell, maximumText) > 0)) {
+			maximumText = cell.toString();
+		}
+		if (numeric) {
+			addNumber(row, cellIndex, cell);
+		}
+		if (dateMask != 0) {
+			addDate(row, cellIndex);
+		}
+	}
+
+	/**
+	 * Lit la cellule comme un nombre : les dcimaux simples (signe, chiffres, point ou virgule) sont lus directement, les autres critures numriques
+	 * (exposant...) passent par CSVRowCursor.getDouble. Une cellule non numrique limine dfinitivement les types numriques.
+	 */
+	private void addNumber(final CSVRowCursor row, final int cellIndex, final CharSequence cell) {
+		final int length = cell.length();
+		int i = 0;
+		boolean negative = false;
+		if ((cell.charAt(0) == '-') || (cell.charAt(0) == '+')) {
+			negative = cell.charAt(0) == '-';
+			i++;
+		}
+		long mantissa = 0L;
+		int digits = 0;
+		int decimals = -1;
+		for (; i < length; i++) {
+			final char c = cell.charAt(i);
+			if ((c >= '0') && (c <= '9')) {
+				if (digits < MAX_DECIMAL_DIGITS) {
+					mantissa = (mantissa * 10) + (c - '0');
+				}
+				digits++;
+				if (decimals >= 0) {
+					decimals++;
+				}
+			} else if (((c == '.') || (c == ',')) && (decimals < 0)) {
+				decimals = 0;
+			} else {
+				break;
+			}
+		}
+		final double value;
+		if ((i == length) && (digits > 0) && (decimals != 0) && (digits <= MAX_DECIMAL_DIGITS)) {
+			if (decimals > 0) {
+				integer = false;
+				scale = Math.max(scale, decimals);
+				integerDigits = Math.max(integerDigits, digits - decimals);
+				value = (negative ? -mantissa : mantissa) / POWERS_OF_TEN[decimals];
+			} else {
+				integerDigits = Math.max(integerDigits, digits);
+				addLong(negative ? -mantissa : mantissa);
+				value = negative ? -mantissa : mantissa;
+			}
+		} else {
+			decimal = false;
+			if (!isNumberLiteral(cell)) {
+				integer = false;
+				dropNumeric();
+				return;
+			}
+			try {
+				if (integer && (i == length) && (decimals < 0)) {
+					final long longValue = row.getLong(cellIndex);
+					addLong(longValue);
+					value = longValue;
+				} else {
+					integer = false;
+					value = row.getDouble(cellIndex);
+				}
+			} catch (final NumberFormatException nfe) {
+				integer = false;
+				dropNumeric();
+				return;
+			}
+		}
+		if (decimal && ((integerDigits + scale) > MAX_DECIMAL_DIGITS)) {
+			decimal = false;
+		}
+		quantiles.add(value);
+	}
+
+	private void addLong(final long value) {
+		minimumLong = Math.min(minimumLong, value);
+		maximumLong = Math.max(maximumLong, value);
+	}
+
+	/**
+	 * Elimine les types numriques et libre le CSVQuantileSketch
+	 */
+	private void dropNumeric() {
+		numeric = false;
+		decimal = false;
+		quantiles = null;
+	}
+
+	/**
+	 * Essaie de lire la cellule avec chacun des motifs de date encore possibles, en liminant ceux qu'elle contredit
+	 */
+	private void addDate(final CSVRowCursor row, final int cellIndex) {
+		for (int p = 0; p < datePatterns.length; p++) {
+			if ((dateMask & (1 << p)) != 0) {
+				try {
+					final int day = row.getDate(cellIndex, datePatterns[p]);
+					minimumDates[p] = Math.min(minimumDates[p], day);
+					maximumDates[p] = Math.max(maximumDates[p], day);
+				} catch (final IllegalArgumentException iae) {
+					dateMask &= ~(1 << p);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Ajoute  ce profil celui de la mme colonne tabli sur d'autres lignes
+	 */
+	void merge(final CSVColumnProfile other) {
+		valueCount += other.valueCount;
+		emptyCount += other.emptyCount;
+		minimumLength = Math.min(minimumLength, other.minimumLength);
+		maximumLength = Math.max(maximumLength, other.maximumLength);
+		if ((other.minimumText != null) && ((minimumText == null) || (other.minimumText.compareTo(minimumText) < 0))) {
+			minimumText = other.minimumText;
+		}
+		if ((other.maximumText != null) && ((maximumText == null) || (other.maximumText.compareTo(maximumText) > 0))) {
+			maximumText = other.maximumText;
+		}
+		integer &= other.integer;
+		decimal &= other.decimal;
+		scale = Math.max(scale, other.scale);
+		integerDigits = Math.max(integerDigits, other.integerDigits);
+		if (decimal && ((integerDigits + scale) > MAX_DECIMAL_DIGITS)) {
+			decimal = false;
+		}
+		minimumLong = Math.min(minimumLong, other.minimumLong);
+		maximumLong = Math.max(maximumLong, other.maximumLong);
+		if (numeric && other.numeric) {
+			quantiles.merge(other.quantiles);
+		} else {
+			dropNumeric();
+		}
+		dateMask &= other.dateMask;
+		for (int p = 0; p < datePatterns.length; p++) {
+			minimumDates[p] = Math.min(minimumDates[p], other.minimumDates[p]);
+			maximumDates[p] = Math.max(maximumDates[p], other.maximumDates[p]);
+		}
+		distinct.merge(other.distinct);
+	}
+
+	/**
+	 * Fixe le nom de la colonne et le nombre de lignes qui ne l'atteignent pas, une fois toutes les lignes lues
+	 */
+	void complete(final String name, final long rowCount) {
+		this.name = name;
+		missingCount = rowCount - valueCount - emptyCount;
+	}
+
+	/**
+	 * Retourne l'indice de la colonne
+	 */
+	public int getIndex() {
+		return index;
+	}
+
+	/**
+	 * Retourne le nom de la colonne lu dans l'en-tte, null sans en-tte ou si l'en-tte ne contient pas cette colonne
+	 */
+	public String getName() {
+		return name;
+	}
+
+	/**
+	 * Retourne le type dduit des cellules renseignes : INT ou LONG si ce sont toutes des entiers, DECIMAL (voir getScale) si ce sont des dcimaux simples
+	 * au point ou  la virgule, DOUBLE si ce sont d'autres critures numriques, DATE (voir getDatePattern) si elles correspondent toutes  un mme motif de
+	 * date, ENUM pour une colonne de texte (getDistinctCount permet de juger si un CSVDictionary lui convient), null si aucune cellule n'est renseigne
+	 */
+	public CSVColumnType getInferredType() {
+		if (valueCount == 0L) {
+			return null;
+		}
+		if (integer) {
+			return ((minimumLong >= Integer.MIN_VALUE) && (maximumLong <= Integer.MAX_VALUE)) ? CSVColumnType.INT : CSVColumnType.LONG;
+		}
+		if (decimal) {
+			return CSVColumnType.DECIMAL;
+		}
+		if (numeric) {
+			return CSVColumnType.DOUBLE;
+		}
+		if (dateMask != 0) {
+			return CSVColumnType.DATE;
+		}
+		return CSVColumnType.ENUM;
+	}
+
+	/**
+	 * Retourne le plus grand nombre de dcimales rencontr, qui est l'chelle  dclarer si le type dduit est DECIMAL
+	 */
+	public int getScale() {
+		return scale;
+	}
+
+	/**
+	 * Retourne le premier des motifs de date du CSVProfiler auquel correspondent toutes les cellules renseignes, null s'il n'y en a pas
+	 */
+	public String getDatePattern() {
+		return (dateMask != 0) ? datePatterns[Integer.numberOfTrailingZeros(dateMask)] : null;
+	}
+
+	/**
+	 * Retourne la plus petite date (jours depuis le 01/01/1970) selon getDatePattern()
+	 *
+	 * @throws IllegalStateException si le type dduit n'est pas DATE
+	 */
+	public int getMinimumDate() {
+		checkType(CSVColumnType.DATE);
+		return minimumDates[Integer.numberOfTrailingZeros(dateMask)];
+	}
+
+	/**
+	 * Retourne la plus grande date (jours depuis le 01/01/1970) selon getDatePattern()
+	 *
+	 * @throws IllegalStateException si le type dduit n'est pas DATE
+	 */
+	public int getMaximumDate() {
+		checkType(CSVColumnType.DATE);
+		return maximumDates[Integer.numberOfTrailingZeros(dateMask)];
+	}
+
+	/**
+	 * Retourne la plus petite valeur numrique, NaN si la colonne n'est pas numrique ou ne contient aucune valeur
+	 */
+	public double getMinimum() {
+		return (quantiles != null) ? quantiles.getMinimum() : Double.NaN;
+	}
+
+	/**
+	 * Retourne la plus grande valeur numrique, NaN si la colonne n'est pas numrique ou ne contient aucune valeur
+	 */
+	public double getMaximum() {
+		return (quantiles != null) ? quantiles.getMaximum() : Double.NaN;
+	}
+
+	/**
+	 * Retourne une estimation du quantile d'ordre fraction des valeurs numriques (0,5 pour la mdiane), NaN si la colonne n'est pas numrique ou ne
+	 * contient aucune valeur
+	 */
+	public double getQuantile(final double fraction) {
+		return (quantiles != null) ? quantiles.getQuantile(fraction) : Double.NaN;
+	}
+
+	/**
+	 * Retourne la plus petite cellule renseigne dans l'ordre de String.compareTo, null si aucune cellule n'est renseigne
+	 */
+	public String getMinimumText() {
+		return minimumText;
+	}
+
+	/**
+	 * Retourne la plus grande cellule renseigne dans l'ordre de String.compareTo, null si aucune cellule n'est renseigne
+	 */
+	public String getMaximumText() {
+		return maximumText;
+	}
+
+	/**
+	 * Retourne la longueur de la plus courte cellule renseigne, 0 si aucune cellule n'est renseigne
+	 */
+	public int getMinimumLength() {
+		return (valueCount > 0L) ? minimumLength : 0;
+	}
+
+	/**
+	 * Retourne la longueur de la plus longue cellule renseigne
+	 */
+	public int getMaximumLength() {
+		return maximumLength;
+	}
+
+	/**
+	 * Retourne le nombre de cellules renseignes (non vides)
+	 */
+	public long getValueCount() {
+		return valueCount;
+	}
+
+	/**
+	 * Retourne le nombre de cellules vides
+	 */
+	public long getEmptyCount() {
+		return emptyCount;
+	}
+
+	/**
+	 * Retourne le nombre de lignes trop courtes pour contenir cette colonne
+	 */
+	public long getMissingCount() {
+		return missingCount;
+	}
+
+	/**
+	 * Retourne la part des lignes dont la cellule est vide ou absente, entre 0 et 1
+	 */
+	public double getNullRate() {
+		final long rowCount = valueCount + emptyCount + missingCount;
+		return (rowCount > 0L) ? ((double) (emptyCount + missingCount) / rowCount) : 0d;
+	}
+
+	/**
+	 * Retourne une estimation du nombre de valeurs distinctes des cellules renseignes (exacte jusqu' CSVHyperLogLog.SPARSE_LIMIT valeurs)
+	 */
+	public long getDistinctCount() {
+		return distinct.estimate();
+	}
+
+	private void checkType(final CSVColumnType type) {
+		if (getInferredType() != type) {
+			throw new IllegalStateException(String.format("Le type dduit de la colonne %d n'est pas %s !", index, type));
+		}
+	}
+
+	/**
+	 * Ecritures numriques acceptes en dehors des dcimaux simples : chiffres, signes, point et exposant,  l'exclusion des "NaN", "Infinity" et suffixes
+	 * de type que Double.parseDouble accepte
+	 */
+	private static boolean isNumberLiteral(final CharSequence cell) {
+		for (int i = 0; i < cell.length(); i++) {
+			final char c = cell.charAt(i);
+			if (((c < '0') || (c > '9')) && (c != '.') && (c != '-') && (c != '+') && (c != 'e') && (c != 'E')) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Compare une cellule  une String dans l'ordre de String.compareTo, sans crer de String
+	 */
+	private static int compare(final CharSequence cell, final String text) {
+		final int length = Math.min(cell.length(), text.length());
+		for (int i = 0; i < length; i++) {
+			final char c = cell.charAt(i);
+			final char t = text.charAt(i);
+			if (c != t) {
+				return c - t;
+			}
+		}
+		return cell.length() - text.length();
+	}
+}
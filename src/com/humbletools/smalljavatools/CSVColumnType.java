@@ -0,0 +1,41 @@
+package com.humbletools.smalljavatools;
+
+/**
+ * Types de colonnes que l'on peut dclarer dans un CSVSchema. Chaque type est dcod directement depuis le tampon du CSVRowCursor, sans passer par une
+ * String intermdiaire.
+ *
+ * @author lmadeuf
+ */
+public enum CSVColumnType {
+
+	/**
+	 * Entier sign sur 32 bits
+	 */
+	INT,
+
+	/**
+	 * Entier sign sur 64 bits
+	 */
+	LONG,
+
+	/**
+	 * Nombre  virgule flottante
+	 */
+	DOUBLE,
+
+	/**
+	 * Dcimal  chelle fixe, stock sous forme de long non mis  l'chelle (12,34 avec une chelle de 2 donne 1234). Le point et la virgule sont accepts
+	 * comme sparateur dcimal.
+	 */
+	DECIMAL,
+
+	/**
+	 * Date selon un motif compos de y, M, d et de caractres littraux (par exemple "dd/MM/yyyy"), stocke en nombre de jours depuis le 01/01/1970
+	 */
+	DATE,
+
+	/**
+	 * Chane  faible cardinalit : toutes les occurrences d'une mme valeur partagent la mme instance de String
+	 */
+	ENUM
+}
@@ -0,0 +1,18 @@
+package com.humbletools.smalljavatools;
+
+/**
+ * CSVComparisonHandler reoit les carts trouvs par CSVRowMatcher.compareFiles entre un fichier attendu et un fichier lu.
+ *
+ * @author lmadeuf
+ */
+public interface CSVComparisonHandler {
+
+	/**
+	 * Traite un cart entre les deux fichiers
+	 *
+	 * @param key la valeur de la colonne cl
+	 * @param expected la ligne attendue, null si la cl est absente du fichier attendu (ou en double dans le fichier lu)
+	 * @param actual la ligne lue, null si la cl est absente du fichier lu
+	 */
+	void handleDifference(String key, String[] expected, String[] actual);
+}
@@ -0,0 +1,80 @@
+package com.humbletools.smalljavatools;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PushbackInputStream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+/**
+ * CSVCompression dsigne la compression d'un flux CSV, reconnue par CSVParser  partir des premiers octets du flux (nombre magique), quel que soit le nom
+ * du fichier. Les flux compresss sont dcompresss  la vole avec java.util.zip, sans fichier temporaire.
+ *
+ * @author lmadeuf
+ */
+public enum CSVCompression {
+	/**
+	 * Flux non compress
+	 */
+	NONE,
+	/**
+	 * Flux gzip (.csv.gz) : les membres concatns sont lus  la suite
+	 */
+	GZIP,
+	/**
+	 * Archive zip : seule la premire entre qui n'est pas un rpertoire est lue
+	 */
+	ZIP;
+
+	/**
+	 * Nombre d'octets examins en dbut de flux pour reconnatre la compression
+	 */
+	static final int MAGIC_LENGTH = 4;
+
+	private static final int INFLATER_BUFFER_SIZE = 64 * 1024;
+
+	/**
+	 * Reconnat la compression  partir des length premiers octets d'un flux
+	 */
+	public static CSVCompression detect(final byte[] header, final int length) {
+		if ((length >= 2) && ((header[0] & 0xFF) == 0x1F) && ((header[1] & 0xFF) == 0x8B)) {
+			return GZIP;
+		}
+		if ((length >= 4) && (header[0] == 'P') && (header[1] == 'K')
+				&& (((header[2] == 3) && (header[3] == 4)) || ((header[2] == 5) && (header[3] == 6)))) {
+			return ZIP;
+		}
+		return NONE;
+	}
+
+	/**
+	 * Reconnat la compression du flux en lisant ses premiers octets, puis les remet dans le flux
+	 */
+	static CSVCompression detect(final PushbackInputStream in) throws IOException {
+		final byte[] header = new byte[MAGIC_LENGTH];
+		final int length = CSVCharsets.readFully(in, header);
+		in.unread(header, 0, length);
+		return detect(header, length);
+	}
+
+	/**
+	 * Retourne le flux dcompress correspondant au flux in, ou in lui-mme pour NONE
+	 *
+	 * @throws IOException si l'en-tte du flux compress ne peut pas tre lu
+	 */
+	InputStream decompress(final InputStream in) throws IOException {
+		switch (this) {
+		case GZIP:
+			return new GZIPInputStream(in, INFLATER_BUFFER_SIZE);
+		case ZIP:
+			final ZipInputStream zipStream = new ZipInputStream(in);
+			ZipEntry entry = zipStream.getNextEntry();
+			while ((entry != null) && entry.isDirectory()) {
+				entry = zipStream.getNextEntry();
+			}
+			return zipStream;
+		default:
+			return in;
+		}
+	}
+}
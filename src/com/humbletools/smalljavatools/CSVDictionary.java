@@ -0,0 +1,250 @@
+package com.humbletools.smalljavatools;
+import java.nio.ByteBuffer;
+
+/**
+ * CSVDictionary associe chaque valeur distincte d'une colonne  une unique instance de String et  un code entier (son rang d'apparition). La recherche se
+ * fait directement sur les caractres du tampon de lecture, via une table  adressage ouvert : une String n'est cre que la premire fois qu'une valeur
+ * est rencontre.</br></br> Un MappedCSVParser recherche les valeurs directement sur les octets du fichier projet : chaque suite d'octets dj rencontre est
+ * associe  son code dans une seconde table, si bien qu'une valeur connue n'est mme pas dcode. Ces octets ne sont significatifs que pour un encodage :
+ * un mme CSVDictionary ne doit pas servir  des fichiers d'encodages diffrents par ce biais.</br></br> Un CSVDictionary n'est pas thread-safe.
+ *
+ * @author lmadeuf
+ */
+public class CSVDictionary {
+
+	private static final int INITIAL_CAPACITY = 64;
+
+	private String[] values;
+	private int[] hashes;
+	private int[] slots;
+	private int size;
+
+	private String encodedCharset;
+	private byte[][] encodedKeys;
+	private int[] encodedHashes;
+	private int[] encodedCodes;
+	private int[] encodedSlots;
+	private int encodedCount;
+
+	/**
+	 * Cre un CSVDictionary vide
+	 */
+	public CSVDictionary() {
+		values = new String[INITIAL_CAPACITY / 2];
+		hashes = new int[INITIAL_CAPACITY / 2];
+		slots = new int[INITIAL_CAPACITY];
+	}
+
+	/**
+	 * Retourne l'instance canonique de la valeur forme par les length caractres de chars  partir de start
+	 */
+	public String intern(final char[] chars, final int start, final int length) {
+		return values[code(chars, start, length)];
+	}
+
+	/**
+	 * Retourne l'instance canonique de la valeur
+	 */
+	public String intern(final CharSequence value) {
+		return values[code(value)];
+	}
+
+	/**
+	 * Retourne le code de la valeur forme par les length caractres de chars  partir de start, en l'ajoutant au dictionnaire si elle n'y est pas encore
+	 */
+	public int code(final char[] chars, final int start, final int length) {
+		int hash = 0;
+		for (int i = start; i < (start + length); i++) {
+			hash = (31 * hash) + chars[i];
+		}
+		final int mask = slots.length - 1;
+		int slot = mix(hash) & mask;
+		while (slots[slot] != 0) {
+			final int code = slots[slot] - 1;
+			if ((hashes[code] == hash) && matches(values[code], chars, start, length)) {
+				return code;
+			}
+			slot = (slot + 1) & mask;
+		}
+		return add(new String(chars, start, length), hash, slot);
+	}
+
+	/**
+	 * Retourne le code de la valeur, en l'ajoutant au dictionnaire si elle n'y est pas encore
+	 */
+	public int code(final CharSequence value) {
+		final String string = value.toString();
+		final int hash = string.hashCode();
+		final int mask = slots.length - 1;
+		int slot = mix(hash) & mask;
+		while (slots[slot] != 0) {
+			final int code = slots[slot] - 1;
+			if ((hashes[code] == hash) && values[code].equals(string)) {
+				return code;
+			}
+			slot = (slot + 1) & mask;
+		}
+		return add(string, hash, slot);
+	}
+
+	/**
+	 * Retourne la valeur associe au code
+	 *
+	 * @throws IndexOutOfBoundsException si le code n'existe pas dans ce dictionnaire
+	 */
+	public String getValue(final int code) {
+		if ((code < 0) || (code >= size)) {
+			throw new IndexOutOfBoundsException(String.format("Le code %d n'existe pas dans le dictionnaire !", code));
+		}
+		return values[code];
+	}
+
+	/**
+	 * Retourne le nombre de valeurs distinctes du dictionnaire
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Retourne le hach des length octets de buffer  partir de start, pour findEncoded et addEncoded
+	 */
+	static int hashEncoded(final ByteBuffer buffer, final int start, final int length) {
+		int hash = 0;
+		for (int i = start; i < (start + length); i++) {
+			hash = (31 * hash) + buffer.get(i);
+		}
+		return hash;
+	}
+
+	/**
+	 * Retourne le code associ aux length octets de buffer  partir de start, cods en charset, ou -1 s'ils n'ont pas encore t associs par addEncoded
+	 *
+	 * @throws IllegalArgumentException si le dictionnaire a dj servi pour des octets d'un autre encodage
+	 */
+	int findEncoded(final ByteBuffer buffer, final int start, final int length, final int hash, final String charset) {
+		if (encodedCharset == null) {
+			encodedCharset = charset;
+			encodedKeys = new byte[INITIAL_CAPACITY / 2][];
+			encodedHashes = new int[INITIAL_CAPACITY / 2];
+			encodedCodes = new int[INITIAL_CAPACITY / 2];
+			encodedSlots = new int[INITIAL_CAPACITY];
+		} else if (!encodedCharset.equals(charset)) {
+			throw new IllegalArgumentException(String.format("Le dictionnaire est dj utilis pour des octets en %s, et non en %s !", encodedCharset,
+					charset));
+		}
+		final int mask = encodedSlots.length - 1;
+		int slot = mix(hash) & mask;
+		while (encodedSlots[slot] != 0) {
+			final int entry = encodedSlots[slot] - 1;
+			if ((encodedHashes[entry] == hash) && matches(encodedKeys[entry], buffer, start, length)) {
+				return encodedCodes[entry];
+			}
+			slot = (slot + 1) & mask;
+		}
+		return -1;
+	}
+
+	/**
+	 * Associe au code les length octets de buffer  partir de start, de hach hash, aprs un findEncoded infructueux
+	 */
+	void addEncoded(final ByteBuffer buffer, final int start, final int length, final int hash, final int code) {
+		if (encodedCount == encodedKeys.length) {
+			final int capacity = encodedCount * 2;
+			final byte[][] newKeys = new byte[capacity][];
+			final int[] newHashes = new int[capacity];
+			final int[] newCodes = new int[capacity];
+			System.arraycopy(encodedKeys, 0, newKeys, 0, encodedCount);
+			System.arraycopy(encodedHashes, 0, newHashes, 0, encodedCount);
+			System.arraycopy(encodedCodes, 0, newCodes, 0, encodedCount);
+			encodedKeys = newKeys;
+			encodedHashes = newHashes;
+			encodedCodes = newCodes;
+		}
+		final byte[] key = new byte[length];
+		for (int i = 0; i < length; i++) {
+			key[i] = buffer.get(start + i);
+		}
+		encodedKeys[encodedCount] = key;
+		encodedHashes[encodedCount] = hash;
+		encodedCodes[encodedCount] = code;
+		encodedCount++;
+		if ((encodedCount * 2) > encodedSlots.length) {
+			encodedSlots = new int[encodedSlots.length * 2];
+			for (int entry = 0; entry < encodedCount; entry++) {
+				insertEncoded(entry);
+			}
+		} else {
+			insertEncoded(encodedCount - 1);
+		}
+	}
+
+	private void insertEncoded(final int entry) {
+		final int mask = encodedSlots.length - 1;
+		int slot = mix(encodedHashes[entry]) & mask;
+		while (encodedSlots[slot] != 0) {
+			slot = (slot + 1) & mask;
+		}
+		encodedSlots[slot] = entry + 1;
+	}
+
+	private int add(final String value, final int hash, final int slot) {
+		if (size == values.length) {
+			final String[] newValues = new String[size * 2];
+			final int[] newHashes = new int[size * 2];
+			System.arraycopy(values, 0, newValues, 0, size);
+			System.arraycopy(hashes, 0, newHashes, 0, size);
+			values = newValues;
+			hashes = newHashes;
+		}
+		values[size] = value;
+		hashes[size] = hash;
+		slots[slot] = size + 1;
+		size++;
+		if ((size * 2) > slots.length) {
+			rehash();
+		}
+		return size - 1;
+	}
+
+	private void rehash() {
+		slots = new int[slots.length * 2];
+		final int mask = slots.length - 1;
+		for (int code = 0; code < size; code++) {
+			int slot = mix(hashes[code]) & mask;
+			while (slots[slot] != 0) {
+				slot = (slot + 1) & mask;
+			}
+			slots[slot] = code + 1;
+		}
+	}
+
+	private static boolean matches(final String value, final char[] chars, final int start, final int length) {
+		if (value.length() != length) {
+			return false;
+		}
+		for (int i = 0; i < length; i++) {
+			if (value.charAt(i) != chars[start + i]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private static boolean matches(final byte[] key, final ByteBuffer buffer, final int start, final int length) {
+		if (key.length != length) {
+			return false;
+		}
+		for (int i = 0; i < length; i++) {
+			if (key[i] != buffer.get(start + i)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private static int mix(final int hash) {
+		final int h = hash * 0x9E3779B9;
+		return h ^ (h >>> 16);
+	}
+}
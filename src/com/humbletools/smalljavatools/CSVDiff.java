@@ -0,0 +1,726 @@
+package com.humbletools.smalljavatools;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * CSVDiff compare deux versions d'un fichier CSV (par exemple l'extraction de la veille et celle du jour) dont les lignes sont associes par une ou
+ * plusieurs colonnes cls, et transmet  un CSVComparisonHandler les lignes ajoutes, supprimes et modifies.</br></br> Aucune ligne n'est conserve en
+ * mmoire : chaque ligne est rduite  trois long (hach de la cl, hach de la ligne normalise selon les rgles de CSVRowMatcher, position en octets).
+ * Le plus petit des deux fichiers est index dans une table  adressage ouvert sur ces tableaux primitifs, puis l'autre fichier est parcouru. Si l'index
+ * dpasse le budget mmoire, les deux fichiers sont dcoups en squences tries par cl crites sur disque, puis fusionns. Les lignes ne sont relues, 
+ * partir de leur position, que pour tre transmises au handler.</br></br> Deux lignes de mme hach de cl et de mme hach de ligne sont associes sans
+ * tre relues. Quand les hachs de ligne diffrent, la ligne candidate, relue pour tre transmise, n'est associe que si ses colonnes cls sont bien
+ * gales  celles de l'autre ligne : une collision de hachs de cl ne peut donc pas associer deux cls diffrentes. Le risque rsiduel est qu'une ligne
+ * modifie garde le mme hach de ligne (64 bits) que l'ancienne, ce qui masque sa modification : sur m lignes modifies, sa probabilit est d'environ
+ * m/2^64.</br></br> Les fichiers sont lus par MappedCSVParser : le sparateur et les fins de ligne doivent tre cods sur un seul octet. Les cls en
+ * double sont associes dans leur ordre d'apparition.
+ *
+ * @author lmadeuf
+ */
+public class CSVDiff {
+
+	/**
+	 * Budget mmoire par dfaut de l'index : le quart de la mmoire maximale de la JVM
+	 */
+	public static final long DEFAULT_MEMORY_BUDGET = Runtime.getRuntime().maxMemory() / 4;
+
+	/**
+	 * Estimation de la mmoire occupe par une ligne indexe (trois long, les deux alvoles de la table, le chanage des cls et l'indicateur de
+	 * correspondance)
+	 */
+	private static final int BYTES_PER_ROW = 48;
+
+	private final int[] keyColumns;
+	private boolean trim;
+	private boolean putToLowercase;
+	private boolean removeUnsafeCharacters;
+	private boolean header;
+	private long memoryBudget = DEFAULT_MEMORY_BUDGET;
+	private File tempDirectory;
+
+	/**
+	 * Cre un CSVDiff dont les lignes sont associes par les colonnes keyColumns, compares  l'identique tant que setComparisonRules n'est pas appele
+	 */
+	public CSVDiff(final int... keyColumns) {
+		if ((keyColumns == null) || (keyColumns.length == 0)) {
+			throw new IllegalArgumentException("Au moins une colonne cl doit tre renseigne !");
+		}
+		for (final int keyColumn : keyColumns) {
+			if (keyColumn < 0) {
+				throw new IllegalArgumentException("Les colonnes cls doivent tre positives !");
+			}
+		}
+		this.keyColumns = keyColumns.clone();
+	}
+
+	/**
+	 * Fixe les rgles de comparaison des cls et des lignes, identiques  celles de CSVRowMatcher
+	 */
+	public CSVDiff setComparisonRules(final boolean trim, final boolean putToLowercase, final boolean removeUnsafeCharacters) {
+		this.trim = trim;
+		this.putToLowercase = putToLowercase;
+		this.removeUnsafeCharacters = removeUnsafeCharacters;
+		return this;
+	}
+
+	/**
+	 * Indique si la premire ligne de donnes de chaque fichier (aprs le "sep=" ventuel) est un en-tte  ignorer
+	 */
+	public CSVDiff setHeader(final boolean header) {
+		this.header = header;
+		return this;
+	}
+
+	/**
+	 * Fixe la mmoire, en octets, que l'index peut occuper avant de basculer sur des squences tries sur disque
+	 */
+	public CSVDiff setMemoryBudget(final long memoryBudget) {
+		if (memoryBudget < BYTES_PER_ROW) {
+			throw new IllegalArgumentException("L'argument memoryBudget est trop petit !");
+		}
+		this.memoryBudget = memoryBudget;
+		return this;
+	}
+
+	/**
+	 * Fixe le rpertoire des squences tries, le rpertoire temporaire du systme par dfaut
+	 */
+	public CSVDiff setTempDirectory(final File tempDirectory) {
+		this.tempDirectory = tempDirectory;
+		return this;
+	}
+
+	/**
+	 * Compare newFilePath  oldFilePath et transmet chaque cart au handler : expected est la ligne de l'ancien fichier (null pour une ligne ajoute),
+	 * actual celle du nouveau (null pour une ligne supprime), key les colonnes cls jointes par le sparateur. Si charset vaut CSVCharsets.AUTO_DETECT,
+	 * l'encodage de chaque fichier est dtect.
+	 *
+	 * @return le nombre d'carts transmis au handler
+	 * @throws IOException - Si une erreur I/O survient
+	 * @throws IllegalStateException - Si une ligne n'a pas toutes les colonnes cls
+	 */
+	public long diff(final String oldFilePath, final String newFilePath, final String charset, final Character csvSeparator,
+			final CSVComparisonHandler handler) throws IOException {
+		if ((oldFilePath == null) || (newFilePath == null) || (handler == null)) {
+			throw new IllegalArgumentException("Les arguments oldFilePath, newFilePath et handler doivent tre renseigns !");
+		}
+		final Side oldSide = new Side(oldFilePath, charset, csvSeparator, true);
+		Side newSide = null;
+		final List<File> runFiles = new ArrayList<File>();
+		try {
+			newSide = new Side(newFilePath, charset, csvSeparator, false);
+			final boolean oldIsSmaller = new File(oldFilePath).length() <= new File(newFilePath).length();
+			final Side buildSide = oldIsSmaller ? oldSide : newSide;
+			final Side probeSide = oldIsSmaller ? newSide : oldSide;
+			final RowIndex index = new RowIndex((int) Math.min(Integer.MAX_VALUE - 8, memoryBudget / BYTES_PER_ROW));
+			final List<File> buildRuns = new ArrayList<File>();
+			while (buildSide.next()) {
+				if (index.isFull()) {
+					buildRuns.add(index.spill(tempDirectory, runFiles));
+				}
+				index.add(buildSide.keyHash, buildSide.rowHash, buildSide.offset);
+			}
+			if (buildRuns.isEmpty()) {
+				return hashDiff(index, buildSide, probeSide, handler);
+			}
+			buildRuns.add(index.spill(tempDirectory, runFiles));
+			final List<File> probeRuns = new ArrayList<File>();
+			while (probeSide.next()) {
+				if (index.isFull()) {
+					probeRuns.add(index.spill(tempDirectory, runFiles));
+				}
+				index.add(probeSide.keyHash, probeSide.rowHash, probeSide.offset);
+			}
+			probeRuns.add(index.spill(tempDirectory, runFiles));
+			return mergeDiff(new RunMerger(buildRuns), buildSide, new RunMerger(probeRuns), probeSide, handler);
+		} finally {
+			oldSide.close();
+			if (newSide != null) {
+				newSide.close();
+			}
+			for (final File runFile : runFiles) {
+				runFile.delete();
+			}
+		}
+	}
+
+	/**
+	 * Parcourt le fichier non index et cherche chacune de ses lignes dans l'index en mmoire : parmi les lignes indexes non associes de mme hach de
+	 * cl, dans l'ordre, la premire de mme hach de ligne ou dont les colonnes cls sont bien gales  celles de la ligne lue. Sans collision, c'est la
+	 * premire, qui n'est relue que si son hach de ligne diffre, c'est--dire si elle doit tre transmise au handler.
+	 */
+	private long hashDiff(final RowIndex index, final Side buildSide, final Side probeSide, final CSVComparisonHandler handler) throws IOException {
+		index.buildTable();
+		long differences = 0L;
+		while (probeSide.next()) {
+			int entry = index.firstUnmatched(probeSide.keyHash);
+			String[] buildRow = null;
+			while ((entry >= 0) && (index.rowHashes[entry] != probeSide.rowHash)) {
+				buildRow = buildSide.readRow(index.offsets[entry]);
+				if (sameKey(buildRow, probeSide)) {
+					break;
+				}
+				entry = index.nextUnmatched(entry);
+			}
+			if ((entry >= 0) && (index.rowHashes[entry] == probeSide.rowHash)) {
+				index.match(entry);
+				continue;
+			}
+			differences++;
+			if (entry < 0) {
+				report(null, null, probeSide, probeSide.currentRow(), handler);
+			} else {
+				index.match(entry);
+				report(buildSide, buildRow, probeSide, probeSide.currentRow(), handler);
+			}
+		}
+		for (int entry = 0; entry < index.size; entry++) {
+			if (!index.matched[entry]) {
+				differences++;
+				report(buildSide, index.offsets[entry], null, 0L, handler);
+			}
+		}
+		return differences;
+	}
+
+	/**
+	 * Fusionne les deux suites de lignes tries par hach de cl. Les lignes de mme hach de cl forment un groupe de chaque ct, dont les lignes sont
+	 * associes par pairGroup.
+	 */
+	private long mergeDiff(final RunMerger build, final Side buildSide, final RunMerger probe, final Side probeSide, final CSVComparisonHandler handler)
+			throws IOException {
+		long differences = 0L;
+		final Group buildGroup = new Group();
+		final Group probeGroup = new Group();
+		try {
+			boolean hasBuild = build.next();
+			boolean hasProbe = probe.next();
+			while (hasBuild || hasProbe) {
+				if (!hasProbe || (hasBuild && (build.keyHash < probe.keyHash))) {
+					differences++;
+					report(buildSide, build.offset, null, 0L, handler);
+					hasBuild = build.next();
+				} else if (!hasBuild || (probe.keyHash < build.keyHash)) {
+					differences++;
+					report(null, 0L, probeSide, probe.offset, handler);
+					hasProbe = probe.next();
+				} else {
+					final long keyHash = build.keyHash;
+					buildGroup.clear();
+					probeGroup.clear();
+					while (hasBuild && (build.keyHash == keyHash)) {
+						buildGroup.add(build.rowHash, build.offset);
+						hasBuild = build.next();
+					}
+					while (hasProbe && (probe.keyHash == keyHash)) {
+						probeGroup.add(probe.rowHash, probe.offset);
+						hasProbe = probe.next();
+					}
+					differences += pairGroup(buildGroup, buildSide, probeGroup, probeSide, handler);
+				}
+			}
+		} finally {
+			build.close();
+			probe.close();
+		}
+		return differences;
+	}
+
+	/**
+	 * Associe les lignes de deux groupes de mme hach de cl comme hashDiff : chaque ligne de probeGroup, dans l'ordre,  la premire ligne non associe de
+	 * buildGroup de mme hach de ligne ou dont les colonnes cls sont bien gales.
+	 */
+	private long pairGroup(final Group buildGroup, final Side buildSide, final Group probeGroup, final Side probeSide, final CSVComparisonHandler handler)
+			throws IOException {
+		long differences = 0L;
+		for (int i = 0; i < probeGroup.size; i++) {
+			int entry = buildGroup.firstUnmatched();
+			String[] row = null;
+			String[] buildRow = null;
+			while ((entry >= 0) && (buildGroup.rowHashes[entry] != probeGroup.rowHashes[i])) {
+				if (row == null) {
+					row = probeSide.readRow(probeGroup.offsets[i]);
+				}
+				buildRow = buildSide.readRow(buildGroup.offsets[entry]);
+				if (sameKey(buildRow, row)) {
+					break;
+				}
+				entry = buildGroup.nextUnmatched(entry);
+			}
+			if ((entry >= 0) && (buildGroup.rowHashes[entry] == probeGroup.rowHashes[i])) {
+				buildGroup.match(entry);
+				continue;
+			}
+			if (row == null) {
+				row = probeSide.readRow(probeGroup.offsets[i]);
+			}
+			differences++;
+			if (entry < 0) {
+				report(null, null, probeSide, row, handler);
+			} else {
+				buildGroup.match(entry);
+				report(buildSide, buildRow, probeSide, row, handler);
+			}
+		}
+		for (int entry = buildGroup.firstUnmatched(); entry >= 0; entry = buildGroup.nextUnmatched(entry)) {
+			differences++;
+			report(buildSide, buildGroup.offsets[entry], null, 0L, handler);
+		}
+		return differences;
+	}
+
+	/**
+	 * Retourne vrai si les colonnes cls de la ligne courante de side correspondent  celles de candidate selon les rgles de comparaison, en lisant les
+	 * cellules dans le curseur
+	 */
+	private boolean sameKey(final String[] candidate, final Side side) {
+		for (final int keyColumn : keyColumns) {
+			if (!CSVRowMatcher.cellsMatch(candidate[keyColumn], side.scanner.getCell(keyColumn), trim, putToLowercase, removeUnsafeCharacters)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Retourne vrai si les colonnes cls de row correspondent  celles de candidate selon les rgles de comparaison
+	 */
+	private boolean sameKey(final String[] candidate, final String[] row) {
+		for (final int keyColumn : keyColumns) {
+			if (!CSVRowMatcher.cellsMatch(candidate[keyColumn], row[keyColumn], trim, putToLowercase, removeUnsafeCharacters)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Relit les lignes en cart et les transmet au handler dans l'ordre (ancien fichier, nouveau fichier)
+	 */
+	private void report(final Side first, final long firstOffset, final Side second, final long secondOffset, final CSVComparisonHandler handler)
+			throws IOException {
+		report(first, (first != null) ? first.readRow(firstOffset) : null, second, (second != null) ? second.readRow(secondOffset) : null, handler);
+	}
+
+	/**
+	 * Transmet au handler les lignes en cart dj lues, dans l'ordre (ancien fichier, nouveau fichier)
+	 */
+	private void report(final Side first, final String[] firstRow, final Side second, final String[] secondRow, final CSVComparisonHandler handler) {
+		final boolean firstIsOld = (first != null) ? first.old : !second.old;
+		final String[] oldRow = firstIsOld ? firstRow : secondRow;
+		final String[] newRow = firstIsOld ? secondRow : firstRow;
+		final String[] keyRow = (newRow != null) ? newRow : oldRow;
+		final StringBuilder key = new StringBuilder();
+		for (int i = 0; i < keyColumns.length; i++) {
+			if (i > 0) {
+				key.append(first != null ? first.scanner.getSeparator() : second.scanner.getSeparator());
+			}
+			key.append(keyRow[keyColumns[i]]);
+		}
+		handler.handleDifference(key.toString(), oldRow, newRow);
+	}
+
+	/**
+	 * Un des deux fichiers compars : un MappedCSVParser pour le parcours squentiel et un second pour relire une ligne  partir de sa position
+	 */
+	private final class Side {
+		private final boolean old;
+		private final MappedCSVParser scanner;
+		private MappedCSVParser reader;
+		private boolean headerSkipped;
+		private long keyHash;
+		private long rowHash;
+		private long offset;
+
+		private Side(final String filePath, final String charset, final Character csvSeparator, final boolean old) throws IOException {
+			this.old = old;
+			scanner = new MappedCSVParser(filePath, charset, csvSeparator);
+		}
+
+		/**
+		 * Lit la ligne suivante et calcule ses hachs. Retourne false  la fin du fichier.
+		 */
+		private boolean next() throws IOException {
+			if (header && !headerSkipped && scanner.hasNextLine()) {
+				scanner.readNextLine();
+			}
+			headerSkipped = true;
+			if (!scanner.hasNextLine()) {
+				return false;
+			}
+			final int cellCount = scanner.readNextLine();
+			offset = scanner.getLineStartOffset();
+			long key = CSVRowMatcher.FNV_OFFSET_BASIS;
+			for (final int keyColumn : keyColumns) {
+				if (keyColumn >= cellCount) {
+					throw new IllegalStateException(String.format("Ligne %d du fichier %s : la colonne cl %d est absente !", scanner.getNumberOfLinesRead(),
+							scanner.getFilePath(), keyColumn));
+				}
+				key = CSVRowMatcher.hashCell(scanner.getCell(keyColumn), trim, putToLowercase, removeUnsafeCharacters, key);
+			}
+			long row = CSVRowMatcher.FNV_OFFSET_BASIS;
+			for (int i = 0; i < cellCount; i++) {
+				row = CSVRowMatcher.hashCell(scanner.getCell(i), trim, putToLowercase, removeUnsafeCharacters, row);
+			}
+			keyHash = mix(key);
+			rowHash = row;
+			return true;
+		}
+
+		/**
+		 * Retourne les cellules de la ligne lue par next, pour la transmettre au handler
+		 */
+		private String[] currentRow() {
+			final String[] cells = new String[scanner.getCellCount()];
+			for (int i = 0; i < cells.length; i++) {
+				cells[i] = scanner.getCell(i);
+			}
+			return cells;
+		}
+
+		private String[] readRow(final long rowOffset) throws IOException {
+			if (reader == null) {
+				reader = new MappedCSVParser(scanner.getFilePath(), scanner.getCharset(), scanner.getSeparator(), MappedCSVParser.DEFAULT_WINDOW_SIZE, 1L,
+						Long.MAX_VALUE);
+			}
+			reader.seek(rowOffset);
+			reader.skipLine();
+			final String[] cells = new String[reader.getCellCount()];
+			for (int i = 0; i < cells.length; i++) {
+				cells[i] = reader.getCell(i);
+			}
+			return cells;
+		}
+
+		private void close() throws IOException {
+			scanner.close();
+			if (reader != null) {
+				reader.close();
+			}
+		}
+	}
+
+	/**
+	 * Finalisation de MurmurHash3 : rpartit les bits du hach de cl sur toute la largeur pour l'adressage de la table
+	 */
+	private static long mix(final long hash) {
+		long h = hash;
+		h ^= h >>> 33;
+		h *= 0xFF51AFD7ED558CCDL;
+		h ^= h >>> 33;
+		h *= 0xC4CEB9FE1A85EC53L;
+		h ^= h >>> 33;
+		return h;
+	}
+
+	/**
+	 * Lignes indexes, stockes dans trois tableaux primitifs parallles. La table  adressage ouvert a une alvole par hach de cl distinct ; les lignes
+	 * de mme hach y sont chanes dans leur ordre d'apparition, et un curseur par alvole dsigne la premire qui n'a pas encore t associe : une
+	 * recherche ne cote pas plus cher quand une cl a beaucoup de doublons.
+	 */
+	private static final class RowIndex {
+		private final int capacity;
+		private long[] keyHashes = new long[1024];
+		private long[] rowHashes = new long[1024];
+		private long[] offsets = new long[1024];
+		private boolean[] matched;
+		private int[] nextSameKey;
+		private int[] heads;
+		private int[] cursors;
+		private int size;
+
+		private RowIndex(final int capacity) {
+			this.capacity = Math.max(1, capacity);
+		}
+
+		private boolean isFull() {
+			return size == capacity;
+		}
+
+		private void add(final long keyHash, final long rowHash, final long offset) {
+			if (size == keyHashes.length) {
+				final int newLength = (int) Math.min(capacity, size * 2L);
+				keyHashes = Arrays.copyOf(keyHashes, newLength);
+				rowHashes = Arrays.copyOf(rowHashes, newLength);
+				offsets = Arrays.copyOf(offsets, newLength);
+			}
+			keyHashes[size] = keyHash;
+			rowHashes[size] = rowHash;
+			offsets[size] = offset;
+			size++;
+		}
+
+		/**
+		 * Construit la table  adressage ouvert (facteur de charge 1/2 au plus) sur les lignes indexes. Les lignes sont parcourues  rebours et ajoutes en
+		 * tte de leur chane, si bien que chaque chane suit l'ordre d'apparition.
+		 */
+		private void buildTable() {
+			int tableSize = Integer.highestOneBit(Math.max(2, size) * 2);
+			if (tableSize < (size * 2)) {
+				tableSize <<= 1;
+			}
+			heads = new int[tableSize];
+			cursors = new int[tableSize];
+			nextSameKey = new int[size];
+			matched = new boolean[size];
+			for (int entry = size - 1; entry >= 0; entry--) {
+				final int slot = findSlot(keyHashes[entry]);
+				nextSameKey[entry] = heads[slot] - 1;
+				heads[slot] = entry + 1;
+				cursors[slot] = entry + 1;
+			}
+		}
+
+		/**
+		 * Retourne l'alvole du hach de cl keyHash, ou l'alvole vide o l'ajouter
+		 */
+		private int findSlot(final long keyHash) {
+			final int mask = heads.length - 1;
+			int slot = (int) keyHash & mask;
+			while ((heads[slot] != 0) && (keyHashes[heads[slot] - 1] != keyHash)) {
+				slot = (slot + 1) & mask;
+			}
+			return slot;
+		}
+
+		/**
+		 * Retourne la premire ligne indexe de hach de cl keyHash qui n'a pas encore t associe, ou -1 s'il n'y en a pas
+		 */
+		private int firstUnmatched(final long keyHash) {
+			return cursors[findSlot(keyHash)] - 1;
+		}
+
+		/**
+		 * Retourne la ligne indexe suivante de mme hach de cl que entry qui n'a pas encore t associe, ou -1 s'il n'y en a pas
+		 */
+		private int nextUnmatched(final int entry) {
+			int next = nextSameKey[entry];
+			while ((next >= 0) && matched[next]) {
+				next = nextSameKey[next];
+			}
+			return next;
+		}
+
+		/**
+		 * Marque entry associe et avance le curseur de sa chane s'il la dsignait : chaque ligne n'est saute qu'une fois par le curseur
+		 */
+		private void match(final int entry) {
+			matched[entry] = true;
+			final int slot = findSlot(keyHashes[entry]);
+			if (cursors[slot] == (entry + 1)) {
+				cursors[slot] = nextUnmatched(entry) + 1;
+			}
+		}
+
+		/**
+		 * Trie les lignes indexes par hach de cl puis par position, les crit dans une squence sur disque et vide l'index
+		 */
+		private File spill(final File tempDirectory, final List<File> runFiles) throws IOException {
+			sort(0, size - 1);
+			final File runFile = File.createTempFile("csvdiff", ".run", tempDirectory);
+			runFiles.add(runFile);
+			final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(runFile), 64 * 1024));
+			try {
+				for (int i = 0; i < size; i++) {
+					out.writeLong(keyHashes[i]);
+					out.writeLong(rowHashes[i]);
+					out.writeLong(offsets[i]);
+				}
+			} finally {
+				out.close();
+			}
+			size = 0;
+			return runFile;
+		}
+
+		private void sort(final int from, final int to) {
+			int low = from;
+			int high = to;
+			while ((high - low) > 16) {
+				final int middle = (low + high) >>> 1;
+				final long pivotKey = keyHashes[middle];
+				final long pivotOffset = offsets[middle];
+				int i = low;
+				int j = high;
+				while (i <= j) {
+					while (compare(i, pivotKey, pivotOffset) < 0) {
+						i++;
+					}
+					while (compare(j, pivotKey, pivotOffset) > 0) {
+						j--;
+					}
+					if (i <= j) {
+						swap(i++, j--);
+					}
+				}
+				// rcursion sur la plus petite partie pour borner la profondeur de pile
+				if ((j - low) < (high - i)) {
+					sort(low, j);
+					low = i;
+				} else {
+					sort(i, high);
+					high = j;
+				}
+			}
+			for (int i = low + 1; i <= high; i++) {
+				for (int j = i; (j > low) && (compare(j, keyHashes[j - 1], offsets[j - 1]) < 0); j--) {
+					swap(j, j - 1);
+				}
+			}
+		}
+
+		private int compare(final int entry, final long keyHash, final long offset) {
+			if (keyHashes[entry] != keyHash) {
+				return (keyHashes[entry] < keyHash) ? -1 : 1;
+			}
+			return (offsets[entry] < offset) ? -1 : ((offsets[entry] == offset) ? 0 : 1);
+		}
+
+		private void swap(final int i, final int j) {
+			final long keyHash = keyHashes[i];
+			final long rowHash = rowHashes[i];
+			final long offset = offsets[i];
+			keyHashes[i] = keyHashes[j];
+			rowHashes[i] = rowHashes[j];
+			offsets[i] = offsets[j];
+			keyHashes[j] = keyHash;
+			rowHashes[j] = rowHash;
+			offsets[j] = offset;
+		}
+	}
+
+	/**
+	 * Lignes d'un fichier de mme hach de cl, lors de la fusion, dans l'ordre de leur position
+	 */
+	private static final class Group {
+		private long[] rowHashes = new long[16];
+		private long[] offsets = new long[16];
+		private boolean[] matched = new boolean[16];
+		private int size;
+		private int cursor;
+
+		private void clear() {
+			size = 0;
+			cursor = 0;
+		}
+
+		private void add(final long rowHash, final long offset) {
+			if (size == offsets.length) {
+				rowHashes = Arrays.copyOf(rowHashes, size * 2);
+				offsets = Arrays.copyOf(offsets, size * 2);
+				matched = Arrays.copyOf(matched, size * 2);
+			}
+			rowHashes[size] = rowHash;
+			offsets[size] = offset;
+			matched[size] = false;
+			size++;
+		}
+
+		/**
+		 * Retourne la premire ligne du groupe qui n'a pas encore t associe, ou -1 s'il n'y en a pas
+		 */
+		private int firstUnmatched() {
+			while ((cursor < size) && matched[cursor]) {
+				cursor++;
+			}
+			return (cursor < size) ? cursor : -1;
+		}
+
+		/**
+		 * Retourne la ligne suivante du groupe qui n'a pas encore t associe, ou -1 s'il n'y en a pas
+		 */
+		private int nextUnmatched(final int entry) {
+			int next = entry + 1;
+			while ((next < size) && matched[next]) {
+				next++;
+			}
+			return (next < size) ? next : -1;
+		}
+
+		private void match(final int entry) {
+			matched[entry] = true;
+		}
+	}
+
+	/**
+	 * Fusion des squences tries d'un fichier, par un tas ordonn sur (hach de cl, position)
+	 */
+	private static final class RunMerger {
+		private final PriorityQueue<RunReader> heap = new PriorityQueue<RunReader>();
+		private final List<RunReader> readers = new ArrayList<RunReader>();
+		private long keyHash;
+		private long rowHash;
+		private long offset;
+
+		private RunMerger(final List<File> runFiles) throws IOException {
+			for (final File runFile : runFiles) {
+				final RunReader reader = new RunReader(runFile);
+				readers.add(reader);
+				if (reader.next()) {
+					heap.add(reader);
+				}
+			}
+		}
+
+		private boolean next() throws IOException {
+			final RunReader reader = heap.poll();
+			if (reader == null) {
+				return false;
+			}
+			keyHash = reader.keyHash;
+			rowHash = reader.rowHash;
+			offset = reader.offset;
+			if (reader.next()) {
+				heap.add(reader);
+			}
+			return true;
+		}
+
+		private void close() throws IOException {
+			for (final RunReader reader : readers) {
+				reader.in.close();
+			}
+		}
+	}
+
+	private static final class RunReader implements Comparable<RunReader> {
+		private final DataInputStream in;
+		private long keyHash;
+		private long rowHash;
+		private long offset;
+
+		private RunReader(final File runFile) throws IOException {
+			in = new DataInputStream(new BufferedInputStream(new FileInputStream(runFile), 64 * 1024));
+		}
+
+		private boolean next() throws IOException {
+			try {
+				keyHash = in.readLong();
+			} catch (final EOFException eof) {
+				return false;
+			}
+			rowHash = in.readLong();
+			offset = in.readLong();
+			return true;
+		}
+
+		@Override
+		public int compareTo(final RunReader other) {
+			if (keyHash != other.keyHash) {
+				return (keyHash < other.keyHash) ? -1 : 1;
+			}
+			return (offset < other.offset) ? -1 : ((offset == other.offset) ? 0 : 1);
+		}
+	}
+}
@@ -0,0 +1,99 @@
+package com.humbletools.smalljavatools;
+
+/**
+ * CSVFileReport est le bilan de lecture d'un fichier par CSVIngestion : nombre de lignes lues, dure, dbit et ventuelle erreur.
+ *
+ * @author lmadeuf
+ */
+public final class CSVFileReport {
+
+	private final String filePath;
+	private final long fileSize;
+	private final long numberOfLinesRead;
+	private final long numberOfRowsDelivered;
+	private final long elapsedNanos;
+	private final long blockedNanos;
+	private final Exception failure;
+
+	CSVFileReport(final String filePath, final long fileSize, final long numberOfLinesRead, final long numberOfRowsDelivered, final long elapsedNanos,
+			final long blockedNanos, final Exception failure) {
+		this.filePath = filePath;
+		this.fileSize = fileSize;
+		this.numberOfLinesRead = numberOfLinesRead;
+		this.numberOfRowsDelivered = numberOfRowsDelivered;
+		this.elapsedNanos = elapsedNanos;
+		this.blockedNanos = blockedNanos;
+		this.failure = failure;
+	}
+
+	/**
+	 * Retourne le chemin du fichier lu
+	 */
+	public String getFilePath() {
+		return filePath;
+	}
+
+	/**
+	 * Retourne la taille du fichier en octets
+	 */
+	public long getFileSize() {
+		return fileSize;
+	}
+
+	/**
+	 * Retourne le nombre de lignes lues, "sep=" et en-tte compris (CSVParser.getNumberOfLinesRead())
+	 */
+	public long getNumberOfLinesRead() {
+		return numberOfLinesRead;
+	}
+
+	/**
+	 * Retourne le nombre de lignes transmises au CSVIngestionSink
+	 */
+	public long getNumberOfRowsDelivered() {
+		return numberOfRowsDelivered;
+	}
+
+	/**
+	 * Retourne la dure de lecture du fichier en nanosecondes, de l'ouverture au dernier lot, attente de la file comprise
+	 */
+	public long getElapsedNanos() {
+		return elapsedNanos;
+	}
+
+	/**
+	 * Retourne le temps pass  attendre de la place dans la file, en nanosecondes : un temps lev signifie que le CSVIngestionSink est le goulet
+	 */
+	public long getBlockedNanos() {
+		return blockedNanos;
+	}
+
+	/**
+	 * Retourne le dbit de lecture en octets par seconde
+	 */
+	public double getBytesPerSecond() {
+		return (elapsedNanos > 0L) ? ((fileSize * 1e9d) / elapsedNanos) : 0d;
+	}
+
+	/**
+	 * Retourne le dbit de lecture en lignes par seconde
+	 */
+	public double getLinesPerSecond() {
+		return (elapsedNanos > 0L) ? ((numberOfLinesRead * 1e9d) / elapsedNanos) : 0d;
+	}
+
+	/**
+	 * Retourne l'erreur qui a interrompu la lecture du fichier (IOException ou RuntimeException, par exemple l'IllegalStateException d'une cellule mal
+	 * forme), null si le fichier a t lu entirement
+	 */
+	public Exception getFailure() {
+		return failure;
+	}
+
+	/**
+	 * Retourne true si le fichier a t lu entirement
+	 */
+	public boolean isSuccessful() {
+		return failure == null;
+	}
+}
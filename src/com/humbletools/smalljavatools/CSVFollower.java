@@ -0,0 +1,458 @@
+package com.humbletools.smalljavatools;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * CSVFollower suit un fichier CSV aliment en continu (comme "tail -f") : le canal reste ouvert et seules les lignes compltes ajoutes depuis la dernire
+ * lecture sont lues. Une ligne n'est complte qu'une fois sa fin de ligne crite, hors guillemets : une ligne en cours d'criture, ou une cellule entre
+ * guillemets contenant des fins de ligne, est relue entire au tour suivant.</br></br> La position atteinte (octet et nombre de lignes), le sparateur et
+ * l'encodage retenus sont enregistrs par saveOffset() dans le fichier compagnon filePath + OFFSET_EXTENSION, et relus  la construction : aprs un
+ * redmarrage, la lecture reprend  la premire ligne non traite. Si le fichier devient plus court que la position atteinte (troncature, ou rotation
+ * qui le remplace), il est rouvert et relu depuis le dbut.</br></br> poll() lit d'un coup toutes les lignes compltes disponibles, dans la limite de
+ * maxBatchBytes octets : en cas de rafale, follow() enchane les lots sans attendre. Entre deux rafales, follow() attend une modification signale par un
+ * WatchService sur le rpertoire du fichier, ou au plus pollInterval millisecondes (certains systmes de fichiers ne signalent rien).</br></br> Les fins
+ * de ligne doivent tre codes sur un seul octet (UTF-16 non support).
+ *
+ * @author lmadeuf
+ */
+public class CSVFollower implements Closeable {
+
+	/**
+	 * Extension du fichier compagnon qui conserve la position atteinte
+	 */
+	public static final String OFFSET_EXTENSION = ".offset";
+
+	/**
+	 * Nombre maximal d'octets lus par dfaut par un appel  poll()
+	 */
+	public static final int DEFAULT_MAX_BATCH_BYTES = 4 * 1024 * 1024;
+
+	/**
+	 * Attente maximale par dfaut entre deux lectures, en millisecondes
+	 */
+	public static final long DEFAULT_POLL_INTERVAL = 1000L;
+
+	private static final int MAGIC = 0x4353564F; // "CSVO"
+	private static final int VERSION = 1;
+
+	/**
+	 * Etats de la recherche de fin de ligne, comme dans CSVRowCursor
+	 */
+	private static final int FIELD_START = 0;
+	private static final int UNQUOTED = 1;
+	private static final int QUOTED = 2;
+	private static final int QUOTE_IN_QUOTED = 3;
+
+	private final String filePath;
+	private final String requestedCharset;
+	private String charset;
+	private Character separator;
+	private boolean header;
+	private int maxBatchBytes = DEFAULT_MAX_BATCH_BYTES;
+	private long offset;
+	private long numberOfLinesRead;
+	private boolean headerPending = true;
+	private FileChannel channel;
+	private ByteBuffer buffer;
+	private volatile boolean stopped;
+
+	/**
+	 * Cre un CSVFollower du fichier spcifi par le filePath, avec le sparateur csv csvSeparator et l'encodage charset (CSVCharsets.AUTO_DETECT accept,
+	 * l'encodage tant alors dtect sur les premiers octets crits). Si une position a t enregistre par saveOffset(), la lecture reprend  cette
+	 * position avec le sparateur et l'encodage retenus alors. Le fichier peut ne pas encore exister.
+	 *
+	 * @throws IOException si le fichier compagnon existe mais ne peut pas tre lu
+	 */
+	public CSVFollower(final String filePath, final String charset, final Character csvSeparator) throws IOException {
+		if (filePath == null) {
+			throw new IllegalArgumentException("L'argument filePath doit tre spcifi !");
+		}
+		if (charset == null) {
+			throw new IllegalArgumentException("L'encodage du fichier doit tre spcifi !");
+		}
+		if (csvSeparator == null) {
+			throw new IllegalArgumentException("L'argument csvSeparator doit tre renseign !");
+		}
+		this.filePath = filePath;
+		requestedCharset = charset;
+		this.charset = charset;
+		separator = csvSeparator;
+		loadOffset();
+	}
+
+	/**
+	 * Indique si la premire ligne de donnes du fichier (aprs le "sep=" ventuel) est un en-tte,  ne pas retourner. L'en-tte est attendu tant
+	 * qu'aucune ligne de donnes n'a t lue, mme si le "sep=" a t lu par un appel prcdent ; sans effet si la lecture reprend aprs l'en-tte.
+	 */
+	public CSVFollower setHeader(final boolean header) {
+		this.header = header;
+		return this;
+	}
+
+	/**
+	 * Fixe le nombre maximal d'octets lus par un appel  poll(). Une ligne plus longue est tout de mme lue en entier.
+	 */
+	public CSVFollower setMaxBatchBytes(final int maxBatchBytes) {
+		if (maxBatchBytes < 1024) {
+			throw new IllegalArgumentException("L'argument maxBatchBytes doit valoir au moins 1024 !");
+		}
+		this.maxBatchBytes = maxBatchBytes;
+		return this;
+	}
+
+	/**
+	 * Lit les lignes compltes ajoutes depuis le dernier appel, dans la limite de maxBatchBytes octets. Retourne une liste vide si aucune ligne complte
+	 * n'a t ajoute ou si le fichier n'existe pas encore. La position n'est enregistre que par saveOffset().
+	 *
+	 * @throws IOException - Si une erreur I/O survient
+	 */
+	public List<String[]> poll() throws IOException {
+		if (new File(filePath).length() < offset) {
+			// troncature ou rotation : le fichier est rouvert et relu depuis le dbut
+			if (channel != null) {
+				channel.close();
+				channel = null;
+			}
+			offset = 0L;
+			numberOfLinesRead = 0L;
+			headerPending = true;
+		}
+		if (!openChannel()) {
+			return Collections.emptyList();
+		}
+		final long size = channel.size();
+		if (size == offset) {
+			return Collections.emptyList();
+		}
+		int completeLength;
+		while (true) {
+			buffer.clear();
+			buffer.limit((int) Math.min(buffer.capacity(), size - offset));
+			while (buffer.hasRemaining()) {
+				if (channel.read(buffer, offset + buffer.position()) < 0) {
+					break;
+				}
+			}
+			completeLength = findCompleteLength(buffer.array(), buffer.position());
+			if ((completeLength > 0) || (buffer.position() < buffer.capacity())) {
+				break;
+			}
+			// aucune ligne complte dans la fentre : ligne plus longue que maxBatchBytes
+			buffer = ByteBuffer.allocate(buffer.capacity() * 2);
+		}
+		if (completeLength == 0) {
+			return Collections.emptyList();
+		}
+		final List<String[]> rows = parse(completeLength);
+		offset += completeLength;
+		if (buffer.capacity() > maxBatchBytes) {
+			buffer = ByteBuffer.allocate(maxBatchBytes);
+		}
+		return rows;
+	}
+
+	/**
+	 * Suit le fichier comme follow(sink, pollInterval), avec une attente maximale de DEFAULT_POLL_INTERVAL millisecondes entre deux lectures
+	 *
+	 * @throws IOException - Si une erreur I/O survient ou si le sink lve une IOException
+	 */
+	public void follow(final CSVIngestionSink sink) throws IOException {
+		follow(sink, DEFAULT_POLL_INTERVAL);
+	}
+
+	/**
+	 * Suit le fichier jusqu' l'appel de stop() ou l'interruption du thread : chaque lot de lignes compltes est transmis  sink.handleBatch, puis la
+	 * position est enregistre. Le bilan du suivi est transmis  sink.fileCompleted  l'arrt.
+	 *
+	 * @param pollInterval l'attente maximale entre deux lectures, en millisecondes
+	 * @throws IOException - Si une erreur I/O survient ou si le sink lve une IOException
+	 */
+	public void follow(final CSVIngestionSink sink, final long pollInterval) throws IOException {
+		if (sink == null) {
+			throw new IllegalArgumentException("L'argument sink doit tre renseign !");
+		}
+		if (pollInterval <= 0L) {
+			throw new IllegalArgumentException("L'argument pollInterval doit tre strictement positif !");
+		}
+		final long start = System.nanoTime();
+		long linesRead = 0L;
+		long rowsDelivered = 0L;
+		final Path path = new File(filePath).getAbsoluteFile().toPath();
+		final WatchService watchService = FileSystems.getDefault().newWatchService();
+		try {
+			path.getParent().register(watchService, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+			while (!stopped && !Thread.currentThread().isInterrupted()) {
+				final long linesBefore = numberOfLinesRead;
+				final List<String[]> rows = poll();
+				// aprs une troncature, le compte repart de zro
+				linesRead += (numberOfLinesRead >= linesBefore) ? (numberOfLinesRead - linesBefore) : numberOfLinesRead;
+				if (!rows.isEmpty()) {
+					sink.handleBatch(filePath, rows);
+					rowsDelivered += rows.size();
+					saveOffset();
+					continue;
+				}
+				final WatchKey key = watchService.poll(pollInterval, TimeUnit.MILLISECONDS);
+				if (key != null) {
+					key.pollEvents();
+					key.reset();
+				}
+			}
+		} catch (final InterruptedException ie) {
+			Thread.currentThread().interrupt();
+		} finally {
+			watchService.close();
+		}
+		sink.fileCompleted(new CSVFileReport(filePath, offset, linesRead, rowsDelivered, System.nanoTime() - start, 0L, null));
+	}
+
+	/**
+	 * Demande l'arrt de follow(), qui se termine au plus tard aprs pollInterval millisecondes. Peut tre appel depuis n'importe quel thread.
+	 */
+	public void stop() {
+		stopped = true;
+	}
+
+	/**
+	 * Enregistre la position atteinte, le sparateur et l'encodage retenus dans le fichier compagnon getOffsetFilePath(). Le fichier est crit  ct puis
+	 * renomm : une position interrompue en cours d'criture n'est jamais relue.
+	 *
+	 * @throws IOException si la position ne peut pas tre crite
+	 */
+	public void saveOffset() throws IOException {
+		final File offsetFile = new File(getOffsetFilePath());
+		final File tempFile = new File(offsetFile.getPath() + ".tmp");
+		final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile)));
+		try {
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			out.writeLong(offset);
+			out.writeLong(numberOfLinesRead);
+			out.writeUTF(requestedCharset);
+			out.writeUTF(charset);
+			out.writeChar(separator);
+			out.writeBoolean(headerPending);
+		} finally {
+			out.close();
+		}
+		Files.move(tempFile.toPath(), offsetFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+	}
+
+	private void loadOffset() throws IOException {
+		final File offsetFile = new File(getOffsetFilePath());
+		if (!offsetFile.isFile()) {
+			return;
+		}
+		final DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(offsetFile)));
+		try {
+			if (in.readInt() != MAGIC) {
+				return;
+			}
+			if (in.readInt() != VERSION) {
+				return;
+			}
+			final long savedOffset = in.readLong();
+			final long savedLines = in.readLong();
+			if (!in.readUTF().equals(requestedCharset)) {
+				return;
+			}
+			offset = savedOffset;
+			numberOfLinesRead = savedLines;
+			charset = in.readUTF();
+			separator = in.readChar();
+			headerPending = in.readBoolean();
+		} finally {
+			in.close();
+		}
+	}
+
+	/**
+	 * Ouvre le canal s'il ne l'est pas encore et que le fichier existe ; dtecte alors l'encodage si ncessaire
+	 */
+	private boolean openChannel() throws IOException {
+		if (channel != null) {
+			return true;
+		}
+		final File file = new File(filePath);
+		if (!file.isFile() || (file.length() == 0L)) {
+			return false;
+		}
+		if (CSVCharsets.AUTO_DETECT.equals(charset)) {
+			charset = CSVCharsets.detect(filePath);
+		}
+		channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+		buffer = ByteBuffer.allocate(maxBatchBytes);
+		return true;
+	}
+
+	/**
+	 * Retourne la longueur des lignes compltes au dbut des length octets lus : jusqu' la dernire fin de ligne hors guillemets, les guillemets tant
+	 * reconnus comme par CSVRowCursor (en dbut de cellule seulement). Un '\r' final n'est pas retenu, son '\n' pouvant ne pas encore tre crit. Le
+	 * sparateur est compar sous sa forme encode dans l'encodage du fichier, sur un ou plusieurs octets ('' en UTF-8 par exemple).
+	 */
+	private int findCompleteLength(final byte[] bytes, final int length) {
+		final byte[] sep = encodedSeparator();
+		int state = FIELD_START;
+		int completeLength = 0;
+		for (int i = 0; i < length; i++) {
+			final byte b = bytes[i];
+			if (state == QUOTED) {
+				if (b == '"') {
+					state = QUOTE_IN_QUOTED;
+				}
+			} else if (startsWith(bytes, i, length, sep)) {
+				i += sep.length - 1;
+				state = FIELD_START;
+			} else if ((b == '\n') || ((b == '\r') && ((i + 1) < length) && (bytes[i + 1] != '\n'))) {
+				completeLength = i + 1;
+				state = FIELD_START;
+			} else if (b == '\r') {
+				continue;
+			} else if ((state == FIELD_START) && (b == '"')) {
+				state = QUOTED;
+			} else if (state == QUOTE_IN_QUOTED) {
+				state = (b == '"') ? QUOTED : UNQUOTED;
+			} else {
+				state = UNQUOTED;
+			}
+		}
+		return completeLength;
+	}
+
+	/**
+	 * Retourne le sparateur encod dans l'encodage du fichier, ou null s'il n'y est pas reprsentable (il ne peut alors pas apparatre dans le fichier)
+	 */
+	private byte[] encodedSeparator() {
+		final CharsetEncoder encoder = Charset.forName(charset).newEncoder();
+		if (!encoder.canEncode(separator.charValue())) {
+			return null;
+		}
+		return String.valueOf(separator.charValue()).getBytes(encoder.charset());
+	}
+
+	/**
+	 * Indique si les octets  partir de start (avant length) commencent par prefix
+	 */
+	private static boolean startsWith(final byte[] bytes, final int start, final int length, final byte[] prefix) {
+		if ((prefix == null) || (start + prefix.length > length)) {
+			return false;
+		}
+		for (int i = 0; i < prefix.length; i++) {
+			if (bytes[start + i] != prefix[i]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Dcoupe les length premiers octets lus, qui ne contiennent que des lignes compltes, avec le mme dcoupage que CSVParser
+	 */
+	private List<String[]> parse(final int length) throws IOException {
+		final CSVParser parser = new CSVParser(new ByteArrayInputStream(buffer.array(), 0, length), charset, separator);
+		final List<String[]> rows = new ArrayList<String[]>();
+		final boolean fromStart = offset == 0L;
+		try {
+			while (parser.hasNextLine()) {
+				final String[] cells;
+				try {
+					cells = parser.getNextLineOfCells();
+				} catch (final IllegalStateException ise) {
+					if (fromStart && (parser.getNumberOfLinesRead() == 1L)) {
+						// seul le "sep=" est crit pour l'instant : les lignes de donnes viendront avec un appel suivant
+						break;
+					}
+					throw ise;
+				}
+				// l'en-tte n'est plus attendu qu'une fois une ligne de donnes lue : un appel qui n'a lu que le "sep=" ne compte pas
+				final boolean skip = header && headerPending;
+				headerPending = false;
+				if (!skip) {
+					rows.add(cells);
+				}
+			}
+			numberOfLinesRead += parser.getNumberOfLinesRead();
+			if (fromStart) {
+				separator = parser.getSeparator();
+			}
+		} finally {
+			parser.close();
+		}
+		return rows;
+	}
+
+	@Override
+	public void close() throws IOException {
+		stopped = true;
+		if (channel != null) {
+			channel.close();
+			channel = null;
+		}
+	}
+
+	/**
+	 * Retourne le chemin vers le fichier suivi
+	 */
+	public String getFilePath() {
+		return filePath;
+	}
+
+	/**
+	 * Retourne le chemin du fichier compagnon qui conserve la position atteinte
+	 */
+	public String getOffsetFilePath() {
+		return filePath + OFFSET_EXTENSION;
+	}
+
+	/**
+	 * Retourne l'encodage utilis, celui dtect si CSVCharsets.AUTO_DETECT a t demand et que le fichier a commenc  tre lu
+	 */
+	public String getCharset() {
+		return charset;
+	}
+
+	/**
+	 * Retourne le sparateur CSV utilis, celui dclar par "sep=" le cas chant
+	 */
+	public Character getSeparator() {
+		return separator;
+	}
+
+	/**
+	 * Retourne la position en octets de la premire ligne non lue
+	 */
+	public long getOffset() {
+		return offset;
+	}
+
+	/**
+	 * Retourne le nombre de lignes lues depuis le dbut du fichier, "sep=" compris
+	 */
+	public long getNumberOfLinesRead() {
+		return numberOfLinesRead;
+	}
+}
@@ -0,0 +1,210 @@
+package com.humbletools.smalljavatools;
+
+/**
+ * CSVHyperLogLog estime le nombre de valeurs distinctes d'une colonne sans les conserver : chaque valeur est hache sur 64 bits et seule la longueur
+ * maximale de la srie de zros de tte est retenue dans chacun des 2^precision registres d'un octet. L'erreur type est d'environ 1,04 / sqrt(2^precision),
+ * soit 1,6 % pour la prcision par dfaut de 12 (4 Ko).</br></br> Tant que le nombre de valeurs distinctes reste petit, les hachs sont conservs dans une
+ * table  adressage ouvert et le compte est exact ; les registres ne sont allous qu'au-del de SPARSE_LIMIT valeurs. Deux CSVHyperLogLog de mme
+ * prcision se fusionnent sans perte (merge), ce qui permet de compter sur plusieurs plages en parallle.</br></br> Un CSVHyperLogLog n'est pas
+ * thread-safe.
+ *
+ * @author lmadeuf
+ */
+public final class CSVHyperLogLog {
+
+	/**
+	 * Prcision par dfaut : 2^12 registres
+	 */
+	public static final int DEFAULT_PRECISION = 12;
+
+	/**
+	 * Nombre de valeurs distinctes au-del duquel les hachs exacts sont remplacs par les registres
+	 */
+	public static final int SPARSE_LIMIT = 64;
+
+	private static final long FNV_PRIME = 0x100000001B3L;
+
+	private final int precision;
+	private long[] hashes = new long[8];
+	private int hashCount;
+	private boolean zeroHash;
+	private byte[] registers;
+
+	/**
+	 * Cre un CSVHyperLogLog de prcision DEFAULT_PRECISION
+	 */
+	public CSVHyperLogLog() {
+		this(DEFAULT_PRECISION);
+	}
+
+	/**
+	 * Cre un CSVHyperLogLog de 2^precision registres, precision allant de 4  18
+	 */
+	public CSVHyperLogLog(final int precision) {
+		if ((precision < 4) || (precision > 18)) {
+			throw new IllegalArgumentException("L'argument precision doit tre compris entre 4 et 18 !");
+		}
+		this.precision = precision;
+	}
+
+	/**
+	 * Ajoute une valeur, hache directement sur ses caractres (une vue de CSVRowCursor.getCell peut donc tre passe sans crer de String)
+	 */
+	public void add(final CharSequence value) {
+		long hash = CSVRowMatcher.FNV_OFFSET_BASIS;
+		for (int i = 0; i < value.length(); i++) {
+			hash = (hash ^ value.charAt(i)) * FNV_PRIME;
+		}
+		addHash(mix(hash));
+	}
+
+	/**
+	 * Ajoute une valeur dj hache sur 64 bits. Les bits du hach doivent tre uniformment rpartis.
+	 */
+	public void addHash(final long hash) {
+		if (registers != null) {
+			update(hash);
+		} else if (hash == 0L) {
+			zeroHash = true;
+		} else {
+			final int mask = hashes.length - 1;
+			int slot = (int) (hash >>> 32) & mask;
+			while (hashes[slot] != 0L) {
+				if (hashes[slot] == hash) {
+					return;
+				}
+				slot = (slot + 1) & mask;
+			}
+			hashes[slot] = hash;
+			hashCount++;
+			if (hashCount > SPARSE_LIMIT) {
+				toRegisters();
+			} else if ((hashCount * 2) > hashes.length) {
+				final long[] oldHashes = hashes;
+				hashes = new long[oldHashes.length * 2];
+				hashCount = 0;
+				for (final long oldHash : oldHashes) {
+					if (oldHash != 0L) {
+						addHash(oldHash);
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Ajoute  ce CSVHyperLogLog les valeurs de other, de mme prcision
+	 */
+	public void merge(final CSVHyperLogLog other) {
+		if (other.precision != precision) {
+			throw new IllegalArgumentException(String.format("Prcisions diffrentes : %d et %d !", precision, other.precision));
+		}
+		if (other.registers == null) {
+			if (other.zeroHash) {
+				addHash(0L);
+			}
+			for (final long hash : other.hashes) {
+				if (hash != 0L) {
+					addHash(hash);
+				}
+			}
+			return;
+		}
+		if (registers == null) {
+			toRegisters();
+		}
+		for (int i = 0; i < registers.length; i++) {
+			if (other.registers[i] > registers[i]) {
+				registers[i] = other.registers[i];
+			}
+		}
+	}
+
+	/**
+	 * Retourne le nombre estim de valeurs distinctes ajoutes (exact tant qu'il ne dpasse pas SPARSE_LIMIT)
+	 */
+	public long estimate() {
+		if (registers == null) {
+			return hashCount + (zeroHash ? 1 : 0);
+		}
+		final int m = registers.length;
+		double sum = 0d;
+		int zeros = 0;
+		for (final byte register : registers) {
+			sum += 1d / (1L << register);
+			if (register == 0) {
+				zeros++;
+			}
+		}
+		final double alpha;
+		if (m == 16) {
+			alpha = 0.673d;
+		} else if (m == 32) {
+			alpha = 0.697d;
+		} else if (m == 64) {
+			alpha = 0.709d;
+		} else {
+			alpha = 0.7213d / (1d + (1.079d / m));
+		}
+		final double estimate = (alpha * m * m) / sum;
+		if ((estimate <= (2.5d * m)) && (zeros > 0)) {
+			return Math.round(m * Math.log((double) m / zeros));
+		}
+		return Math.round(estimate);
+	}
+
+	/**
+	 * Retourne la prcision de ce CSVHyperLogLog
+	 */
+	public int getPrecision() {
+		return precision;
+	}
+
+	private void toRegisters() {
+		registers = new byte[1 << precision];
+		if (zeroHash) {
+			update(0L);
+		}
+		for (final long hash : hashes) {
+			if (hash != 0L) {
+				update(hash);
+			}
+		}
+		hashes = null;
+		hashCount = 0;
+		zeroHash = false;
+	}
+
+	private void update(final long hash) {
+		final int index = (int) (hash >>> (64 - precision));
+		final int rank = Math.min(Long.numberOfLeadingZeros(hash << precision), 64 - precision) + 1;
+		if (rank > registers[index]) {
+			registers[index] = (byte) rank;
+		}
+	}
+
+	/**
+	 * Finalisation de MurmurHash3 : rpartit les bits du hach sur toute la largeur
+	 */
+	static long mix(final long hash) {
+		long h = hash;
+		h ^= h >>> 33;
+		h *= 0xFF51AFD7ED558CCDL;
+		h ^= h >>> 33;
+		h *= 0xC4CEB9FE1A85EC53L;
+		h ^= h >>> 33;
+		return h;
+	}
+
+	/**
+	 * Retourne une copie indpendante de ce CSVHyperLogLog
+	 */
+	CSVHyperLogLog copy() {
+		final CSVHyperLogLog copy = new CSVHyperLogLog(precision);
+		copy.hashes = (hashes != null) ? hashes.clone() : null;
+		copy.hashCount = hashCount;
+		copy.zeroHash = zeroHash;
+		copy.registers = (registers != null) ? registers.clone() : null;
+		return copy;
+	}
+}
@@ -0,0 +1,279 @@
+package com.humbletools.smalljavatools;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * CSVIngestion lit de nombreux fichiers CSV simultanment, chacun par son propre CSVParser, et transmet leurs lignes par lots  un CSVIngestionSink.
+ * </br></br> Au plus threadCount fichiers sont ouverts  la fois : un nouveau fichier n'est soumis au pool qu' la fin d'un autre, si bien que la limite
+ * tient quel que soit l'ExecutorService fourni. Les lots passent par une file borne : quand le CSVIngestionSink, appel depuis le thread appelant, est
+ * plus lent que la lecture, les threads de lecture attendent (contre-pression) au lieu d'accumuler les lignes en mmoire.</br></br> Une erreur de
+ * lecture n'interrompt que son fichier : elle est consigne dans son CSVFileReport et les autres fichiers sont lus normalement. Une erreur du
+ * CSVIngestionSink interrompt toute l'ingestion.
+ *
+ * @author lmadeuf
+ */
+public class CSVIngestion {
+
+	/**
+	 * Nombre par dfaut de lignes d'un lot
+	 */
+	public static final int DEFAULT_BATCH_SIZE = 1024;
+
+	/**
+	 * Nombre par dfaut de lots en attente dans la file
+	 */
+	public static final int DEFAULT_QUEUE_CAPACITY = 64;
+
+	private final String charset;
+	private final Character separator;
+	private int threadCount = Runtime.getRuntime().availableProcessors();
+	private int batchSize = DEFAULT_BATCH_SIZE;
+	private int queueCapacity = DEFAULT_QUEUE_CAPACITY;
+	private boolean header;
+	private ExecutorService executor;
+
+	/**
+	 * Cre une CSVIngestion avec le sparateur csv csvSeparator et l'encodage charset (CSVCharsets.AUTO_DETECT accept) pour tous les fichiers
+	 */
+	public CSVIngestion(final String charset, final Character csvSeparator) {
+		if (charset == null) {
+			throw new IllegalArgumentException("L'encodage des fichiers doit tre spcifi !");
+		}
+		if (csvSeparator == null) {
+			throw new IllegalArgumentException("L'argument csvSeparator doit tre renseign !");
+		}
+		this.charset = charset;
+		separator = csvSeparator;
+	}
+
+	/**
+	 * Fixe le nombre maximal de fichiers lus simultanment, par dfaut le nombre de processeurs
+	 */
+	public CSVIngestion setThreadCount(final int threadCount) {
+		if (threadCount <= 0) {
+			throw new IllegalArgumentException("L'argument threadCount doit tre strictement positif !");
+		}
+		this.threadCount = threadCount;
+		return this;
+	}
+
+	/**
+	 * Fixe le nombre maximal de lignes d'un lot transmis au CSVIngestionSink
+	 */
+	public CSVIngestion setBatchSize(final int batchSize) {
+		if (batchSize <= 0) {
+			throw new IllegalArgumentException("L'argument batchSize doit tre strictement positif !");
+		}
+		this.batchSize = batchSize;
+		return this;
+	}
+
+	/**
+	 * Fixe le nombre de lots lus d'avance au-del duquel les threads de lecture attendent le CSVIngestionSink
+	 */
+	public CSVIngestion setQueueCapacity(final int queueCapacity) {
+		if (queueCapacity <= 0) {
+			throw new IllegalArgumentException("L'argument queueCapacity doit tre strictement positif !");
+		}
+		this.queueCapacity = queueCapacity;
+		return this;
+	}
+
+	/**
+	 * Indique si la premire ligne de donnes de chaque fichier (aprs le "sep=" ventuel) est un en-tte,  ne pas transmettre
+	 */
+	public CSVIngestion setHeader(final boolean header) {
+		this.header = header;
+		return this;
+	}
+
+	/**
+	 * Fixe l'ExecutorService qui lit les fichiers. Si executor est null (par dfaut), un pool de threadCount threads est cr puis arrt  chaque
+	 * ingestion. Un pool de threads virtuels peut tre fourni sur un JDK qui en dispose : la limite de threadCount fichiers ouverts s'applique toujours.
+	 */
+	public CSVIngestion setExecutor(final ExecutorService executor) {
+		this.executor = executor;
+		return this;
+	}
+
+	/**
+	 * Lit les fichiers du rpertoire directory dont le nom correspond au motif glob (par exemple "*.csv", voir FileSystem.getPathMatcher), dans l'ordre de
+	 * leurs noms
+	 *
+	 * @return le bilan de chaque fichier, dans l'ordre de lecture
+	 * @throws IOException - Si le rpertoire ne peut pas tre parcouru ou si le CSVIngestionSink lve une IOException
+	 */
+	public List<CSVFileReport> ingest(final String directory, final String glob, final CSVIngestionSink sink) throws IOException {
+		if ((directory == null) || (glob == null)) {
+			throw new IllegalArgumentException("Les arguments directory et glob doivent tre renseigns !");
+		}
+		final List<String> filePaths = new ArrayList<String>();
+		final DirectoryStream<Path> stream = Files.newDirectoryStream(Paths.get(directory), glob);
+		try {
+			for (final Path path : stream) {
+				if (Files.isRegularFile(path)) {
+					filePaths.add(path.toString());
+				}
+			}
+		} finally {
+			stream.close();
+		}
+		Collections.sort(filePaths);
+		return ingest(filePaths, sink);
+	}
+
+	/**
+	 * Lit les fichiers filePaths, au plus threadCount  la fois, et transmet leurs lignes au sink
+	 *
+	 * @return le bilan de chaque fichier, dans l'ordre de filePaths
+	 * @throws IOException - Si le CSVIngestionSink lve une IOException
+	 */
+	public List<CSVFileReport> ingest(final List<String> filePaths, final CSVIngestionSink sink) throws IOException {
+		if ((filePaths == null) || (sink == null)) {
+			throw new IllegalArgumentException("Les arguments filePaths et sink doivent tre renseigns !");
+		}
+		final BlockingQueue<Batch> queue = new ArrayBlockingQueue<Batch>(queueCapacity);
+		final ExecutorService pool = (executor != null) ? executor : Executors.newFixedThreadPool(threadCount);
+		final List<Future<?>> running = new ArrayList<Future<?>>(filePaths.size());
+		final CSVFileReport[] reports = new CSVFileReport[filePaths.size()];
+		try {
+			while ((running.size() < filePaths.size()) && (running.size() < threadCount)) {
+				running.add(pool.submit(new FileTask(filePaths.get(running.size()), running.size(), queue)));
+			}
+			int completed = 0;
+			while (completed < filePaths.size()) {
+				final Batch batch = queue.take();
+				if (batch.report == null) {
+					sink.handleBatch(filePaths.get(batch.fileIndex), batch.rows);
+					continue;
+				}
+				reports[batch.fileIndex] = batch.report;
+				running.set(batch.fileIndex, null);
+				completed++;
+				if (running.size() < filePaths.size()) {
+					running.add(pool.submit(new FileTask(filePaths.get(running.size()), running.size(), queue)));
+				}
+				sink.fileCompleted(batch.report);
+			}
+		} catch (final InterruptedException ie) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Ingestion interrompue !", ie);
+		} finally {
+			for (final Future<?> future : running) {
+				if (future != null) {
+					future.cancel(true);
+				}
+			}
+			if (executor == null) {
+				pool.shutdown();
+			}
+		}
+		final List<CSVFileReport> result = new ArrayList<CSVFileReport>(reports.length);
+		Collections.addAll(result, reports);
+		return result;
+	}
+
+	/**
+	 * Lot de lignes d'un fichier, ou bilan de fin de fichier si report est renseign
+	 */
+	private static final class Batch {
+		private final int fileIndex;
+		private final List<String[]> rows;
+		private final CSVFileReport report;
+
+		private Batch(final int fileIndex, final List<String[]> rows, final CSVFileReport report) {
+			this.fileIndex = fileIndex;
+			this.rows = rows;
+			this.report = report;
+		}
+	}
+
+	/**
+	 * Lecture d'un fichier : ses lots puis son bilan sont dposs dans la file
+	 */
+	private final class FileTask implements Runnable {
+		private final String filePath;
+		private final int fileIndex;
+		private final BlockingQueue<Batch> queue;
+		private long blockedNanos;
+
+		private FileTask(final String filePath, final int fileIndex, final BlockingQueue<Batch> queue) {
+			this.filePath = filePath;
+			this.fileIndex = fileIndex;
+			this.queue = queue;
+		}
+
+		@Override
+		public void run() {
+			final long start = System.nanoTime();
+			CSVParser parser = null;
+			long rowsDelivered = 0L;
+			Exception failure = null;
+			try {
+				parser = new CSVParser(filePath, charset, separator);
+				if (header && parser.hasNextLine()) {
+					parser.getNextRow();
+				}
+				List<String[]> rows = new ArrayList<String[]>(batchSize);
+				while (parser.hasNextLine()) {
+					rows.add(parser.getNextLineOfCells());
+					if (rows.size() == batchSize) {
+						put(new Batch(fileIndex, rows, null));
+						rowsDelivered += rows.size();
+						rows = new ArrayList<String[]>(batchSize);
+					}
+				}
+				if (!rows.isEmpty()) {
+					put(new Batch(fileIndex, rows, null));
+					rowsDelivered += rows.size();
+				}
+			} catch (final InterruptedException ie) {
+				closeQuietly(parser);
+				return;
+			} catch (final IOException ioe) {
+				failure = ioe;
+			} catch (final RuntimeException re) {
+				failure = re;
+			}
+			closeQuietly(parser);
+			final long linesRead = (parser != null) ? parser.getNumberOfLinesRead() : 0L;
+			final CSVFileReport report = new CSVFileReport(filePath, new File(filePath).length(), linesRead, rowsDelivered, System.nanoTime() - start,
+					blockedNanos, failure);
+			try {
+				put(new Batch(fileIndex, null, report));
+			} catch (final InterruptedException ie) {
+				Thread.currentThread().interrupt();
+			}
+		}
+
+		private void put(final Batch batch) throws InterruptedException {
+			if (!queue.offer(batch)) {
+				final long start = System.nanoTime();
+				queue.put(batch);
+				blockedNanos += System.nanoTime() - start;
+			}
+		}
+
+		private void closeQuietly(final CSVParser parser) {
+			if (parser != null) {
+				try {
+					parser.close();
+				} catch (final IOException ioe) {
+					// la lecture est termine ou dj en erreur : l'chec de la fermeture n'apporte rien au bilan
+				}
+			}
+		}
+	}
+}
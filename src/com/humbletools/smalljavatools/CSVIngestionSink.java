@@ -0,0 +1,29 @@
+package com.humbletools.smalljavatools;
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * CSVIngestionSink reoit les lignes des fichiers lus par CSVIngestion. Ses mthodes sont toujours appeles depuis le thread qui a lanc l'ingestion,
+ * jamais simultanment : l'implmentation n'a pas besoin d'tre thread-safe. Tant qu'elle traite un lot, les threads de lecture ne peuvent prendre
+ * d'avance que dans la limite de la file d'attente.
+ *
+ * @author lmadeuf
+ */
+public interface CSVIngestionSink {
+
+	/**
+	 * Traite un lot de lignes conscutives d'un fichier. Les lots d'un mme fichier arrivent dans l'ordre ; ceux de fichiers diffrents peuvent tre
+	 * entrelacs.
+	 *
+	 * @param filePath le chemin du fichier lu
+	 * @param rows les lignes du lot, dont le handler devient propritaire
+	 */
+	void handleBatch(String filePath, List<String[]> rows) throws IOException;
+
+	/**
+	 * Signale la fin de la lecture d'un fichier, aprs son dernier lot, russie ou non (voir CSVFileReport.getFailure())
+	 *
+	 * @param report le bilan de lecture du fichier
+	 */
+	void fileCompleted(CSVFileReport report) throws IOException;
+}
@@ -0,0 +1,306 @@
+package com.humbletools.smalljavatools;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.UTFDataFormatException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+
+/**
+ * CSVLineIndex est un index clairsem des lignes d'un fichier CSV : il retient la position en octets d'une ligne sur getInterval(). Il est construit par un
+ * premier parcours du fichier (les octets sont seulement franchis, sans dcodage) et enregistr dans un fichier compagnon "fichier.csv.idx", rutilis
+ * tant que le fichier CSV n'est pas modifi.</br></br> L'index permet de reprendre une lecture interrompue sans relire le dbut du fichier : il suffit de
+ * conserver le dernier numro de ligne trait (getNumberOfLinesRead()) comme point de reprise et de le passer au constructeur CSVParser(CSVLineIndex, long)
+ * ou MappedCSVParser(CSVLineIndex, long). L'accs  une ligne quelconque ne parcourt jamais plus de getInterval() lignes.</br></br> Les lignes sont
+ * numrotes  partir de 1 comme dans getNumberOfLinesRead(), la ligne "sep=" ventuelle comprise. Comme pour MappedCSVParser, le sparateur et les fins de
+ * ligne doivent tre cods sur un seul octet.
+ *
+ * @author lmadeuf
+ */
+public final class CSVLineIndex {
+
+	/**
+	 * Nombre de lignes par dfaut entre deux positions retenues
+	 */
+	public static final int DEFAULT_INTERVAL = 1024;
+
+	/**
+	 * Extension ajoute au chemin du fichier CSV pour obtenir celui de son index
+	 */
+	public static final String INDEX_EXTENSION = ".idx";
+
+	private static final int MAGIC = 0x43535649; // "CSVI"
+	private static final int VERSION = 1;
+
+	private final String filePath;
+	private final long fileSize;
+	private final long lastModified;
+	private final String requestedCharset;
+	private final Character requestedSeparator;
+	private final String charset;
+	private final Character separator;
+	private final int interval;
+	private final long lineCount;
+	private final long[] offsets;
+
+	private CSVLineIndex(final String filePath, final long fileSize, final long lastModified, final String requestedCharset,
+			final Character requestedSeparator, final String charset, final Character separator, final int interval, final long lineCount,
+			final long[] offsets) {
+		this.filePath = filePath;
+		this.fileSize = fileSize;
+		this.lastModified = lastModified;
+		this.requestedCharset = requestedCharset;
+		this.requestedSeparator = requestedSeparator;
+		this.charset = charset;
+		this.separator = separator;
+		this.interval = interval;
+		this.lineCount = lineCount;
+		this.offsets = offsets;
+	}
+
+	/**
+	 * Retourne l'index du fichier filePath lu avec l'encodage charset et le sparateur csvSeparator : l'index enregistr est relu s'il correspond au fichier
+	 * et  ces paramtres, sinon il est construit avec DEFAULT_INTERVAL puis enregistr. Un index enregistr illisible (tronqu, corrompu) est trait comme
+	 * un index prim.
+	 *
+	 * @throws IOException si le fichier ne peut pas tre lu ou si l'index ne peut pas tre enregistr
+	 */
+	public static CSVLineIndex open(final String filePath, final String charset, final Character csvSeparator) throws IOException {
+		CSVLineIndex saved;
+		try {
+			saved = load(filePath);
+		} catch (final IOException ioe) {
+			saved = null;
+		}
+		if ((saved != null) && saved.requestedCharset.equals(charset) && saved.requestedSeparator.equals(csvSeparator)) {
+			return saved;
+		}
+		final CSVLineIndex index = build(filePath, charset, csvSeparator, DEFAULT_INTERVAL);
+		index.save();
+		return index;
+	}
+
+	/**
+	 * Construit l'index du fichier filePath en le parcourant entirement, sans l'enregistrer. Une position est retenue toutes les interval lignes.
+	 *
+	 * @throws IOException si le fichier ne peut pas tre lu
+	 */
+	public static CSVLineIndex build(final String filePath, final String charset, final Character csvSeparator, final int interval) throws IOException {
+		if (interval <= 0) {
+			throw new IllegalArgumentException("L'argument interval doit tre strictement positif !");
+		}
+		final File file = new File(filePath);
+		final long lastModified = file.lastModified();
+		final MappedCSVParser parser = new MappedCSVParser(filePath, charset, csvSeparator);
+		try {
+			long[] offsets = new long[16];
+			int count = 1;
+			while (parser.hasNextLine()) {
+				parser.readNextLine();
+				final long lineNumber = parser.getNumberOfLinesRead();
+				if ((lineNumber > 1L) && (((lineNumber - 1L) % interval) == 0L)) {
+					if (count == offsets.length) {
+						offsets = Arrays.copyOf(offsets, count * 2);
+					}
+					offsets[count++] = parser.getLineStartOffset();
+				}
+			}
+			return new CSVLineIndex(filePath, file.length(), lastModified, charset, csvSeparator, parser.getCharset(), parser.getSeparator(), interval,
+					parser.getNumberOfLinesRead(), Arrays.copyOf(offsets, count));
+		} finally {
+			parser.close();
+		}
+	}
+
+	/**
+	 * Relit l'index enregistr du fichier filePath. Retourne null si aucun index n'est enregistr, si le fichier a chang depuis sa construction ou si
+	 * l'index est tronqu ou incohrent.
+	 *
+	 * @throws IOException si l'index existe mais ne peut pas tre lu
+	 */
+	public static CSVLineIndex load(final String filePath) throws IOException {
+		final File indexFile = new File(filePath + INDEX_EXTENSION);
+		if (!indexFile.isFile()) {
+			return null;
+		}
+		final DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(indexFile)));
+		try {
+			if ((in.readInt() != MAGIC) || (in.readInt() != VERSION)) {
+				return null;
+			}
+			final long fileSize = in.readLong();
+			final long lastModified = in.readLong();
+			final File file = new File(filePath);
+			if ((file.length() != fileSize) || (file.lastModified() != lastModified)) {
+				return null;
+			}
+			final String requestedCharset = in.readUTF();
+			final Character requestedSeparator = in.readChar();
+			final String charset = in.readUTF();
+			final Character separator = in.readChar();
+			final int interval = in.readInt();
+			final long lineCount = in.readLong();
+			final int count = in.readInt();
+			// une position pour la ligne 1 puis une toutes les interval lignes, comme dans build()
+			if ((interval <= 0) || (lineCount < 0L) || (count != (1L + (Math.max(lineCount, 1L) - 1L) / interval))) {
+				return null;
+			}
+			final long[] offsets = new long[count];
+			for (int i = 0; i < offsets.length; i++) {
+				offsets[i] = in.readLong();
+				if ((offsets[i] < ((i == 0) ? 0L : offsets[i - 1])) || (offsets[i] > fileSize)) {
+					return null;
+				}
+			}
+			return new CSVLineIndex(filePath, fileSize, lastModified, requestedCharset, requestedSeparator, charset, separator, interval, lineCount, offsets);
+		} catch (final EOFException eofe) {
+			// index tronqu
+			return null;
+		} catch (final UTFDataFormatException udfe) {
+			return null;
+		} finally {
+			in.close();
+		}
+	}
+
+	/**
+	 * Enregistre l'index dans le fichier compagnon getIndexFilePath(). Le fichier est crit  ct puis renomm, si bien qu'un index interrompu en cours
+	 * d'criture n'est jamais relu.
+	 *
+	 * @throws IOException si l'index ne peut pas tre crit
+	 */
+	public void save() throws IOException {
+		final File indexFile = new File(getIndexFilePath());
+		final File tempFile = new File(indexFile.getPath() + ".tmp");
+		final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile)));
+		try {
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			out.writeLong(fileSize);
+			out.writeLong(lastModified);
+			out.writeUTF(requestedCharset);
+			out.writeChar(requestedSeparator);
+			out.writeUTF(charset);
+			out.writeChar(separator);
+			out.writeInt(interval);
+			out.writeLong(lineCount);
+			out.writeInt(offsets.length);
+			for (final long offset : offsets) {
+				out.writeLong(offset);
+			}
+		} finally {
+			out.close();
+		}
+		Files.move(tempFile.toPath(), indexFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+	}
+
+	/**
+	 * Retourne la position en octets du dbut de la ligne lineNumber, entre 1 et getLineCount() + 1 (cette dernire valeur dsignant la fin du fichier). Au
+	 * plus getInterval() - 1 lignes sont parcourues depuis la position retenue la plus proche.
+	 *
+	 * @throws IOException si le fichier ne peut pas tre lu
+	 * @throws IllegalArgumentException si lineNumber est hors du fichier
+	 */
+	public long getOffset(final long lineNumber) throws IOException {
+		if ((lineNumber < 1L) || (lineNumber > (lineCount + 1L))) {
+			throw new IllegalArgumentException(String.format("La ligne %d n'existe pas dans le fichier %s (%d lignes) !", lineNumber, filePath, lineCount));
+		}
+		final int entry = (int) Math.min((lineNumber - 1L) / interval, offsets.length - 1);
+		long remaining = lineNumber - 1L - ((long) entry * interval);
+		if (remaining == 0L) {
+			return offsets[entry];
+		}
+		final MappedCSVParser parser = newScanner(offsets[entry]);
+		try {
+			long offset = offsets[entry];
+			while (remaining-- > 0L) {
+				offset = parser.skipLine();
+			}
+			return offset;
+		} finally {
+			parser.close();
+		}
+	}
+
+	/**
+	 * Retourne le numro de la premire ligne qui commence  la position offset ou aprs, getLineCount() + 1 si aucune ligne ne commence aprs offset. Permet
+	 * de reprendre une lecture  partir d'une position en octets enregistre par MappedCSVParser.getNextLineOffset().
+	 *
+	 * @throws IOException si le fichier ne peut pas tre lu
+	 */
+	public long getLineNumber(final long offset) throws IOException {
+		int entry = Arrays.binarySearch(offsets, offset);
+		if (entry >= 0) {
+			return 1L + ((long) entry * interval);
+		}
+		entry = -entry - 2;
+		if (entry < 0) {
+			return 1L;
+		}
+		final MappedCSVParser parser = newScanner(offsets[entry]);
+		try {
+			long lineNumber = 1L + ((long) entry * interval);
+			long position = offsets[entry];
+			while ((position < offset) && (position < fileSize)) {
+				position = parser.skipLine();
+				lineNumber++;
+			}
+			return Math.min(lineNumber, lineCount + 1L);
+		} finally {
+			parser.close();
+		}
+	}
+
+	private MappedCSVParser newScanner(final long offset) throws IOException {
+		return new MappedCSVParser(filePath, charset, separator, MappedCSVParser.DEFAULT_WINDOW_SIZE, offset, Long.MAX_VALUE);
+	}
+
+	/**
+	 * Retourne le chemin du fichier CSV index
+	 */
+	public String getFilePath() {
+		return filePath;
+	}
+
+	/**
+	 * Retourne le chemin du fichier compagnon dans lequel l'index est enregistr
+	 */
+	public String getIndexFilePath() {
+		return filePath + INDEX_EXTENSION;
+	}
+
+	/**
+	 * Retourne l'encodage du fichier, tel que retenu lors de la construction de l'index
+	 */
+	public String getCharset() {
+		return charset;
+	}
+
+	/**
+	 * Retourne le sparateur du fichier, tel que retenu lors de la construction de l'index (y compris celui dclar par une ligne "sep=")
+	 */
+	public Character getSeparator() {
+		return separator;
+	}
+
+	/**
+	 * Retourne le nombre de lignes entre deux positions retenues
+	 */
+	public int getInterval() {
+		return interval;
+	}
+
+	/**
+	 * Retourne le nombre de lignes du fichier
+	 */
+	public long getLineCount() {
+		return lineCount;
+	}
+}
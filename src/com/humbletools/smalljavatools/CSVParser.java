@@ -1,29 +1,48 @@
 package com.humbletools.smalljavatools;
+import java.io.Closeable;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.IOException;
-import java.util.Scanner;
+import java.io.InputStream;
+import java.io.PushbackInputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
 
 /**
- * CSVParser est un utilitaire permettant de lire un fichier CSV depuis un cheminFichier fourni. CSVParser se base sur la classe java.util.Scanner pour lire le
- * fichier et prsenter ligne par ligne son contenu au code utilisant un CSVParser. CSVParser ne conservera pas de rfrence sur chaque ligne lue et il ne faut
+ * CSVParser est un utilitaire permettant de lire un fichier CSV depuis un cheminFichier fourni. CSVParser lit le fichier dans un tampon rutilis (voir
+ * CSVRowCursor) et prsente ligne par ligne son contenu au code utilisant un CSVParser. CSVParser ne conservera pas de rfrence sur chaque ligne lue et il ne faut
  * pas garder chaque ligne en mmoire quand on utilise CSVParser : cela permet de ne pas saturer la mmoire et ainsi de lire des fichiers trs lourds,
  * contrairement au com.atos.awl.pht.has.sara.batch.sigaes.tools.CsvReader qui ne supportera que de petits fichiers. L'encodage utilis par dfaut est
  * UTF-8.</br></br> Cas d'utilisation : </br> - Instancier un CSVParser via l'un des constructeurs</br> - Dans une boucle while (appeler hasNextLine())
  * rcuprer chaque ligne sans conserver de rfrence en dehors de la boucle</br> - Quand on sort de la boucle, les ressources sont cltures automatiquement
+ * </br></br> Les cellules sont dcoupes selon la RFC 4180 : une cellule entre guillemets peut contenir le sparateur, des fins de ligne et des guillemets
+ * doubls, et les cellules vides en fin de ligne sont conserves.</br></br> Pour ne rien allouer par ligne, utiliser getNextRow()  la place de getNextLineOfCells() : le CSVRowCursor retourn est rutilis pour toutes
+ * les lignes et permet de lire les cellules comme CharSequence, int, long ou double directement dans le tampon.</br></br> CSVParser est aussi Iterable et
+ * Closeable : on peut le parcourir dans une boucle for-each dclare dans un try-with-resources, le fichier est alors ferm mme si l'on sort de la boucle
+ * avant la fin.</br></br> Pour reprendre une lecture interrompue sans relire le dbut du fichier, voir CSVLineIndex.</br></br> Pour recouvrir les attentes disque et l'analyse, utiliser le constructeur acceptant readAheadBufferSize et
+ * readAheadQueueDepth : le fichier est alors lu en avance par un thread ddi (voir ReadAheadInputStream).</br></br> Un CSVParser peut aussi lire un
+ * InputStream ou un ReadableByteChannel. Les fichiers et flux compresss en gzip ou en zip sont reconnus  leurs premiers octets et dcompresss  la vole
+ * par le thread de lecture anticipe, en parallle de l'analyse (voir CSVCompression).
  * 
  * @author lmadeuf - 06/2014
  */
-public class CSVParser {
+public class CSVParser implements Closeable, Iterable<String[]> {
 
 
-	private final FileInputStream inputStream;
-	private final Scanner scanner;
+	private final InputStream inputStream;
+	private final ReadAheadInputStream readAheadStream;
+	private final CSVRowCursor cursor;
 	private final String filePath;
 	private final String charset;
+	private final CSVCompression compression;
 
 	private Character separator;
 	private Long numberOfLinesRead;
+	private CSVDictionary[] columnDictionaries = new CSVDictionary[0];
 
 	/**
 	 * Sparateur CSV par dfaut correspondant  la locale fr
@@ -63,26 +82,161 @@ public class CSVParser {
 	}
 
 	/**
-	 * Cre un CSVParser avec le fichier spcifi par le filePath, le sparateur csv csvSeparator et l'encodage charset
+	 * Cre un CSVParser avec le fichier spcifi par le filePath, le sparateur csv csvSeparator et l'encodage charset. Si charset vaut
+	 * CSVCharsets.AUTO_DETECT, l'encodage est dtect  partir du dbut du fichier (voir CSVCharsets.detect) et getCharset() retourne l'encodage retenu.
 	 * 
 	 * @throws FileNotFoundException si le fichier spcifi n'existe pas
+	 * @throws IllegalStateException si le dbut du fichier ne peut pas tre lu pour dtecter son encodage
 	 */
 	public CSVParser(final String filePath, final String charset, final Character csvSeparator) throws FileNotFoundException {
-		if(charset==null){
-			throw new IllegalArgumentException("L'encodage du fichier doit tre spcifi !");
+		this(filePath, charset, csvSeparator, 0, 0);
+	}
+
+	/**
+	 * Cre un CSVParser identique  CSVParser(filePath, charset, csvSeparator), dont le fichier est lu en avance par un thread ddi dans
+	 * readAheadQueueDepth tampons de readAheadBufferSize octets (voir ReadAheadInputStream). Un readAheadQueueDepth  0 dsactive la lecture anticipe.
+	 * 
+	 * @throws FileNotFoundException si le fichier spcifi n'existe pas
+	 * @throws IllegalStateException si le dbut du fichier ne peut pas tre lu pour dtecter sa compression ou son encodage
+	 */
+	public CSVParser(final String filePath, final String charset, final Character csvSeparator, final int readAheadBufferSize,
+			final int readAheadQueueDepth) throws FileNotFoundException {
+		this(openFile(filePath), filePath, charset, csvSeparator, readAheadBufferSize, readAheadQueueDepth);
+	}
+
+	/**
+	 * Cre un CSVParser lisant le flux in, avec le sparateur csv csvSeparator et l'encodage charset (CSVCharsets.AUTO_DETECT accept). Le flux peut tre
+	 * compress en gzip ou en zip (voir CSVCompression). Il est ferm par close() ou  la fin de la lecture.
+	 * 
+	 * @throws IllegalStateException si le dbut du flux ne peut pas tre lu pour dtecter sa compression ou son encodage
+	 */
+	public CSVParser(final InputStream in, final String charset, final Character csvSeparator) {
+		this(in, charset, csvSeparator, 0, 0);
+	}
+
+	/**
+	 * Cre un CSVParser identique  CSVParser(in, charset, csvSeparator), dont le flux est lu en avance par un thread ddi dans readAheadQueueDepth tampons
+	 * de readAheadBufferSize octets. Un readAheadQueueDepth  0 dsactive la lecture anticipe, sauf pour un flux compress.
+	 * 
+	 * @throws IllegalStateException si le dbut du flux ne peut pas tre lu pour dtecter sa compression ou son encodage
+	 */
+	public CSVParser(final InputStream in, final String charset, final Character csvSeparator, final int readAheadBufferSize,
+			final int readAheadQueueDepth) {
+		this(checkSource(in), null, charset, csvSeparator, readAheadBufferSize, readAheadQueueDepth);
+	}
+
+	/**
+	 * Cre un CSVParser lisant le canal channel, avec le sparateur csv csvSeparator et l'encodage charset (CSVCharsets.AUTO_DETECT accept). Le canal peut
+	 * tre compress en gzip ou en zip (voir CSVCompression). Il est ferm par close() ou  la fin de la lecture.
+	 * 
+	 * @throws IllegalStateException si le dbut du canal ne peut pas tre lu pour dtecter sa compression ou son encodage
+	 */
+	public CSVParser(final ReadableByteChannel channel, final String charset, final Character csvSeparator) {
+		this(Channels.newInputStream(checkSource(channel)), null, charset, csvSeparator, 0, 0);
+	}
+
+	/**
+	 * Cre un CSVParser qui reprend la lecture du fichier de l'index  la ligne lineNumber (numrote comme getNumberOfLinesRead()), en se positionnant
+	 * directement sur son premier octet. L'encodage et le sparateur sont ceux retenus lors de la construction de l'index, et getNumberOfLinesRead()
+	 * poursuit la numrotation du fichier : un point de reprise se rsume donc au dernier numro de ligne trait.
+	 * 
+	 * @throws IOException si le fichier ne peut pas tre lu
+	 * @throws IllegalArgumentException si lineNumber est hors du fichier
+	 */
+	public CSVParser(final CSVLineIndex index, final long lineNumber) throws IOException {
+		this(openFileAt(index, lineNumber), index.getFilePath(), index.getCharset(), index.getSeparator(), 0, 0);
+		numberOfLinesRead = lineNumber - 1;
+	}
+
+	/**
+	 * Constructeur commun : le flux source appartient au CSVParser, qui le ferme en cas d'erreur. Un flux compress est toujours dcompress par le thread
+	 * de lecture anticipe, avec les tailles par dfaut de ReadAheadInputStream si readAheadQueueDepth vaut 0.
+	 */
+	private CSVParser(final InputStream source, final String filePath, final String charset, final Character csvSeparator, final int readAheadBufferSize,
+			final int readAheadQueueDepth) {
+		this.filePath = filePath;
+		try {
+			if (charset == null) {
+				throw new IllegalArgumentException("L'encodage du fichier doit tre spcifi !");
+			}
+			if (csvSeparator == null) {
+				throw new IllegalArgumentException("L'argument csvSeparator soir tre renseign !");
+			}
+			if ((readAheadQueueDepth < 0) || ((readAheadQueueDepth > 0) && (readAheadBufferSize <= 0))) {
+				throw new IllegalArgumentException("Les arguments readAheadBufferSize et readAheadQueueDepth sont incorrects !");
+			}
+		} catch (final IllegalArgumentException iae) {
+			closeQuietly(source);
+			throw iae;
 		}
-		if(filePath == null){
+		final boolean autoDetect = CSVCharsets.AUTO_DETECT.equals(charset);
+		final Charset decodingCharset = autoDetect ? null : Charset.forName(charset);
+		separator = csvSeparator;
+		InputStream stream = source;
+		try {
+			final PushbackInputStream peekableStream = new PushbackInputStream(source, CSVCompression.MAGIC_LENGTH);
+			compression = CSVCompression.detect(peekableStream);
+			stream = compression.decompress(peekableStream);
+			if (compression != CSVCompression.NONE) {
+				readAheadStream = (readAheadQueueDepth > 0) ? new ReadAheadInputStream(Channels.newChannel(stream), readAheadBufferSize, readAheadQueueDepth)
+						: new ReadAheadInputStream(Channels.newChannel(stream));
+			} else if (readAheadQueueDepth > 0) {
+				readAheadStream = new ReadAheadInputStream(Channels.newChannel(stream), readAheadBufferSize, readAheadQueueDepth);
+			} else {
+				readAheadStream = null;
+			}
+			inputStream = (readAheadStream != null) ? readAheadStream : stream;
+			if (autoDetect) {
+				final PushbackInputStream probedStream = new PushbackInputStream(inputStream, CSVCharsets.DETECTION_PROBE_SIZE);
+				final byte[] probe = new byte[CSVCharsets.DETECTION_PROBE_SIZE];
+				final int length = CSVCharsets.readFully(probedStream, probe);
+				probedStream.unread(probe, 0, length);
+				this.charset = CSVCharsets.detect(probe, length);
+				cursor = new CSVRowCursor(CSVCharsets.newReader(probedStream, Charset.forName(this.charset)), csvSeparator);
+			} else {
+				this.charset = charset;
+				cursor = new CSVRowCursor(CSVCharsets.newReader(inputStream, decodingCharset), csvSeparator);
+			}
+		} catch (final IOException ioe) {
+			closeQuietly(stream);
+			closeQuietly(source);
+			throw new IllegalStateException(String.format("Impossible de dtecter la compression ou l'encodage de %s !", getSourceName()), ioe);
+		}
+		numberOfLinesRead = 0L;
+	}
+
+	private static FileInputStream openFile(final String filePath) throws FileNotFoundException {
+		if (filePath == null) {
 			throw new IllegalArgumentException("L'argument filePath doit tre spcifi !");
 		}
-		if (csvSeparator == null) {
-			throw new IllegalArgumentException("L'argument csvSeparator soir tre renseign !");
+		return new FileInputStream(filePath);
+	}
+
+	private static FileInputStream openFileAt(final CSVLineIndex index, final long lineNumber) throws IOException {
+		final long offset = checkSource(index).getOffset(lineNumber);
+		final FileInputStream in = openFile(index.getFilePath());
+		try {
+			in.getChannel().position(offset);
+		} catch (final IOException ioe) {
+			closeQuietly(in);
+			throw ioe;
+		}
+		return in;
+	}
+
+	private static <T> T checkSource(final T source) {
+		if (source == null) {
+			throw new IllegalArgumentException("La source du CSV doit tre renseigne !");
+		}
+		return source;
+	}
+
+	private static void closeQuietly(final Closeable closeable) {
+		try {
+			closeable.close();
+		} catch (final IOException ignored) {
+			// l'erreur initiale est la plus significative
 		}
-		this.filePath = filePath;
-		this.charset = charset;
-		separator = csvSeparator;
-		inputStream = new FileInputStream(filePath);
-		scanner = new Scanner(inputStream, charset);
-		numberOfLinesRead = 0L;
 	}
 
 	/**
@@ -94,23 +248,58 @@ public class CSVParser {
 	 * @throws IllegalStateException - Si le fichier ne contient pas de donnes
 	 */
 	public String[] getNextLineOfCells() throws IOException, IllegalStateException {
-		String[] cellulesRetour = null;
+		final CSVRowCursor row = getNextRow();
+		final String[] cellulesRetour = new String[row.getCellCount()];
+		for (int i = 0; i < cellulesRetour.length; i++) {
+			if ((i < columnDictionaries.length) && (columnDictionaries[i] != null)) {
+				cellulesRetour[i] = row.getInterned(i, columnDictionaries[i]);
+			} else {
+				cellulesRetour[i] = row.getString(i);
+			}
+		}
+		return cellulesRetour;
+	}
 
+	/**
+	 * Associe un CSVDictionary  la cellule cellIndex : getNextLineOfCells() retourne alors pour cette cellule l'instance canonique du dictionnaire,
+	 * recherche directement dans le tampon de lecture, au lieu d'une nouvelle String  chaque ligne. Pour les colonnes de faible cardinalit (pays, statut,
+	 * code produit), les lignes conserves en mmoire partagent ainsi leurs valeurs ; pour ne conserver qu'un code entier par cellule, voir
+	 * CSVRowCursor.getCode ou les colonnes ENUM de CSVSchema. Un dictionary null retire l'association.
+	 */
+	public void setColumnDictionary(final int cellIndex, final CSVDictionary dictionary) {
+		if (cellIndex < 0) {
+			throw new IllegalArgumentException("L'argument cellIndex doit tre positif !");
+		}
+		if (cellIndex >= columnDictionaries.length) {
+			columnDictionaries = Arrays.copyOf(columnDictionaries, cellIndex + 1);
+		}
+		columnDictionaries[cellIndex] = dictionary;
+	}
+
+	/**
+	 * Permet de lire la ligne suivante dans le fichier sans rien allouer. Le CSVRowCursor retourn est toujours le mme : ses cellules ne sont valables que
+	 * jusqu'au prochain appel. La dtection du "sep=" est identique  celle de getNextLineOfCells().
+	 * 
+	 * @throws IOException - Si une erreur I/O survient
+	 * @throws IllegalStateException - Si le fichier ne contient pas de donnes
+	 * @throws NoSuchElementException - S'il n'y a plus de ligne  lire
+	 */
+	public CSVRowCursor getNextRow() throws IOException, IllegalStateException {
 		try {
-			String ligneCSV = scanner.nextLine();
+			if (!cursor.next()) {
+				closeResources();
+				throw new NoSuchElementException("Il n'y a plus de ligne  lire !");
+			}
 			numberOfLinesRead++;
-			if (ligneCSV != null) {
-				if ((numberOfLinesRead == 1L) && ligneCSV.contains("sep=") && (ligneCSV.length() == 5)) {
-					separator = ligneCSV.charAt(4);
-					if (scanner.hasNextLine()) {
-						ligneCSV = scanner.nextLine();
-						numberOfLinesRead++;
-					} else {
-						closeResources();
-						throw new IllegalStateException("Le fichier CSV ne contient pas de donnes !");
-					}
+			if ((numberOfLinesRead == 1L) && cursor.isSeparatorDeclaration()) {
+				separator = cursor.getDeclaredSeparator();
+				cursor.setSeparator(separator);
+				if (cursor.next()) {
+					numberOfLinesRead++;
+				} else {
+					closeResources();
+					throw new IllegalStateException("Le fichier CSV ne contient pas de donnes !");
 				}
-				cellulesRetour = ligneCSV.split(separator.toString());
 			}
 		} catch (final IllegalStateException ise) {
 			closeResources();
@@ -119,8 +308,59 @@ public class CSVParser {
 			closeResources();
 			throw ioe;
 		}
+		return cursor;
+	}
 
-		return cellulesRetour;
+	/**
+	 * Lit toutes les lignes restantes du fichier, dcode chacune selon le schma et la transmet au handler. Les cellules sont dcodes directement depuis le
+	 * tampon de lecture : aucune String n'est cre, hormis  la premire occurrence de chaque valeur des colonnes ENUM. Pour ignorer une ligne d'en-tte,
+	 * la lire avec getNextLineOfCells() avant d'appeler cette mthode.
+	 * 
+	 * @return le nombre de lignes transmises au handler
+	 * @throws IOException - Si une erreur I/O survient
+	 * @throws IllegalStateException - Si une cellule est absente ou mal forme, avec la ligne et la colonne en cause
+	 */
+	public long readRows(final CSVSchema schema, final CSVTypedRowHandler handler) throws IOException, IllegalStateException {
+		if ((schema == null) || (handler == null)) {
+			throw new IllegalArgumentException("Les arguments schema et handler doivent tre renseigns !");
+		}
+		final CSVTypedRow typedRow = new CSVTypedRow(schema);
+		long rows = 0L;
+		try {
+			while (hasNextLine()) {
+				typedRow.read(getNextRow());
+				handler.handleRow(typedRow);
+				rows++;
+			}
+		} catch (final IllegalStateException ise) {
+			closeResources();
+			throw ise;
+		}
+		return rows;
+	}
+
+	/**
+	 * Vide le lot puis le remplit avec les lignes suivantes du fichier, jusqu' sa capacit ou jusqu' la fin du fichier. Seules les colonnes du schma du
+	 * lot sont dcodes. Le mme lot peut tre pass  chaque appel : la mmoire consomme reste constante quelle que soit la taille du fichier.
+	 * 
+	 * @return le nombre de lignes du lot, 0 si la fin du fichier est atteinte
+	 * @throws IOException - Si une erreur I/O survient
+	 * @throws IllegalStateException - Si une cellule est absente ou mal forme, avec la ligne et la colonne en cause
+	 */
+	public int readBatch(final CSVColumnBatch batch) throws IOException, IllegalStateException {
+		if (batch == null) {
+			throw new IllegalArgumentException("L'argument batch doit tre renseign !");
+		}
+		batch.clear();
+		try {
+			while (!batch.isFull() && hasNextLine()) {
+				batch.add(getNextRow());
+			}
+		} catch (final IllegalStateException ise) {
+			closeResources();
+			throw ise;
+		}
+		return batch.getRowCount();
 	}
 
 	/**
@@ -133,7 +373,7 @@ public class CSVParser {
 	public boolean hasNextLine() throws IOException {
 		boolean hasNextLine = true;
 		try {
-			hasNextLine = scanner.hasNextLine();
+			hasNextLine = cursor.hasNext();
 			if (!hasNextLine) {
 				closeResources();
 			}
@@ -147,22 +387,77 @@ public class CSVParser {
 		return hasNextLine;
 	}
 
+	/**
+	 * Retourne un itrateur paresseux sur les lignes restantes du fichier, pour utiliser ce CSVParser dans une boucle for-each. Les ressources sont cltures
+	 *  la fin du fichier ; en cas de sortie anticipe de la boucle, il faut appeler close() (ou dclarer le CSVParser dans un try-with-resources). Les
+	 * erreurs I/O sont remontes sous forme d'IllegalStateException.
+	 */
+	@Override
+	public Iterator<String[]> iterator() {
+		return new Iterator<String[]>() {
+			@Override
+			public boolean hasNext() {
+				try {
+					return hasNextLine();
+				} catch (final IOException ioe) {
+					throw new IllegalStateException(String.format("Erreur de lecture de %s !", getSourceName()), ioe);
+				}
+			}
+
+			@Override
+			public String[] next() {
+				if (!hasNext()) {
+					throw new NoSuchElementException("Il n'y a plus de ligne  lire !");
+				}
+				try {
+					return getNextLineOfCells();
+				} catch (final IOException ioe) {
+					throw new IllegalStateException(String.format("Erreur de lecture de %s !", getSourceName()), ioe);
+				}
+			}
+
+			@Override
+			public void remove() {
+				throw new UnsupportedOperationException("Un CSVParser ne permet pas de supprimer une ligne !");
+			}
+		};
+	}
+
+	/**
+	 * Clture les ressources utilises par ce CSVParser, mme si le fichier n'a pas t lu jusqu'au bout. Aprs cet appel, hasNextLine() renvoie false.
+	 */
+	@Override
+	public void close() throws IOException {
+		closeResources();
+	}
+
 	private void closeResources() throws IOException {
+		if (cursor != null) {
+			cursor.close();
+		}
 		if (inputStream != null) {
 			inputStream.close();
 		}
-		if (scanner != null) {
-			scanner.close();
-		}
 	}
 
 	/**
-	 * Retourne le chemin vers le fichier utilis par ce CSVParser
+	 * Retourne le chemin vers le fichier utilis par ce CSVParser, null s'il lit un flux
 	 */
 	public String getFilePath() {
 		return filePath;
 	}
 
+	/**
+	 * Retourne la compression reconnue au dbut du fichier ou du flux
+	 */
+	public CSVCompression getCompression() {
+		return compression;
+	}
+
+	private String getSourceName() {
+		return (filePath != null) ? filePath : "flux";
+	}
+
 	/**
 	 * Retourne le charset utilis par ce CSVParser
 	 */
@@ -177,6 +472,13 @@ public class CSVParser {
 		return separator;
 	}
 
+	/**
+	 * Retourne le flux de lecture anticipe de ce CSVParser, pour consulter ses compteurs d'attente, ou null si la lecture anticipe n'est pas active
+	 */
+	public ReadAheadInputStream getReadAheadStream() {
+		return readAheadStream;
+	}
+
 	/**
 	 * Retourne le nombre de lignes lues par le parseur
 	 */
@@ -194,43 +496,12 @@ public class CSVParser {
 	 * @param putToLowercase mettre  vrai si l'on veut mettre  la casse basse avant comparaison
 	 * @param removeUnsafeCharacters retire les caractres avec ce pattern regex [&#@%',_\\t\\s]
 	 * @return vrai si les tableaux contiennent des valeurs similaires, faux sinon
+	 * @deprecated utiliser un CSVRowMatcher construit une fois pour la ligne attendue, qui vite de la normaliser  chaque comparaison
 	 */
+	@Deprecated
 	public static boolean isValeursIdentiques(final String[] expected, final String[] values, final boolean trim, final boolean putToLowercase,
 			final boolean removeUnsafeCharacters) {
-		boolean isStructureCorrecte = true;
-		if ((expected == null) || (values == null) || (expected.length != values.length)) {
-			isStructureCorrecte = false;
-		} else {
-			for (int i = 0; i < expected.length; i++) {
-				if ((expected[i] == null) || (values[i] == null)) {
-					isStructureCorrecte = false;
-					break;
-				} else {
-					String expectedValue = new String(expected[i]);
-					String value = new String(values[i]);
-
-					if (trim) {
-						expectedValue = expectedValue.trim();
-						value = value.trim();
-					}
-					if (putToLowercase) {
-						expectedValue = expectedValue.toLowerCase();
-						value = value.toLowerCase();
-					}
-					if (removeUnsafeCharacters) {
-						final String regexPattern = "[&#@%',_\\t\\s]";
-						final String replacement = "";
-						expectedValue = expectedValue.replaceAll(regexPattern, replacement);
-						value = value.replaceAll(regexPattern, replacement);
-					}
-					if (!expectedValue.equalsIgnoreCase(value)) {
-						isStructureCorrecte = false;
-						break;
-					}
-				}
-			}
-		}
-		return isStructureCorrecte;
+		return (expected != null) && new CSVRowMatcher(expected, trim, putToLowercase, removeUnsafeCharacters).matches(values);
 	}
 
 }
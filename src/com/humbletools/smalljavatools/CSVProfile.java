@@ -0,0 +1,308 @@
+package com.humbletools.smalljavatools;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * CSVProfile est le rsultat d'un CSVProfiler : le profil de chaque colonne (CSVColumnProfile), la rpartition des lignes selon leur nombre de cellules
+ * et les lignes mal formes, c'est--dire celles dont le nombre de cellules diffre du nombre attendu.</br></br> Pour chaque nombre de cellules rencontr,
+ * seuls les maxMalformedLines premiers numros de ligne sont conservs : la mmoire occupe ne dpend pas de la taille du fichier. Le nombre de cellules
+ * attendu peut ainsi n'tre connu qu' la fin de la lecture (nombre le plus frquent) ; s'il est connu ds le dbut, les lignes mal formes sont cartes
+ * du profil des colonnes. Les numros de ligne sont ceux de CSVParser.getNumberOfLinesRead(),
+ * "sep=" et en-tte compris.
+ *
+ * @author lmadeuf
+ */
+public final class CSVProfile {
+
+	/**
+	 * Dcalage de l'indice de plage dans la position d'une ligne (indice de plage << CHUNK_SHIFT | numro de ligne dans la plage)
+	 */
+	static final int CHUNK_SHIFT = 40;
+
+	private final String[] datePatterns;
+	private final int distinctPrecision;
+	private final int quantileCapacity;
+	private final int maxMalformedLines;
+	private final int knownCellCount;
+
+	private CSVColumnProfile[] columns = new CSVColumnProfile[0];
+	private final Map<Integer, CellCount> cellCounts = new TreeMap<Integer, CellCount>();
+	private CellCount lastCellCount;
+	private long rowCount;
+	private long profiledRowCount;
+
+	private int expectedCellCount;
+	private long malformedRowCount;
+	private long[] malformedLineNumbers;
+	private CSVRowCursor loadedRow;
+
+	CSVProfile(final String[] datePatterns, final int distinctPrecision, final int quantileCapacity, final int maxMalformedLines, final int knownCellCount) {
+		this.datePatterns = datePatterns;
+		this.distinctPrecision = distinctPrecision;
+		this.quantileCapacity = quantileCapacity;
+		this.maxMalformedLines = maxMalformedLines;
+		this.knownCellCount = knownCellCount;
+	}
+
+	/**
+	 * Prend en compte la ligne courante de row, dont la position est son numro de ligne pour une lecture squentielle ou (indice de plage << CHUNK_SHIFT)
+	 * | numro dans la plage pour une lecture par plages : dans les deux cas, les positions croissent avec les numros de ligne. Si le nombre de cellules
+	 * attendu est connu avant la lecture (knownCellCount positif), les lignes qui ne l'ont pas sont seulement comptes : leurs cellules, probablement
+	 * dcales, ne faussent pas le profil des colonnes.
+	 */
+	void add(final CSVRowCursor row, final long position) {
+		rowCount++;
+		final int cellCount = row.getCellCount();
+		CellCount count = lastCellCount;
+		if ((count == null) || (count.cellCount != cellCount)) {
+			count = cellCounts.get(cellCount);
+			if (count == null) {
+				count = new CellCount(cellCount);
+				cellCounts.put(cellCount, count);
+			}
+			lastCellCount = count;
+		}
+		count.add(position, maxMalformedLines);
+		if ((knownCellCount > 0) && (cellCount != knownCellCount)) {
+			return;
+		}
+		profiledRowCount++;
+		if (cellCount > columns.length) {
+			final int previous = columns.length;
+			columns = Arrays.copyOf(columns, cellCount);
+			for (int i = previous; i < cellCount; i++) {
+				columns[i] = new CSVColumnProfile(i, datePatterns, distinctPrecision, quantileCapacity);
+			}
+		}
+		for (int i = 0; i < cellCount; i++) {
+			columns[i].add(row, i);
+		}
+	}
+
+	/**
+	 * Prend en compte une ligne dj dcoupe (lecture par un ParallelCSVParser)
+	 */
+	void add(final String[] cells, final long position) {
+		if (loadedRow == null) {
+			loadedRow = new CSVRowCursor(null, ';');
+		}
+		loadedRow.load(cells, 0L);
+		add(loadedRow, position);
+	}
+
+	/**
+	 * Ajoute  ce profil celui des lignes lues par un autre thread
+	 */
+	void merge(final CSVProfile other) {
+		rowCount += other.rowCount;
+		profiledRowCount += other.profiledRowCount;
+		if (other.columns.length > columns.length) {
+			final int previous = columns.length;
+			columns = Arrays.copyOf(columns, other.columns.length);
+			System.arraycopy(other.columns, previous, columns, previous, other.columns.length - previous);
+		}
+		for (int i = 0; i < Math.min(other.columns.length, columns.length); i++) {
+			if (columns[i] != other.columns[i]) {
+				columns[i].merge(other.columns[i]);
+			}
+		}
+		for (final CellCount otherCount : other.cellCounts.values()) {
+			final CellCount count = cellCounts.get(otherCount.cellCount);
+			if (count == null) {
+				cellCounts.put(otherCount.cellCount, otherCount);
+			} else {
+				count.merge(otherCount, maxMalformedLines);
+			}
+		}
+		lastCellCount = null;
+	}
+
+	/**
+	 * Termine le profil une fois toutes les lignes lues : convertit les positions en numros de ligne  partir du nombre de lignes lues par chaque plage
+	 * (null pour une lecture squentielle), choisit le nombre de cellules attendu (knownCellCount s'il est positif, sinon le plus frquent) et retient les
+	 * lignes mal formes.
+	 */
+	void complete(final long[] chunkLines, final String[] names) {
+		final long[] chunkStarts = new long[(chunkLines != null) ? chunkLines.length : 1];
+		for (int i = 1; i < chunkStarts.length; i++) {
+			chunkStarts[i] = chunkStarts[i - 1] + chunkLines[i - 1];
+		}
+		long modalRows = -1L;
+		expectedCellCount = knownCellCount;
+		for (final CellCount count : cellCounts.values()) {
+			count.complete(chunkStarts, maxMalformedLines);
+			if ((knownCellCount <= 0) && (count.rows > modalRows)) {
+				modalRows = count.rows;
+				expectedCellCount = count.cellCount;
+			}
+		}
+		malformedRowCount = 0L;
+		long[] lines = new long[0];
+		for (final CellCount count : cellCounts.values()) {
+			if (count.cellCount != expectedCellCount) {
+				malformedRowCount += count.rows;
+				final int previous = lines.length;
+				lines = Arrays.copyOf(lines, previous + count.size);
+				System.arraycopy(count.positions, 0, lines, previous, count.size);
+			}
+		}
+		Arrays.sort(lines);
+		malformedLineNumbers = Arrays.copyOf(lines, Math.min(lines.length, maxMalformedLines));
+		for (final CSVColumnProfile column : columns) {
+			column.complete(((names != null) && (column.getIndex() < names.length)) ? names[column.getIndex()] : null, profiledRowCount);
+		}
+	}
+
+	/**
+	 * Retourne le nombre de lignes de donnes profiles (en-tte non compris)
+	 */
+	public long getRowCount() {
+		return rowCount;
+	}
+
+	/**
+	 * Retourne le nombre de lignes prises en compte dans le profil des colonnes : toutes les lignes, sauf les lignes mal formes quand le nombre de cellules
+	 * attendu est connu avant la lecture (en-tte ou CSVProfiler.setExpectedCellCount)
+	 */
+	public long getProfiledRowCount() {
+		return profiledRowCount;
+	}
+
+	/**
+	 * Retourne le nombre de colonnes, c'est--dire le plus grand nombre de cellules d'une ligne prise en compte dans le profil des colonnes
+	 */
+	public int getColumnCount() {
+		return columns.length;
+	}
+
+	/**
+	 * Retourne le profil de la colonne d'indice index
+	 */
+	public CSVColumnProfile getColumn(final int index) {
+		if ((index < 0) || (index >= columns.length)) {
+			throw new IndexOutOfBoundsException(String.format("Le profil ne contient pas de colonne d'indice %d !", index));
+		}
+		return columns[index];
+	}
+
+	/**
+	 * Retourne les diffrents nombres de cellules par ligne rencontrs, par ordre croissant
+	 */
+	public int[] getCellCounts() {
+		final int[] result = new int[cellCounts.size()];
+		int i = 0;
+		for (final Integer cellCount : cellCounts.keySet()) {
+			result[i++] = cellCount;
+		}
+		return result;
+	}
+
+	/**
+	 * Retourne le nombre de lignes de cellCount cellules
+	 */
+	public long getRowCount(final int cellCount) {
+		final CellCount count = cellCounts.get(cellCount);
+		return (count != null) ? count.rows : 0L;
+	}
+
+	/**
+	 * Retourne le nombre de cellules attendu par ligne : celui fix par CSVProfiler.setExpectedCellCount, sinon celui de l'en-tte, sinon le plus frquent
+	 */
+	public int getExpectedCellCount() {
+		return expectedCellCount;
+	}
+
+	/**
+	 * Retourne le nombre de lignes dont le nombre de cellules diffre de getExpectedCellCount()
+	 */
+	public long getMalformedRowCount() {
+		return malformedRowCount;
+	}
+
+	/**
+	 * Retourne par ordre croissant les numros des premires lignes mal formes, au plus maxMalformedLines (voir CSVProfiler.setMaxMalformedLines)
+	 */
+	public long[] getMalformedLineNumbers() {
+		return malformedLineNumbers.clone();
+	}
+
+	/**
+	 * Retourne un CSVSchema dclarant chaque colonne renseigne avec son type dduit, son chelle ou son motif de date, pour charger le fichier profil
+	 */
+	public CSVSchema toSchema() {
+		final CSVSchema schema = new CSVSchema();
+		for (final CSVColumnProfile column : columns) {
+			final CSVColumnType type = column.getInferredType();
+			if (type == CSVColumnType.INT) {
+				schema.addIntColumn(column.getIndex());
+			} else if (type == CSVColumnType.LONG) {
+				schema.addLongColumn(column.getIndex());
+			} else if (type == CSVColumnType.DECIMAL) {
+				schema.addDecimalColumn(column.getIndex(), column.getScale());
+			} else if (type == CSVColumnType.DOUBLE) {
+				schema.addDoubleColumn(column.getIndex());
+			} else if (type == CSVColumnType.DATE) {
+				schema.addDateColumn(column.getIndex(), column.getDatePattern());
+			} else if (type == CSVColumnType.ENUM) {
+				schema.addEnumColumn(column.getIndex());
+			}
+		}
+		return schema;
+	}
+
+	/**
+	 * Lignes ayant un mme nombre de cellules : leur nombre et les positions des premires d'entre elles
+	 */
+	private static final class CellCount {
+		private final int cellCount;
+		private long rows;
+		private long[] positions = new long[0];
+		private int size;
+
+		private CellCount(final int cellCount) {
+			this.cellCount = cellCount;
+		}
+
+		/**
+		 * Compte une ligne et conserve sa position. Les positions sont conserves jusqu'au double de max puis rduites aux max plus petites, car avec une
+		 * lecture par plages les lignes n'arrivent pas dans l'ordre du fichier.
+		 */
+		private void add(final long position, final int max) {
+			rows++;
+			if (max == 0) {
+				return;
+			}
+			if (size == positions.length) {
+				if (size >= (2 * max)) {
+					Arrays.sort(positions, 0, size);
+					size = max;
+				} else {
+					positions = Arrays.copyOf(positions, Math.min(2 * max, Math.max(16, size * 2)));
+				}
+			}
+			positions[size++] = position;
+		}
+
+		private void merge(final CellCount other, final int max) {
+			rows += other.rows;
+			positions = Arrays.copyOf(positions, size + other.size);
+			System.arraycopy(other.positions, 0, positions, size, other.size);
+			size += other.size;
+			Arrays.sort(positions, 0, size);
+			size = Math.min(size, max);
+		}
+
+		/**
+		 * Convertit les positions en numros de ligne et ne conserve que les max plus petits
+		 */
+		private void complete(final long[] chunkStarts, final int max) {
+			Arrays.sort(positions, 0, size);
+			size = Math.min(size, max);
+			for (int i = 0; i < size; i++) {
+				final int chunk = (int) (positions[i] >>> CHUNK_SHIFT);
+				positions[i] = chunkStarts[chunk] + (positions[i] & ((1L << CHUNK_SHIFT) - 1));
+			}
+		}
+	}
+}
@@ -0,0 +1,206 @@
+package com.humbletools.smalljavatools;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * CSVProfiler tablit en une seule lecture le profil d'un fichier CSV avant son chargement : rpartition des lignes selon leur nombre de cellules, lignes
+ * mal formes (par numro de ligne), et pour chaque colonne le taux de cellules vides ou absentes, le type dduit, les valeurs extrmes, le nombre estim
+ * de valeurs distinctes et les quantiles estims des valeurs numriques. Le rsultat est un CSVProfile, dont toSchema() donne le CSVSchema du
+ * fichier.</br></br> La mmoire occupe ne dpend que du nombre de colonnes : les valeurs distinctes sont estimes par un CSVHyperLogLog et les quantiles
+ * par un CSVQuantileSketch par colonne. Avec un CSVParser, les cellules sont lues directement dans le tampon de lecture ; avec un ParallelCSVParser,
+ * chaque thread de lecture tablit un profil partiel de ses plages, et les profils partiels sont fusionns  la fin.</br></br> Exemple : new
+ * CSVProfiler().setHeader(true).setDatePatterns("dd/MM/yyyy").profile(parser)
+ *
+ * @author lmadeuf
+ */
+public class CSVProfiler {
+
+	/**
+	 * Motifs de date essays par dfaut
+	 */
+	public static final String[] DEFAULT_DATE_PATTERNS = { "dd/MM/yyyy", "yyyy-MM-dd" };
+
+	/**
+	 * Nombre par dfaut de numros de lignes mal formes conservs
+	 */
+	public static final int DEFAULT_MAX_MALFORMED_LINES = 1000;
+
+	private boolean header;
+	private int expectedCellCount;
+	private String[] datePatterns = DEFAULT_DATE_PATTERNS.clone();
+	private int distinctPrecision = CSVHyperLogLog.DEFAULT_PRECISION;
+	private int quantileCapacity = CSVQuantileSketch.DEFAULT_CAPACITY;
+	private int maxMalformedLines = DEFAULT_MAX_MALFORMED_LINES;
+
+	/**
+	 * Indique si la premire ligne de donnes (aprs le "sep=" ventuel) est un en-tte : elle donne le nom des colonnes et le nombre de cellules attendu
+	 */
+	public CSVProfiler setHeader(final boolean header) {
+		this.header = header;
+		return this;
+	}
+
+	/**
+	 * Fixe le nombre de cellules attendu par ligne. Par dfaut (0), c'est le nombre de cellules de l'en-tte, ou  dfaut le nombre le plus frquent.
+	 */
+	public CSVProfiler setExpectedCellCount(final int expectedCellCount) {
+		if (expectedCellCount < 0) {
+			throw new IllegalArgumentException("L'argument expectedCellCount doit tre positif !");
+		}
+		this.expectedCellCount = expectedCellCount;
+		return this;
+	}
+
+	/**
+	 * Fixe les motifs de date essays pour dduire le type DATE (voir CSVRowCursor.getDate), par ordre de prfrence, au plus 32
+	 */
+	public CSVProfiler setDatePatterns(final String... datePatterns) {
+		if ((datePatterns == null) || (datePatterns.length > 32)) {
+			throw new IllegalArgumentException("L'argument datePatterns doit tre renseign et contenir au plus 32 motifs !");
+		}
+		for (final String pattern : datePatterns) {
+			if ((pattern == null) || (pattern.indexOf('y') < 0) || (pattern.indexOf('M') < 0) || (pattern.indexOf('d') < 0)) {
+				throw new IllegalArgumentException("Chaque motif de date doit contenir l'anne (y), le mois (M) et le jour (d) !");
+			}
+		}
+		this.datePatterns = datePatterns.clone();
+		return this;
+	}
+
+	/**
+	 * Fixe la prcision des CSVHyperLogLog qui estiment le nombre de valeurs distinctes (CSVHyperLogLog.DEFAULT_PRECISION par dfaut)
+	 */
+	public CSVProfiler setDistinctPrecision(final int distinctPrecision) {
+		if ((distinctPrecision < 4) || (distinctPrecision > 18)) {
+			throw new IllegalArgumentException("L'argument distinctPrecision doit tre compris entre 4 et 18 !");
+		}
+		this.distinctPrecision = distinctPrecision;
+		return this;
+	}
+
+	/**
+	 * Fixe la capacit des CSVQuantileSketch qui estiment les quantiles (CSVQuantileSketch.DEFAULT_CAPACITY par dfaut) : plus elle est grande, plus
+	 * l'estimation est prcise et plus chaque colonne numrique occupe de mmoire
+	 */
+	public CSVProfiler setQuantileCapacity(final int quantileCapacity) {
+		if ((quantileCapacity < 8) || ((quantileCapacity & 1) != 0)) {
+			throw new IllegalArgumentException("L'argument quantileCapacity doit tre un nombre pair suprieur ou gal  8 !");
+		}
+		this.quantileCapacity = quantileCapacity;
+		return this;
+	}
+
+	/**
+	 * Fixe le nombre maximal de numros de lignes mal formes conservs (les premires du fichier). Le nombre total de lignes mal formes est toujours exact.
+	 */
+	public CSVProfiler setMaxMalformedLines(final int maxMalformedLines) {
+		if (maxMalformedLines < 0) {
+			throw new IllegalArgumentException("L'argument maxMalformedLines doit tre positif !");
+		}
+		this.maxMalformedLines = maxMalformedLines;
+		return this;
+	}
+
+	/**
+	 * Profile toutes les lignes restantes lues par parser
+	 *
+	 * @throws IOException - Si une erreur I/O survient
+	 * @throws IllegalStateException - Si le fichier est mal form au point de ne pas pouvoir tre dcoup en cellules
+	 */
+	public CSVProfile profile(final CSVParser parser) throws IOException, IllegalStateException {
+		if (parser == null) {
+			throw new IllegalArgumentException("L'argument parser doit tre renseign !");
+		}
+		final String[] names;
+		final CSVProfile profile;
+		try {
+			names = header ? readHeader(parser) : null;
+			profile = newProfile(knownCellCount(names));
+			while (parser.hasNextLine()) {
+				final CSVRowCursor row = parser.getNextRow();
+				profile.add(row, parser.getNumberOfLinesRead());
+			}
+		} catch (final IllegalStateException ise) {
+			parser.close();
+			throw ise;
+		}
+		profile.complete(null, names);
+		return profile;
+	}
+
+	/**
+	 * Profile toutes les lignes du fichier lu par parser sur plusieurs coeurs : chaque thread de lecture profile ses lignes dans un profil partiel, puis les
+	 * profils partiels sont fusionns. Les lignes mal formes sont retrouves par leur numro dans le fichier, comme avec un CSVParser.
+	 *
+	 * @throws IOException - Si une erreur I/O survient
+	 * @throws IllegalStateException - Si le fichier ne contient pas de donnes
+	 */
+	public CSVProfile profile(final ParallelCSVParser parser) throws IOException, IllegalStateException {
+		if (parser == null) {
+			throw new IllegalArgumentException("L'argument parser doit tre renseign !");
+		}
+		String[] names = null;
+		if (header) {
+			final CSVParser headerParser = new CSVParser(parser.getFilePath(), parser.getCharset(), parser.getSeparator());
+			try {
+				names = readHeader(headerParser);
+			} finally {
+				headerParser.close();
+			}
+		}
+		final int knownCellCount = knownCellCount(names);
+		final List<CSVProfile> partials = new ArrayList<CSVProfile>();
+		final ThreadLocal<CSVProfile> partial = new ThreadLocal<CSVProfile>() {
+			@Override
+			protected CSVProfile initialValue() {
+				final CSVProfile profile = newProfile(knownCellCount);
+				synchronized (partials) {
+					partials.add(profile);
+				}
+				return profile;
+			}
+		};
+		final long[] chunkLines = parser.parse(new ParallelCSVParser.ChunkRowHandler() {
+			@Override
+			public void handleRow(final int chunkIndex, final long lineInChunk, final String[] cells) {
+				partial.get().add(cells, ((long) chunkIndex << CSVProfile.CHUNK_SHIFT) | lineInChunk);
+			}
+		}, header);
+		final CSVProfile profile = partials.isEmpty() ? newProfile(knownCellCount) : partials.get(0);
+		for (int i = 1; i < partials.size(); i++) {
+			profile.merge(partials.get(i));
+		}
+		profile.complete(chunkLines, names);
+		return profile;
+	}
+
+	/**
+	 * Lit l'en-tte (premire ligne de donnes) et retourne ses cellules, null si le fichier est vide
+	 */
+	private static String[] readHeader(final CSVParser parser) throws IOException, IllegalStateException {
+		if (!parser.hasNextLine()) {
+			return null;
+		}
+		final CSVRowCursor row = parser.getNextRow();
+		final String[] names = new String[row.getCellCount()];
+		for (int i = 0; i < names.length; i++) {
+			names[i] = row.getString(i);
+		}
+		return names;
+	}
+
+	private CSVProfile newProfile(final int knownCellCount) {
+		return new CSVProfile(datePatterns, distinctPrecision, quantileCapacity, maxMalformedLines, knownCellCount);
+	}
+
+	/**
+	 * Retourne le nombre de cellules attendu s'il est connu avant la lecture des donnes, 0 sinon
+	 */
+	private int knownCellCount(final String[] names) {
+		if (expectedCellCount > 0) {
+			return expectedCellCount;
+		}
+		return (names != null) ? names.length : 0;
+	}
+}
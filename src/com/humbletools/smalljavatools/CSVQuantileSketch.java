@@ -0,0 +1,238 @@
+package com.humbletools.smalljavatools;
+import java.util.Arrays;
+
+/**
+ * CSVQuantileSketch estime les quantiles (mdiane, centiles...) d'une suite de nombres en mmoire borne. Les valeurs sont ranges par niveaux : le
+ * niveau h contient des valeurs qui en reprsentent chacune 2^h. Quand un niveau atteint sa capacit, il est tri et une valeur sur deux est promue au
+ * niveau suivant, si bien que la mmoire occupe crot avec le logarithme du nombre de valeurs.</br></br> L'erreur sur le rang d'un quantile est de
+ * l'ordre de quelques fois 1/capacity du nombre de valeurs ; le minimum et le maximum sont exacts. Deux CSVQuantileSketch de mme capacit se fusionnent
+ * par merge, par exemple pour runir les rsultats de plusieurs threads. Un CSVQuantileSketch n'est pas thread-safe.
+ *
+ * @author lmadeuf
+ */
+public final class CSVQuantileSketch {
+
+	/**
+	 * Capacit par dfaut d'un niveau
+	 */
+	public static final int DEFAULT_CAPACITY = 256;
+
+	private final int capacity;
+	private double[][] levels = new double[1][];
+	private int[] sizes = new int[1];
+	private long count;
+	private double minimum = Double.NaN;
+	private double maximum = Double.NaN;
+	private boolean oddOffset;
+
+	/**
+	 * Cre un CSVQuantileSketch de capacit DEFAULT_CAPACITY
+	 */
+	public CSVQuantileSketch() {
+		this(DEFAULT_CAPACITY);
+	}
+
+	/**
+	 * Cre un CSVQuantileSketch dont chaque niveau contient au plus capacity valeurs (nombre pair, au moins 8)
+	 */
+	public CSVQuantileSketch(final int capacity) {
+		if ((capacity < 8) || ((capacity & 1) != 0)) {
+			throw new IllegalArgumentException("L'argument capacity doit tre un nombre pair suprieur ou gal  8 !");
+		}
+		this.capacity = capacity;
+	}
+
+	/**
+	 * Ajoute une valeur. Les NaN sont ignors.
+	 */
+	public void add(final double value) {
+		if (Double.isNaN(value)) {
+			return;
+		}
+		if (count == 0L) {
+			minimum = value;
+			maximum = value;
+		} else {
+			minimum = Math.min(minimum, value);
+			maximum = Math.max(maximum, value);
+		}
+		count++;
+		if (levels[0] == null) {
+			levels[0] = new double[capacity];
+		}
+		levels[0][sizes[0]++] = value;
+		if (sizes[0] == capacity) {
+			compact(0);
+		}
+	}
+
+	/**
+	 * Ajoute  ce CSVQuantileSketch les valeurs de other, qui doit avoir la mme capacit
+	 */
+	public void merge(final CSVQuantileSketch other) {
+		if (other.capacity != capacity) {
+			throw new IllegalArgumentException("Les CSVQuantileSketch fusionns doivent avoir la mme capacit !");
+		}
+		if (other.count == 0L) {
+			return;
+		}
+		minimum = (count == 0L) ? other.minimum : Math.min(minimum, other.minimum);
+		maximum = (count == 0L) ? other.maximum : Math.max(maximum, other.maximum);
+		count += other.count;
+		for (int h = 0; h < other.levels.length; h++) {
+			if (other.sizes[h] == 0) {
+				continue;
+			}
+			ensureLevel(h);
+			final double[] level = ensureRoom(h, other.sizes[h]);
+			System.arraycopy(other.levels[h], 0, level, sizes[h], other.sizes[h]);
+			sizes[h] += other.sizes[h];
+		}
+		for (int h = 0; h < levels.length; h++) {
+			if (sizes[h] >= capacity) {
+				compact(h);
+			}
+		}
+	}
+
+	/**
+	 * Retourne une estimation du quantile d'ordre fraction (0 pour le minimum, 0,5 pour la mdiane, 1 pour le maximum), NaN si aucune valeur n'a t
+	 * ajoute
+	 */
+	public double getQuantile(final double fraction) {
+		if ((fraction < 0d) || (fraction > 1d)) {
+			throw new IllegalArgumentException("L'argument fraction doit tre compris entre 0 et 1 !");
+		}
+		if (count == 0L) {
+			return Double.NaN;
+		}
+		if (fraction == 0d) {
+			return minimum;
+		}
+		if (fraction == 1d) {
+			return maximum;
+		}
+		int total = 0;
+		for (final int size : sizes) {
+			total += size;
+		}
+		final double[] values = new double[total];
+		final long[] weights = new long[total];
+		int merged = 0;
+		for (int h = 0; h < levels.length; h++) {
+			if (sizes[h] == 0) {
+				continue;
+			}
+			final double[] level = Arrays.copyOf(levels[h], sizes[h]);
+			Arrays.sort(level);
+			merged = mergeSorted(values, weights, merged, level, 1L << h);
+		}
+		final double rank = fraction * count;
+		long cumulated = 0L;
+		for (int i = 0; i < merged; i++) {
+			cumulated += weights[i];
+			if (cumulated >= rank) {
+				return values[i];
+			}
+		}
+		return maximum;
+	}
+
+	/**
+	 * Retourne le nombre de valeurs ajoutes
+	 */
+	public long getCount() {
+		return count;
+	}
+
+	/**
+	 * Retourne la plus petite valeur ajoute, NaN si aucune valeur n'a t ajoute
+	 */
+	public double getMinimum() {
+		return minimum;
+	}
+
+	/**
+	 * Retourne la plus grande valeur ajoute, NaN si aucune valeur n'a t ajoute
+	 */
+	public double getMaximum() {
+		return maximum;
+	}
+
+	/**
+	 * Retourne la capacit d'un niveau
+	 */
+	public int getCapacity() {
+		return capacity;
+	}
+
+	/**
+	 * Trie le niveau h et promeut une valeur sur deux au niveau suivant, en alternant la position de dpart pour ne pas biaiser l'estimation. Si le niveau
+	 * contient un nombre impair de valeurs, la dernire y reste, si bien que le poids total est conserv.
+	 */
+	private void compact(final int h) {
+		final int size = sizes[h];
+		final int promoted = size >>> 1;
+		final double[] level = levels[h];
+		Arrays.sort(level, 0, size);
+		ensureLevel(h + 1);
+		final double[] next = ensureRoom(h + 1, promoted);
+		int n = sizes[h + 1];
+		for (int i = oddOffset ? 1 : 0; i < (promoted << 1); i += 2) {
+			next[n++] = level[i];
+		}
+		oddOffset = !oddOffset;
+		sizes[h + 1] = n;
+		if ((size & 1) != 0) {
+			level[0] = level[size - 1];
+			sizes[h] = 1;
+		} else {
+			sizes[h] = 0;
+		}
+		if (n >= capacity) {
+			compact(h + 1);
+		}
+	}
+
+	/**
+	 * Cre le niveau h s'il n'existe pas encore
+	 */
+	private void ensureLevel(final int h) {
+		if (h >= levels.length) {
+			levels = Arrays.copyOf(levels, h + 1);
+			sizes = Arrays.copyOf(sizes, h + 1);
+		}
+		if (levels[h] == null) {
+			levels[h] = new double[capacity];
+		}
+	}
+
+	/**
+	 * Agrandit si besoin le niveau h pour recevoir additional valeurs de plus et le retourne
+	 */
+	private double[] ensureRoom(final int h, final int additional) {
+		if ((sizes[h] + additional) > levels[h].length) {
+			levels[h] = Arrays.copyOf(levels[h], Math.max(sizes[h] + additional, levels[h].length * 2));
+		}
+		return levels[h];
+	}
+
+	/**
+	 * Fusionne les valeurs tries level, de poids weight, dans les merged premires valeurs tries de values et retourne le nouveau nombre de valeurs
+	 */
+	private static int mergeSorted(final double[] values, final long[] weights, final int merged, final double[] level, final long weight) {
+		int i = merged - 1;
+		int j = level.length - 1;
+		int k = (merged + level.length) - 1;
+		while (j >= 0) {
+			if ((i >= 0) && (values[i] > level[j])) {
+				values[k] = values[i];
+				weights[k--] = weights[i--];
+			} else {
+				values[k] = level[j--];
+				weights[k--] = weight;
+			}
+		}
+		return merged + level.length;
+	}
+}
@@ -0,0 +1,600 @@
+package com.humbletools.smalljavatools;
+import java.io.IOException;
+import java.io.Reader;
+
+/**
+ * CSVRowCursor est la ligne courante d'un CSVParser. Un mme CSVRowCursor est rutilis pour toutes les lignes du fichier : les caractres lus sont
+ * conservs dans un unique tampon et chaque cellule n'est qu'un intervalle de ce tampon. Les accesseurs getCell, getInt, getLong et getDouble lisent
+ * directement le tampon, si bien qu'une boucle de lecture n'alloue rien par ligne tant que l'on n'appelle pas getString.</br></br> Les valeurs retournes
+ * (y compris les CharSequence de getCell) ne sont valables que jusqu' la lecture de la ligne suivante : il faut les copier (toString) pour les conserver.
+ *
+ * @author lmadeuf
+ */
+public final class CSVRowCursor {
+
+	private static final int DEFAULT_BUFFER_SIZE = 64 * 1024;
+
+	/**
+	 * Etats de l'automate de lecture d'un enregistrement
+	 */
+	private static final int FIELD_START = 0;
+	private static final int UNQUOTED = 1;
+	private static final int QUOTED = 2;
+	private static final int QUOTE_IN_QUOTED = 3;
+
+	/**
+	 * Puissances de 10 reprsentables exactement par un double
+	 */
+	private static final double[] POWERS_OF_TEN = { 1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11, 1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18,
+			1e19, 1e20, 1e21, 1e22 };
+
+	/**
+	 * Plus grande mantisse reprsentable exactement par un double
+	 */
+	private static final long MAX_EXACT_MANTISSA = 1L << 53;
+
+	private final Reader reader;
+	private char separator;
+
+	private char[] buffer;
+	private int position;
+	private int limit;
+	private boolean endOfInput;
+
+	private int[] cellStarts;
+	private int[] cellEnds;
+	private CellView[] cellViews;
+	private int cellCount;
+	private long lineNumber;
+
+	CSVRowCursor(final Reader reader, final char separator) {
+		this.reader = reader;
+		this.separator = separator;
+		buffer = new char[DEFAULT_BUFFER_SIZE];
+		cellStarts = new int[16];
+		cellEnds = new int[16];
+		cellViews = new CellView[16];
+		for (int i = 0; i < cellViews.length; i++) {
+			cellViews[i] = new CellView(i);
+		}
+	}
+
+	/**
+	 * Retourne le nombre de cellules de la ligne courante
+	 */
+	public int getCellCount() {
+		return cellCount;
+	}
+
+	/**
+	 * Retourne le numro de la ligne courante (1 pour la premire ligne du fichier). Un enregistrement dont une cellule entre guillemets contient des fins
+	 * de ligne compte pour une seule ligne.
+	 */
+	public long getLineNumber() {
+		return lineNumber;
+	}
+
+	/**
+	 * Retourne une vue sur la cellule d'indice index. La vue est rutilise d'une ligne  l'autre et n'est valable que jusqu' la lecture de la ligne
+	 * suivante.
+	 *
+	 * @throws IndexOutOfBoundsException si la ligne ne contient pas cette cellule
+	 */
+	public CharSequence getCell(final int index) {
+		checkIndex(index);
+		return cellViews[index];
+	}
+
+	/**
+	 * Retourne la longueur de la cellule d'indice index
+	 *
+	 * @throws IndexOutOfBoundsException si la ligne ne contient pas cette cellule
+	 */
+	public int getCellLength(final int index) {
+		checkIndex(index);
+		return cellEnds[index] - cellStarts[index];
+	}
+
+	/**
+	 * Retourne une copie de la cellule d'indice index sous forme de String
+	 *
+	 * @throws IndexOutOfBoundsException si la ligne ne contient pas cette cellule
+	 */
+	public String getString(final int index) {
+		checkIndex(index);
+		return new String(buffer, cellStarts[index], cellEnds[index] - cellStarts[index]);
+	}
+
+	/**
+	 * Lit la cellule d'indice index comme un int, sans crer de String
+	 *
+	 * @throws NumberFormatException si la cellule ne contient pas un entier valide
+	 * @throws IndexOutOfBoundsException si la ligne ne contient pas cette cellule
+	 */
+	public int getInt(final int index) {
+		final long value = getLong(index);
+		if ((value < Integer.MIN_VALUE) || (value > Integer.MAX_VALUE)) {
+			throw numberFormatException(index);
+		}
+		return (int) value;
+	}
+
+	/**
+	 * Lit la cellule d'indice index comme un long, sans crer de String
+	 *
+	 * @throws NumberFormatException si la cellule ne contient pas un entier valide
+	 * @throws IndexOutOfBoundsException si la ligne ne contient pas cette cellule
+	 */
+	public long getLong(final int index) {
+		checkIndex(index);
+		final char[] chars = buffer;
+		final int end = cellEnds[index];
+		int i = cellStarts[index];
+		boolean negative = false;
+		if ((i < end) && ((chars[i] == '-') || (chars[i] == '+'))) {
+			negative = chars[i] == '-';
+			i++;
+		}
+		if (i == end) {
+			throw numberFormatException(index);
+		}
+		long value = 0;
+		for (; i < end; i++) {
+			final int digit = chars[i] - '0';
+			if ((digit < 0) || (digit > 9)) {
+				throw numberFormatException(index);
+			}
+			value = appendDigit(value, digit, index);
+		}
+		if (!negative) {
+			if (value == Long.MIN_VALUE) {
+				throw numberFormatException(index);
+			}
+			value = -value;
+		}
+		return value;
+	}
+
+	/**
+	 * Lit la cellule d'indice index comme un double. Les dcimaux simples (signe, chiffres et point, dont la mantisse tient exactement dans un double) sont
+	 * lus directement dans le tampon, les autres critures passent par Double.parseDouble.
+	 *
+	 * @throws NumberFormatException si la cellule ne contient pas un nombre valide
+	 * @throws IndexOutOfBoundsException si la ligne ne contient pas cette cellule
+	 */
+	public double getDouble(final int index) {
+		checkIndex(index);
+		final char[] chars = buffer;
+		final int end = cellEnds[index];
+		int i = cellStarts[index];
+		boolean negative = false;
+		if ((i < end) && ((chars[i] == '-') || (chars[i] == '+'))) {
+			negative = chars[i] == '-';
+			i++;
+		}
+		long mantissa = 0;
+		int digits = 0;
+		int decimals = -1;
+		for (; i < end; i++) {
+			final char c = chars[i];
+			if ((c >= '0') && (c <= '9')) {
+				mantissa = (mantissa * 10) + (c - '0');
+				digits++;
+				if (decimals >= 0) {
+					decimals++;
+				}
+				if (mantissa >= MAX_EXACT_MANTISSA) {
+					break;
+				}
+			} else if ((c == '.') && (decimals < 0)) {
+				decimals = 0;
+			} else {
+				break;
+			}
+		}
+		if ((i < end) || (digits == 0) || (decimals >= POWERS_OF_TEN.length)) {
+			return Double.parseDouble(getString(index));
+		}
+		final double value = (decimals > 0) ? (mantissa / POWERS_OF_TEN[decimals]) : mantissa;
+		return negative ? -value : value;
+	}
+
+	/**
+	 * Lit la cellule d'indice index comme un dcimal  chelle fixe et retourne sa valeur non mise  l'chelle : "12,3" lu avec une chelle de 2 donne 1230.
+	 * Le point et la virgule sont accepts comme sparateur dcimal ; les dcimales au-del de l'chelle doivent tre des zros.
+	 *
+	 * @throws NumberFormatException si la cellule ne contient pas un dcimal valide pour cette chelle
+	 * @throws IndexOutOfBoundsException si la ligne ne contient pas cette cellule
+	 */
+	public long getDecimal(final int index, final int scale) {
+		checkIndex(index);
+		final char[] chars = buffer;
+		final int end = cellEnds[index];
+		int i = cellStarts[index];
+		boolean negative = false;
+		if ((i < end) && ((chars[i] == '-') || (chars[i] == '+'))) {
+			negative = chars[i] == '-';
+			i++;
+		}
+		long value = 0;
+		int digits = 0;
+		int decimals = -1;
+		for (; i < end; i++) {
+			final char c = chars[i];
+			if ((c == '.') || (c == ',')) {
+				if (decimals >= 0) {
+					throw numberFormatException(index);
+				}
+				decimals = 0;
+				continue;
+			}
+			final int digit = c - '0';
+			if ((digit < 0) || (digit > 9)) {
+				throw numberFormatException(index);
+			}
+			digits++;
+			if ((decimals >= 0) && (decimals == scale)) {
+				if (digit != 0) {
+					throw numberFormatException(index);
+				}
+				continue;
+			}
+			value = appendDigit(value, digit, index);
+			if (decimals >= 0) {
+				decimals++;
+			}
+		}
+		if (digits == 0) {
+			throw numberFormatException(index);
+		}
+		for (int padding = Math.max(decimals, 0); padding < scale; padding++) {
+			value = appendDigit(value, 0, index);
+		}
+		if (!negative) {
+			if (value == Long.MIN_VALUE) {
+				throw numberFormatException(index);
+			}
+			value = -value;
+		}
+		return value;
+	}
+
+	/**
+	 * Lit la cellule d'indice index comme une date et retourne le nombre de jours depuis le 01/01/1970. Le motif est compos des lettres y (anne), M (mois)
+	 * et d (jour) et de caractres littraux, par exemple "dd/MM/yyyy" ou "yyyy-MM-dd". Une lettre rpte attend exactement autant de chiffres, une lettre
+	 * seule accepte un ou deux chiffres ("d/M/yyyy").
+	 *
+	 * @throws IllegalArgumentException si la cellule ne correspond pas au motif ou ne dsigne pas une date existante
+	 * @throws IndexOutOfBoundsException si la ligne ne contient pas cette cellule
+	 */
+	public int getDate(final int index, final String pattern) {
+		checkIndex(index);
+		final char[] chars = buffer;
+		final int end = cellEnds[index];
+		int i = cellStarts[index];
+		int year = 0;
+		int month = 0;
+		int day = 0;
+		int p = 0;
+		while (p < pattern.length()) {
+			final char letter = pattern.charAt(p);
+			int run = 1;
+			while (((p + run) < pattern.length()) && (pattern.charAt(p + run) == letter)) {
+				run++;
+			}
+			if ((letter == 'y') || (letter == 'M') || (letter == 'd')) {
+				final int maxDigits = (run == 1) ? 2 : run;
+				int value = 0;
+				int digits = 0;
+				while ((digits < maxDigits) && (i < end) && (chars[i] >= '0') && (chars[i] <= '9')) {
+					value = (value * 10) + (chars[i] - '0');
+					digits++;
+					i++;
+				}
+				if (digits < run) {
+					throw dateFormatException(index, pattern);
+				}
+				if (letter == 'y') {
+					year = value;
+				} else if (letter == 'M') {
+					month = value;
+				} else {
+					day = value;
+				}
+			} else {
+				for (int r = 0; r < run; r++) {
+					if ((i == end) || (chars[i] != letter)) {
+						throw dateFormatException(index, pattern);
+					}
+					i++;
+				}
+			}
+			p += run;
+		}
+		if ((i != end) || (month < 1) || (month > 12) || (day < 1) || (day > lengthOfMonth(year, month))) {
+			throw dateFormatException(index, pattern);
+		}
+		return toEpochDay(year, month, day);
+	}
+
+	/**
+	 * Retourne l'instance canonique de la cellule d'indice index dans le dictionnaire, sans crer de String si la valeur y est dj
+	 *
+	 * @throws IndexOutOfBoundsException si la ligne ne contient pas cette cellule
+	 */
+	public String getInterned(final int index, final CSVDictionary dictionary) {
+		checkIndex(index);
+		return dictionary.intern(buffer, cellStarts[index], cellEnds[index] - cellStarts[index]);
+	}
+
+	/**
+	 * Retourne le code de la cellule d'indice index dans le dictionnaire, en l'y ajoutant si elle n'y est pas encore
+	 *
+	 * @throws IndexOutOfBoundsException si la ligne ne contient pas cette cellule
+	 */
+	public int getCode(final int index, final CSVDictionary dictionary) {
+		checkIndex(index);
+		return dictionary.code(buffer, cellStarts[index], cellEnds[index] - cellStarts[index]);
+	}
+
+	/**
+	 * Lit l'enregistrement suivant dans le tampon en un seul passage, selon la RFC 4180 : une cellule commenant par un guillemet peut contenir le
+	 * sparateur, des fins de ligne et des guillemets doubls. Le contenu d'une cellule entre guillemets est rcrit sur place dans le tampon, sans ses
+	 * guillemets ; les cellules sans guillemets ne sont pas recopies. Retourne false si la fin du fichier est atteinte.
+	 */
+	boolean next() throws IOException {
+		if (!hasNext()) {
+			cellCount = 0;
+			return false;
+		}
+		int lineStart = position;
+		int i = lineStart;
+		int cellStart = lineStart;
+		int write = -1;
+		int state = FIELD_START;
+		cellCount = 0;
+		while (true) {
+			final char[] chars = buffer;
+			final char sep = separator;
+			final int end = limit;
+			while (i < end) {
+				final char c = chars[i];
+				if (state == QUOTED) {
+					if (c == '"') {
+						state = QUOTE_IN_QUOTED;
+					} else {
+						chars[write++] = c;
+					}
+				} else if (c == sep) {
+					addCell(cellStart, (write < 0) ? i : write);
+					cellStart = i + 1;
+					write = -1;
+					state = FIELD_START;
+				} else if ((c == '\n') || (c == '\r')) {
+					if ((c == '\r') && ((i + 1) == end) && !endOfInput) {
+						break;
+					}
+					addCell(cellStart, (write < 0) ? i : write);
+					position = ((c == '\r') && ((i + 1) < end) && (chars[i + 1] == '\n')) ? (i + 2) : (i + 1);
+					lineNumber++;
+					return true;
+				} else if ((state == FIELD_START) && (c == '"')) {
+					write = i;
+					state = QUOTED;
+				} else if (state == QUOTE_IN_QUOTED) {
+					chars[write++] = c;
+					state = (c == '"') ? QUOTED : UNQUOTED;
+				} else {
+					if (write >= 0) {
+						chars[write++] = c;
+					}
+					state = UNQUOTED;
+				}
+				i++;
+			}
+			if (endOfInput) {
+				addCell(cellStart, (write < 0) ? end : write);
+				position = end;
+				lineNumber++;
+				return true;
+			}
+			final int shift = lineStart;
+			lineStart = compactAndFill(lineStart);
+			i -= shift;
+			cellStart -= shift;
+			if (write >= 0) {
+				write -= shift;
+			}
+			for (int cell = 0; cell < cellCount; cell++) {
+				cellStarts[cell] -= shift;
+				cellEnds[cell] -= shift;
+			}
+		}
+	}
+
+	/**
+	 * Retourne true s'il reste des caractres  lire
+	 */
+	boolean hasNext() throws IOException {
+		if ((position == limit) && !endOfInput) {
+			position = compactAndFill(position);
+		}
+		return position < limit;
+	}
+
+	/**
+	 * Retourne true si la ligne courante est une dclaration de sparateur de la forme "sep=X"
+	 */
+	boolean isSeparatorDeclaration() {
+		if ((cellCount == 0) || ((cellEnds[cellCount - 1] - cellStarts[0]) != 5)) {
+			return false;
+		}
+		final int start = cellStarts[0];
+		return (buffer[start] == 's') && (buffer[start + 1] == 'e') && (buffer[start + 2] == 'p') && (buffer[start + 3] == '=');
+	}
+
+	/**
+	 * Retourne le sparateur dclar par la ligne courante "sep=X"
+	 */
+	char getDeclaredSeparator() {
+		return buffer[cellStarts[0] + 4];
+	}
+
+	/**
+	 * Remplace la ligne courante par des cellules dj dcoupes, recopies dans le tampon, pour les dcoder avec les mmes accesseurs. Rserv  un curseur
+	 * cr sans reader.
+	 */
+	void load(final String[] cells, final long lineNumber) {
+		int length = 0;
+		for (final String cell : cells) {
+			length += cell.length();
+		}
+		if (length > buffer.length) {
+			buffer = new char[Math.max(length, buffer.length * 2)];
+		}
+		cellCount = 0;
+		int end = 0;
+		for (final String cell : cells) {
+			cell.getChars(0, cell.length(), buffer, end);
+			addCell(end, end + cell.length());
+			end += cell.length();
+		}
+		position = end;
+		limit = end;
+		this.lineNumber = lineNumber;
+	}
+
+	void setSeparator(final char separator) {
+		this.separator = separator;
+	}
+
+	void close() throws IOException {
+		endOfInput = true;
+		position = limit;
+		reader.close();
+	}
+
+	/**
+	 * Dplace les caractres non consomms  partir de from en dbut de tampon, agrandit le tampon s'il est plein, puis le complte depuis le reader.
+	 * Retourne la nouvelle position du caractre qui tait en from.
+	 */
+	private int compactAndFill(final int from) throws IOException {
+		final int remaining = limit - from;
+		if (from > 0) {
+			System.arraycopy(buffer, from, buffer, 0, remaining);
+		} else if (remaining == buffer.length) {
+			final char[] newBuffer = new char[buffer.length * 2];
+			System.arraycopy(buffer, 0, newBuffer, 0, remaining);
+			buffer = newBuffer;
+		}
+		limit = remaining;
+		while ((limit < buffer.length) && !endOfInput) {
+			final int read = reader.read(buffer, limit, buffer.length - limit);
+			if (read < 0) {
+				endOfInput = true;
+			} else {
+				limit += read;
+			}
+		}
+		return 0;
+	}
+
+	private void addCell(final int start, final int end) {
+		if (cellCount == cellStarts.length) {
+			final int newLength = cellCount * 2;
+			final int[] newStarts = new int[newLength];
+			final int[] newEnds = new int[newLength];
+			final CellView[] newViews = new CellView[newLength];
+			System.arraycopy(cellStarts, 0, newStarts, 0, cellCount);
+			System.arraycopy(cellEnds, 0, newEnds, 0, cellCount);
+			System.arraycopy(cellViews, 0, newViews, 0, cellCount);
+			for (int i = cellCount; i < newLength; i++) {
+				newViews[i] = new CellView(i);
+			}
+			cellStarts = newStarts;
+			cellEnds = newEnds;
+			cellViews = newViews;
+		}
+		cellStarts[cellCount] = start;
+		cellEnds[cellCount] = end;
+		cellCount++;
+	}
+
+	private void checkIndex(final int index) {
+		if ((index < 0) || (index >= cellCount)) {
+			throw new IndexOutOfBoundsException(String.format("La ligne %d ne contient pas de cellule d'indice %d !", lineNumber, index));
+		}
+	}
+
+	private NumberFormatException numberFormatException(final int index) {
+		return new NumberFormatException(String.format("Ligne %d, cellule %d : valeur numrique invalide \"%s\"", lineNumber, index, getString(index)));
+	}
+
+	/**
+	 * Ajoute un chiffre  une valeur accumule en ngatif, pour pouvoir lire Long.MIN_VALUE
+	 */
+	private long appendDigit(final long value, final int digit, final int index) {
+		if (value < ((Long.MIN_VALUE + digit) / 10)) {
+			throw numberFormatException(index);
+		}
+		return (value * 10) - digit;
+	}
+
+	private IllegalArgumentException dateFormatException(final int index, final String pattern) {
+		return new IllegalArgumentException(String.format("Ligne %d, cellule %d : date \"%s\" invalide pour le motif %s", lineNumber, index, getString(index),
+				pattern));
+	}
+
+	private static int lengthOfMonth(final int year, final int month) {
+		if (month == 2) {
+			return (((year % 4) == 0) && (((year % 100) != 0) || ((year % 400) == 0))) ? 29 : 28;
+		}
+		return ((month == 4) || (month == 6) || (month == 9) || (month == 11)) ? 30 : 31;
+	}
+
+	/**
+	 * Nombre de jours entre le 01/01/1970 et la date donne du calendrier grgorien
+	 */
+	private static int toEpochDay(final int year, final int month, final int day) {
+		final int y = (month <= 2) ? (year - 1) : year;
+		final int era = ((y >= 0) ? y : (y - 399)) / 400;
+		final int yearOfEra = y - (era * 400);
+		final int dayOfYear = ((((153 * (month + ((month > 2) ? -3 : 9))) + 2) / 5) + day) - 1;
+		final int dayOfEra = (((yearOfEra * 365) + (yearOfEra / 4)) - (yearOfEra / 100)) + dayOfYear;
+		return ((era * 146097) + dayOfEra) - 719468;
+	}
+
+	/**
+	 * Vue rutilisable sur une cellule de la ligne courante
+	 */
+	private final class CellView implements CharSequence {
+		private final int index;
+
+		private CellView(final int index) {
+			this.index = index;
+		}
+
+		@Override
+		public int length() {
+			return cellEnds[index] - cellStarts[index];
+		}
+
+		@Override
+		public char charAt(final int charIndex) {
+			if ((charIndex < 0) || (charIndex >= length())) {
+				throw new IndexOutOfBoundsException(String.valueOf(charIndex));
+			}
+			return buffer[cellStarts[index] + charIndex];
+		}
+
+		@Override
+		public CharSequence subSequence(final int start, final int end) {
+			return toString().subSequence(start, end);
+		}
+
+		@Override
+		public String toString() {
+			return new String(buffer, cellStarts[index], length());
+		}
+	}
+}
@@ -0,0 +1,17 @@
+package com.humbletools.smalljavatools;
+
+/**
+ * CSVRowHandler reoit les lignes d'un fichier CSV lues par ParallelCSVParser. En mode non ordonn, handleRow peut tre appele simultanment depuis
+ * plusieurs threads : l'implmentation doit alors tre thread-safe.
+ *
+ * @author lmadeuf
+ */
+public interface CSVRowHandler {
+
+	/**
+	 * Traite une ligne du fichier CSV dcoupe en cellules
+	 *
+	 * @param cells les cellules de la ligne lue
+	 */
+	void handleRow(String[] cells);
+}
@@ -0,0 +1,324 @@
+package com.humbletools.smalljavatools;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * CSVRowMatcher compare des lignes CSV  une ligne attendue, avec les mmes rgles que CSVParser.isValeursIdentiques : trim, passage en minuscules,
+ * suppression des caractres [&#@%',_\t\s], puis comparaison sans tenir compte de la casse.</br></br> La ligne attendue est normalise une
+ * seule fois  la construction. Chaque cellule compare est ensuite parcourue une seule fois, les rgles tant appliques caractre par caractre : aucune
+ * String n'est cre, et une ligne lue par CSVParser.getNextRow() peut tre compare directement dans le tampon de lecture.</br></br> compareFiles compare
+ * deux fichiers entiers dont les lignes sont associes par une colonne cl.
+ *
+ * @author lmadeuf
+ */
+public final class CSVRowMatcher {
+
+	/**
+	 * Caractres retirs avant comparaison quand removeUnsafeCharacters vaut true (tous infrieurs  256)
+	 */
+	private static final boolean[] UNSAFE_CHARACTERS = new boolean[256];
+
+	static {
+		for (final char c : "&#@%',_ \t\n\u000B\f\r".toCharArray()) {
+			UNSAFE_CHARACTERS[c] = true;
+		}
+	}
+
+	static final long FNV_OFFSET_BASIS = 0xCBF29CE484222325L;
+	private static final long FNV_PRIME = 0x100000001B3L;
+	private static final long CELL_END = 0x10000L;
+
+	private final String[] expected;
+	private final char[][] normalizedCells;
+	private final boolean trim;
+	private final boolean putToLowercase;
+	private final boolean removeUnsafeCharacters;
+
+	/**
+	 * Cre un CSVRowMatcher pour la ligne expected. Une cellule attendue null ne correspond  aucune valeur.
+	 *
+	 * @param expected les valeurs attendues
+	 * @param trim mettre  vrai si on veut trimmer les chanes avant comparaison
+	 * @param putToLowercase mettre  vrai si l'on veut mettre  la casse basse avant comparaison
+	 * @param removeUnsafeCharacters retire les caractres [&#@%',_\t\s] (aprs le passage en minuscules)
+	 */
+	public CSVRowMatcher(final String[] expected, final boolean trim, final boolean putToLowercase, final boolean removeUnsafeCharacters) {
+		if (expected == null) {
+			throw new IllegalArgumentException("L'argument expected doit tre renseign !");
+		}
+		this.expected = expected;
+		this.trim = trim;
+		this.putToLowercase = putToLowercase;
+		this.removeUnsafeCharacters = removeUnsafeCharacters;
+		normalizedCells = new char[expected.length][];
+		for (int i = 0; i < expected.length; i++) {
+			if (expected[i] != null) {
+				final char[] normalized = new char[expected[i].length()];
+				final int length = normalize(expected[i], normalized);
+				normalizedCells[i] = (length == normalized.length) ? normalized : Arrays.copyOf(normalized, length);
+			}
+		}
+	}
+
+	/**
+	 * Retourne vrai si les valeurs correspondent  la ligne attendue, cellule par cellule
+	 */
+	public boolean matches(final String[] values) {
+		if ((values == null) || (values.length != normalizedCells.length)) {
+			return false;
+		}
+		for (int i = 0; i < values.length; i++) {
+			if (!matchesCell(i, values[i])) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Retourne vrai si la ligne courante du curseur correspond  la ligne attendue, en lisant les cellules directement dans le tampon
+	 */
+	public boolean matches(final CSVRowCursor row) {
+		if (row.getCellCount() != normalizedCells.length) {
+			return false;
+		}
+		for (int i = 0; i < normalizedCells.length; i++) {
+			if (!matchesCell(i, row.getCell(i))) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Retourne vrai si value correspond  la cellule attendue d'indice index
+	 */
+	public boolean matchesCell(final int index, final CharSequence value) {
+		final char[] normalized = normalizedCells[index];
+		if ((normalized == null) || (value == null)) {
+			return false;
+		}
+		int start = 0;
+		int end = value.length();
+		if (trim) {
+			while ((start < end) && (value.charAt(start) <= ' ')) {
+				start++;
+			}
+			while ((end > start) && (value.charAt(end - 1) <= ' ')) {
+				end--;
+			}
+		}
+		int position = 0;
+		for (int i = start; i < end; i++) {
+			char c = value.charAt(i);
+			if (putToLowercase) {
+				c = Character.toLowerCase(c);
+			}
+			if (removeUnsafeCharacters && (c < 256) && UNSAFE_CHARACTERS[c]) {
+				continue;
+			}
+			if ((position == normalized.length) || (normalized[position++] != fold(c))) {
+				return false;
+			}
+		}
+		return position == normalized.length;
+	}
+
+	/**
+	 * Applique les rgles  value et crit le rsultat repli (voir fold) dans normalized. Retourne le nombre de caractres crits.
+	 */
+	private int normalize(final String value, final char[] normalized) {
+		int start = 0;
+		int end = value.length();
+		if (trim) {
+			while ((start < end) && (value.charAt(start) <= ' ')) {
+				start++;
+			}
+			while ((end > start) && (value.charAt(end - 1) <= ' ')) {
+				end--;
+			}
+		}
+		int length = 0;
+		for (int i = start; i < end; i++) {
+			char c = value.charAt(i);
+			if (putToLowercase) {
+				c = Character.toLowerCase(c);
+			}
+			if (!removeUnsafeCharacters || (c >= 256) || !UNSAFE_CHARACTERS[c]) {
+				normalized[length++] = fold(c);
+			}
+		}
+		return length;
+	}
+
+	/**
+	 * Poursuit le hachage 64 bits (FNV-1a) hash avec la cellule value normalise selon les rgles : deux cellules gales pour un CSVRowMatcher ayant les
+	 * mmes rgles donnent le mme hach. La fin de cellule est marque pour que le dcoupage en cellules compte dans le hach.
+	 */
+	static long hashCell(final CharSequence value, final boolean trim, final boolean putToLowercase, final boolean removeUnsafeCharacters, final long hash) {
+		int start = 0;
+		int end = value.length();
+		if (trim) {
+			while ((start < end) && (value.charAt(start) <= ' ')) {
+				start++;
+			}
+			while ((end > start) && (value.charAt(end - 1) <= ' ')) {
+				end--;
+			}
+		}
+		long result = hash;
+		for (int i = start; i < end; i++) {
+			char c = value.charAt(i);
+			if (putToLowercase) {
+				c = Character.toLowerCase(c);
+			}
+			if (!removeUnsafeCharacters || (c >= 256) || !UNSAFE_CHARACTERS[c]) {
+				result = (result ^ fold(c)) * FNV_PRIME;
+			}
+		}
+		return (result ^ CELL_END) * FNV_PRIME;
+	}
+
+	/**
+	 * Retourne vrai si first et second sont gales une fois normalises selon les rgles, c'est--dire si un CSVRowMatcher attendant first reconnatrait
+	 * second, sans rien allouer
+	 */
+	static boolean cellsMatch(final CharSequence first, final CharSequence second, final boolean trim, final boolean putToLowercase,
+			final boolean removeUnsafeCharacters) {
+		int i = 0;
+		int firstEnd = first.length();
+		int j = 0;
+		int secondEnd = second.length();
+		if (trim) {
+			while ((i < firstEnd) && (first.charAt(i) <= ' ')) {
+				i++;
+			}
+			while ((firstEnd > i) && (first.charAt(firstEnd - 1) <= ' ')) {
+				firstEnd--;
+			}
+			while ((j < secondEnd) && (second.charAt(j) <= ' ')) {
+				j++;
+			}
+			while ((secondEnd > j) && (second.charAt(secondEnd - 1) <= ' ')) {
+				secondEnd--;
+			}
+		}
+		while (true) {
+			int a = -1;
+			while ((a < 0) && (i < firstEnd)) {
+				final char c = first.charAt(i++);
+				a = putToLowercase ? Character.toLowerCase(c) : c;
+				if (removeUnsafeCharacters && (a < 256) && UNSAFE_CHARACTERS[a]) {
+					a = -1;
+				}
+			}
+			int b = -1;
+			while ((b < 0) && (j < secondEnd)) {
+				final char c = second.charAt(j++);
+				b = putToLowercase ? Character.toLowerCase(c) : c;
+				if (removeUnsafeCharacters && (b < 256) && UNSAFE_CHARACTERS[b]) {
+					b = -1;
+				}
+			}
+			if ((a < 0) || (b < 0)) {
+				return (a < 0) && (b < 0);
+			}
+			if (fold((char) a) != fold((char) b)) {
+				return false;
+			}
+		}
+	}
+
+	/**
+	 * Repli de casse de String.equalsIgnoreCase : deux caractres sont gaux sans tenir compte de la casse si et seulement si leurs replis sont gaux
+	 */
+	private static char fold(final char c) {
+		if (c < 0x80) {
+			return ((c >= 'A') && (c <= 'Z')) ? (char) (c + ('a' - 'A')) : c;
+		}
+		return Character.toLowerCase(Character.toUpperCase(c));
+	}
+
+	/**
+	 * Retourne la ligne attendue telle que fournie au constructeur
+	 */
+	public String[] getExpected() {
+		return expected;
+	}
+
+	/**
+	 * Compare le fichier lu par actual au fichier attendu lu par expected, leurs lignes tant associes par la valeur (exacte) de la colonne keyColumn. Le
+	 * fichier attendu est charg en mmoire et normalis une fois ; le fichier lu est parcouru sans allocation, sauf pour les lignes en cart. Chaque cart
+	 * est transmis au handler : ligne diffrente, cl absente de l'un des fichiers ou cl en double dans le fichier lu. Les deux parseurs sont lus jusqu'au
+	 * bout ; pour ignorer une ligne d'en-tte, la lire avant l'appel.
+	 *
+	 * @return le nombre d'carts transmis au handler
+	 * @throws IOException - Si une erreur I/O survient
+	 * @throws IllegalStateException - Si une ligne n'a pas de colonne cl ou si une cl est en double dans le fichier attendu
+	 */
+	public static long compareFiles(final CSVParser expected, final CSVParser actual, final int keyColumn, final boolean trim, final boolean putToLowercase,
+			final boolean removeUnsafeCharacters, final CSVComparisonHandler handler) throws IOException {
+		if ((expected == null) || (actual == null) || (handler == null)) {
+			throw new IllegalArgumentException("Les arguments expected, actual et handler doivent tre renseigns !");
+		}
+		try {
+			final CSVDictionary keys = new CSVDictionary();
+			CSVRowMatcher[] matchers = new CSVRowMatcher[1024];
+			int expectedCount = 0;
+			while (expected.hasNextLine()) {
+				final String[] cells = expected.getNextLineOfCells();
+				checkKeyColumn(expected.getNumberOfLinesRead(), cells.length, keyColumn);
+				if (keys.code(cells[keyColumn]) < expectedCount) {
+					throw new IllegalStateException(String.format("Ligne %d : la cl %s est en double dans le fichier attendu !",
+							expected.getNumberOfLinesRead(), cells[keyColumn]));
+				}
+				if (expectedCount == matchers.length) {
+					matchers = Arrays.copyOf(matchers, expectedCount * 2);
+				}
+				matchers[expectedCount++] = new CSVRowMatcher(cells, trim, putToLowercase, removeUnsafeCharacters);
+			}
+			final boolean[] seen = new boolean[expectedCount];
+			long differences = 0L;
+			while (actual.hasNextLine()) {
+				final CSVRowCursor row = actual.getNextRow();
+				checkKeyColumn(actual.getNumberOfLinesRead(), row.getCellCount(), keyColumn);
+				final int code = row.getCode(keyColumn, keys);
+				if ((code >= expectedCount) || seen[code]) {
+					differences++;
+					handler.handleDifference(keys.getValue(code), null, toCells(row));
+				} else {
+					seen[code] = true;
+					if (!matchers[code].matches(row)) {
+						differences++;
+						handler.handleDifference(keys.getValue(code), matchers[code].expected, toCells(row));
+					}
+				}
+			}
+			for (int code = 0; code < expectedCount; code++) {
+				if (!seen[code]) {
+					differences++;
+					handler.handleDifference(keys.getValue(code), matchers[code].expected, null);
+				}
+			}
+			return differences;
+		} catch (final IllegalStateException ise) {
+			expected.close();
+			actual.close();
+			throw ise;
+		}
+	}
+
+	private static void checkKeyColumn(final long lineNumber, final int cellCount, final int keyColumn) {
+		if (keyColumn >= cellCount) {
+			throw new IllegalStateException(String.format("Ligne %d : la colonne cl %d est absente !", lineNumber, keyColumn));
+		}
+	}
+
+	private static String[] toCells(final CSVRowCursor row) {
+		final String[] cells = new String[row.getCellCount()];
+		for (int i = 0; i < cells.length; i++) {
+			cells[i] = row.getString(i);
+		}
+		return cells;
+	}
+}
@@ -0,0 +1,193 @@
+package com.humbletools.smalljavatools;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * CSVSchema dcrit les colonnes types que l'on veut extraire d'un fichier CSV. Chaque colonne dclare lit une cellule de la ligne (par son indice) et la
+ * dcode directement depuis le tampon du CSVRowCursor, sans String intermdiaire. Les colonnes sont numrotes dans leur ordre de dclaration.</br></br>
+ * Exemple : new CSVSchema().addIntColumn(0).addDecimalColumn(3, 2).addDateColumn(4, "dd/MM/yyyy").addEnumColumn(7)</br></br> Une cellule vide donne
+ * une valeur nulle (voir CSVTypedRow.isNull) ; une cellule absente ou mal forme provoque une IllegalStateException indiquant la ligne et la colonne.
+ * Les dictionnaires des colonnes ENUM n'tant pas thread-safe, un mme CSVSchema ne doit pas tre utilis par plusieurs lectures simultanes.
+ *
+ * @author lmadeuf
+ */
+public class CSVSchema {
+
+	private final List<Column> columns = new ArrayList<Column>();
+
+	/**
+	 * Dclare une colonne INT lue dans la cellule cellIndex
+	 */
+	public CSVSchema addIntColumn(final int cellIndex) {
+		return addColumn(new Column(cellIndex, CSVColumnType.INT, 0, null));
+	}
+
+	/**
+	 * Dclare une colonne LONG lue dans la cellule cellIndex
+	 */
+	public CSVSchema addLongColumn(final int cellIndex) {
+		return addColumn(new Column(cellIndex, CSVColumnType.LONG, 0, null));
+	}
+
+	/**
+	 * Dclare une colonne DOUBLE lue dans la cellule cellIndex
+	 */
+	public CSVSchema addDoubleColumn(final int cellIndex) {
+		return addColumn(new Column(cellIndex, CSVColumnType.DOUBLE, 0, null));
+	}
+
+	/**
+	 * Dclare une colonne DECIMAL d'chelle scale lue dans la cellule cellIndex
+	 */
+	public CSVSchema addDecimalColumn(final int cellIndex, final int scale) {
+		if ((scale < 0) || (scale > 18)) {
+			throw new IllegalArgumentException("L'argument scale doit tre compris entre 0 et 18 !");
+		}
+		return addColumn(new Column(cellIndex, CSVColumnType.DECIMAL, scale, null));
+	}
+
+	/**
+	 * Dclare une colonne DATE au format pattern lue dans la cellule cellIndex
+	 */
+	public CSVSchema addDateColumn(final int cellIndex, final String pattern) {
+		if ((pattern == null) || (pattern.indexOf('y') < 0) || (pattern.indexOf('M') < 0) || (pattern.indexOf('d') < 0)) {
+			throw new IllegalArgumentException("L'argument pattern doit contenir l'anne (y), le mois (M) et le jour (d) !");
+		}
+		return addColumn(new Column(cellIndex, CSVColumnType.DATE, 0, pattern));
+	}
+
+	/**
+	 * Dclare une colonne ENUM lue dans la cellule cellIndex
+	 */
+	public CSVSchema addEnumColumn(final int cellIndex) {
+		return addColumn(new Column(cellIndex, CSVColumnType.ENUM, 0, null));
+	}
+
+	/**
+	 * Retourne le nombre de colonnes dclares
+	 */
+	public int getColumnCount() {
+		return columns.size();
+	}
+
+	/**
+	 * Retourne le type de la colonne column
+	 */
+	public CSVColumnType getColumnType(final int column) {
+		return columns.get(column).type;
+	}
+
+	/**
+	 * Retourne l'indice de la cellule lue par la colonne column
+	 */
+	public int getCellIndex(final int column) {
+		return columns.get(column).cellIndex;
+	}
+
+	/**
+	 * Retourne l'chelle de la colonne DECIMAL column
+	 */
+	public int getScale(final int column) {
+		return columns.get(column).scale;
+	}
+
+	/**
+	 * Retourne le motif de la colonne DATE column
+	 */
+	public String getDatePattern(final int column) {
+		return columns.get(column).datePattern;
+	}
+
+	/**
+	 * Retourne le dictionnaire de la colonne ENUM column, null pour les autres types
+	 */
+	public CSVDictionary getDictionary(final int column) {
+		return columns.get(column).dictionary;
+	}
+
+	/**
+	 * Retourne true si la cellule de la colonne column est vide
+	 *
+	 * @throws IllegalStateException si la ligne ne contient pas la cellule
+	 */
+	boolean isNull(final CSVRowCursor row, final int column) {
+		final int cellIndex = columns.get(column).cellIndex;
+		if (cellIndex >= row.getCellCount()) {
+			throw new IllegalStateException(String.format("Ligne %d, colonne %d : la cellule %d est absente (%d cellules lues) !", row.getLineNumber(), column,
+					cellIndex, row.getCellCount()));
+		}
+		return row.getCellLength(cellIndex) == 0;
+	}
+
+	/**
+	 * Dcode une colonne entire : INT, LONG, DECIMAL (valeur non mise  l'chelle), DATE (jours depuis le 01/01/1970) ou ENUM (code dans le dictionnaire)
+	 *
+	 * @throws IllegalStateException si la cellule est mal forme
+	 */
+	long decodeLong(final CSVRowCursor row, final int column) {
+		final Column definition = columns.get(column);
+		try {
+			switch (definition.type) {
+			case INT:
+				return row.getInt(definition.cellIndex);
+			case LONG:
+				return row.getLong(definition.cellIndex);
+			case DECIMAL:
+				return row.getDecimal(definition.cellIndex, definition.scale);
+			case DATE:
+				return row.getDate(definition.cellIndex, definition.datePattern);
+			case ENUM:
+				return row.getCode(definition.cellIndex, definition.dictionary);
+			default:
+				throw new IllegalArgumentException(String.format("La colonne %d est de type %s !", column, definition.type));
+			}
+		} catch (final IllegalArgumentException iae) {
+			throw typeError(row, column, iae);
+		}
+	}
+
+	/**
+	 * Dcode une colonne DOUBLE
+	 *
+	 * @throws IllegalStateException si la cellule est mal forme
+	 */
+	double decodeDouble(final CSVRowCursor row, final int column) {
+		try {
+			return row.getDouble(columns.get(column).cellIndex);
+		} catch (final IllegalArgumentException iae) {
+			throw typeError(row, column, iae);
+		}
+	}
+
+	private IllegalStateException typeError(final CSVRowCursor row, final int column, final IllegalArgumentException cause) {
+		return new IllegalStateException(String.format("Ligne %d, colonne %d (%s) : %s", row.getLineNumber(), column, columns.get(column).type,
+				cause.getMessage()), cause);
+	}
+
+	private CSVSchema addColumn(final Column column) {
+		if (column.cellIndex < 0) {
+			throw new IllegalArgumentException("L'argument cellIndex doit tre positif ou nul !");
+		}
+		columns.add(column);
+		return this;
+	}
+
+	/**
+	 * Dfinition d'une colonne du schma
+	 */
+	private static class Column {
+		private final int cellIndex;
+		private final CSVColumnType type;
+		private final int scale;
+		private final String datePattern;
+		private final CSVDictionary dictionary;
+
+		private Column(final int cellIndex, final CSVColumnType type, final int scale, final String datePattern) {
+			this.cellIndex = cellIndex;
+			this.type = type;
+			this.scale = scale;
+			this.datePattern = datePattern;
+			dictionary = (type == CSVColumnType.ENUM) ? new CSVDictionary() : null;
+		}
+	}
+}
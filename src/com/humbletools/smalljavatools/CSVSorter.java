@@ -0,0 +1,491 @@
+package com.humbletools.smalljavatools;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * CSVSorter trie un fichier CSV plus gros que la mmoire selon une ou plusieurs colonnes (tri externe). Les lignes sont lues par un CSVParser en
+ * squences dont la taille respecte le budget mmoire ; chaque squence est trie en parallle dans un ForkJoinPool puis crite dans un fichier binaire
+ * temporaire, et les squences sont enfin fusionnes par un tas vers un CSVWriter. Si le fichier tient dans le budget, aucun fichier temporaire n'est
+ * crit.</br></br> Les cls sont dclares dans l'ordre de priorit : texte (ordre de String.compareTo), LONG, DOUBLE, DECIMAL ou DATE, dcodes comme par
+ * un CSVSchema. Une cellule vide est place avant toutes les valeurs en ordre croissant. Le tri est stable : les lignes de cls gales restent dans l'ordre
+ * du fichier.</br></br> Exemple : new CSVSorter().addDateKey(2, "dd/MM/yyyy", true).addTextKey(0, true).setHeader(true).sort(parser, writer)
+ *
+ * @author lmadeuf
+ */
+public class CSVSorter {
+
+	/**
+	 * Budget mmoire par dfaut d'une squence : le quart de la mmoire maximale de la JVM
+	 */
+	public static final long DEFAULT_MEMORY_BUDGET = Runtime.getRuntime().maxMemory() / 4;
+
+	/**
+	 * Nombre maximal de squences fusionnes  la fois ; au-del, la fusion se fait en plusieurs passes
+	 */
+	private static final int MAX_MERGE_WIDTH = 64;
+
+	/**
+	 * Nombre de lignes en dessous duquel une tche de tri n'est plus dcoupe
+	 */
+	private static final int SORT_THRESHOLD = 8192;
+
+	private final CSVSchema schema = new CSVSchema();
+	private final List<Key> keys = new ArrayList<Key>();
+	private boolean header;
+	private long memoryBudget = DEFAULT_MEMORY_BUDGET;
+	private File tempDirectory;
+	private ForkJoinPool pool;
+
+	/**
+	 * Ajoute une cl de tri texte sur la cellule cellIndex
+	 */
+	public CSVSorter addTextKey(final int cellIndex, final boolean ascending) {
+		keys.add(new Key(cellIndex, -1, false, ascending));
+		return this;
+	}
+
+	/**
+	 * Ajoute une cl de tri entire (LONG) sur la cellule cellIndex
+	 */
+	public CSVSorter addLongKey(final int cellIndex, final boolean ascending) {
+		schema.addLongColumn(cellIndex);
+		return addTypedKey(cellIndex, false, ascending);
+	}
+
+	/**
+	 * Ajoute une cl de tri DOUBLE sur la cellule cellIndex
+	 */
+	public CSVSorter addDoubleKey(final int cellIndex, final boolean ascending) {
+		schema.addDoubleColumn(cellIndex);
+		return addTypedKey(cellIndex, true, ascending);
+	}
+
+	/**
+	 * Ajoute une cl de tri DECIMAL de scale dcimales sur la cellule cellIndex
+	 */
+	public CSVSorter addDecimalKey(final int cellIndex, final int scale, final boolean ascending) {
+		schema.addDecimalColumn(cellIndex, scale);
+		return addTypedKey(cellIndex, false, ascending);
+	}
+
+	/**
+	 * Ajoute une cl de tri DATE au format pattern sur la cellule cellIndex
+	 */
+	public CSVSorter addDateKey(final int cellIndex, final String pattern, final boolean ascending) {
+		schema.addDateColumn(cellIndex, pattern);
+		return addTypedKey(cellIndex, false, ascending);
+	}
+
+	private CSVSorter addTypedKey(final int cellIndex, final boolean floating, final boolean ascending) {
+		keys.add(new Key(cellIndex, schema.getColumnCount() - 1, floating, ascending));
+		return this;
+	}
+
+	/**
+	 * Indique si la premire ligne de donnes (aprs le "sep=" ventuel) est un en-tte, recopi tel quel en tte du rsultat
+	 */
+	public CSVSorter setHeader(final boolean header) {
+		this.header = header;
+		return this;
+	}
+
+	/**
+	 * Fixe la mmoire, en octets, que peut occuper une squence de lignes avant d'tre trie et crite sur disque
+	 */
+	public CSVSorter setMemoryBudget(final long memoryBudget) {
+		if (memoryBudget <= 0L) {
+			throw new IllegalArgumentException("L'argument memoryBudget doit tre strictement positif !");
+		}
+		this.memoryBudget = memoryBudget;
+		return this;
+	}
+
+	/**
+	 * Fixe le rpertoire des squences tries, le rpertoire temporaire du systme par dfaut
+	 */
+	public CSVSorter setTempDirectory(final File tempDirectory) {
+		this.tempDirectory = tempDirectory;
+		return this;
+	}
+
+	/**
+	 * Fixe le pool utilis pour trier les squences. Si pool est null (par dfaut), un ForkJoinPool est cr puis arrt  chaque tri.
+	 */
+	public CSVSorter setPool(final ForkJoinPool pool) {
+		this.pool = pool;
+		return this;
+	}
+
+	/**
+	 * Lit toutes les lignes restantes de input, les trie et les crit dans output, qui n'est pas ferm
+	 *
+	 * @return le nombre de lignes tries, en-tte non compris
+	 * @throws IOException - Si une erreur I/O survient
+	 * @throws IllegalStateException - Si une cellule de cl est absente ou mal forme, avec la ligne et la colonne en cause
+	 */
+	public long sort(final CSVParser input, final CSVWriter output) throws IOException, IllegalStateException {
+		if ((input == null) || (output == null)) {
+			throw new IllegalArgumentException("Les arguments input et output doivent tre renseigns !");
+		}
+		if (keys.isEmpty()) {
+			throw new IllegalStateException("Au moins une cl de tri doit tre dclare !");
+		}
+		final RowComparator comparator = new RowComparator(keys);
+		final List<File> runFiles = new ArrayList<File>();
+		final ForkJoinPool executor = (pool != null) ? pool : new ForkJoinPool();
+		try {
+			if (header && input.hasNextLine()) {
+				output.writeLine(input.getNextLineOfCells());
+			}
+			SortRow[] rows = new SortRow[1024];
+			long rowCount = 0L;
+			int size = 0;
+			long used = 0L;
+			while (input.hasNextLine()) {
+				final SortRow row = readRow(input);
+				if (size == rows.length) {
+					rows = Arrays.copyOf(rows, size * 2);
+				}
+				rows[size++] = row;
+				used += row.estimateSize();
+				rowCount++;
+				if (used >= memoryBudget) {
+					writeRun(sortRun(rows, size, comparator, executor), size, runFiles);
+					Arrays.fill(rows, 0, size, null);
+					size = 0;
+					used = 0L;
+				}
+			}
+			if (runFiles.isEmpty()) {
+				final SortRow[] sorted = sortRun(rows, size, comparator, executor);
+				for (int i = 0; i < size; i++) {
+					output.writeLine(sorted[i].cells);
+				}
+				return rowCount;
+			}
+			if (size > 0) {
+				writeRun(sortRun(rows, size, comparator, executor), size, runFiles);
+			}
+			rows = null;
+			List<File> runs = new ArrayList<File>(runFiles);
+			while (runs.size() > MAX_MERGE_WIDTH) {
+				final List<File> mergedRuns = new ArrayList<File>();
+				for (int start = 0; start < runs.size(); start += MAX_MERGE_WIDTH) {
+					final File mergedRun = createRunFile(runFiles);
+					final DataOutputStream out = openRun(mergedRun);
+					try {
+						merge(runs.subList(start, Math.min(runs.size(), start + MAX_MERGE_WIDTH)), comparator, out, null);
+					} finally {
+						out.close();
+					}
+					mergedRuns.add(mergedRun);
+				}
+				runs = mergedRuns;
+			}
+			merge(runs, comparator, null, output);
+			return rowCount;
+		} catch (final IllegalStateException ise) {
+			input.close();
+			throw ise;
+		} finally {
+			if (pool == null) {
+				executor.shutdown();
+			}
+			for (final File runFile : runFiles) {
+				runFile.delete();
+			}
+		}
+	}
+
+	/**
+	 * Lit la ligne suivante et dcode ses cls types
+	 */
+	private SortRow readRow(final CSVParser input) throws IOException {
+		final CSVRowCursor cursor = input.getNextRow();
+		final String[] cells = new String[cursor.getCellCount()];
+		for (int i = 0; i < cells.length; i++) {
+			cells[i] = cursor.getString(i);
+		}
+		final SortRow row = new SortRow(cells, keys.size());
+		for (int k = 0; k < keys.size(); k++) {
+			final Key key = keys.get(k);
+			if (key.schemaColumn < 0) {
+				if (key.cellIndex >= cells.length) {
+					throw new IllegalStateException(String.format("Ligne %d : la cellule %d de la cl de tri est absente !", cursor.getLineNumber(),
+							key.cellIndex));
+				}
+			} else if (schema.isNull(cursor, key.schemaColumn)) {
+				row.nulls[k] = true;
+			} else if (key.floating) {
+				row.values[k] = Double.doubleToLongBits(schema.decodeDouble(cursor, key.schemaColumn));
+			} else {
+				row.values[k] = schema.decodeLong(cursor, key.schemaColumn);
+			}
+		}
+		return row;
+	}
+
+	/**
+	 * Trie les size premires lignes de rows par un tri fusion stable rparti sur le pool
+	 */
+	private static SortRow[] sortRun(final SortRow[] rows, final int size, final RowComparator comparator, final ForkJoinPool executor) {
+		executor.invoke(new SortTask(rows, new SortRow[size], 0, size, comparator));
+		return rows;
+	}
+
+	/**
+	 * crit les size premires lignes tries dans une nouvelle squence, ajoute  runFiles ds sa cration : elle est supprime mme si l'criture choue
+	 */
+	private void writeRun(final SortRow[] sorted, final int size, final List<File> runFiles) throws IOException {
+		final File runFile = createRunFile(runFiles);
+		final DataOutputStream out = openRun(runFile);
+		try {
+			for (int i = 0; i < size; i++) {
+				sorted[i].write(out);
+			}
+		} finally {
+			out.close();
+		}
+	}
+
+	private File createRunFile(final List<File> runFiles) throws IOException {
+		final File runFile = File.createTempFile("csvsort", ".run", tempDirectory);
+		runFiles.add(runFile);
+		return runFile;
+	}
+
+	private static DataOutputStream openRun(final File runFile) throws IOException {
+		return new DataOutputStream(new BufferedOutputStream(new FileOutputStream(runFile), 64 * 1024));
+	}
+
+	/**
+	 * Fusionne les squences runs, dans l'ordre, vers une nouvelle squence out ou vers le CSVWriter output.  cls gales, la ligne de la squence la plus
+	 * ancienne passe en premier, ce qui conserve la stabilit du tri.
+	 */
+	private void merge(final List<File> runs, final RowComparator comparator, final DataOutputStream out, final CSVWriter output) throws IOException {
+		final PriorityQueue<RunReader> heap = new PriorityQueue<RunReader>(runs.size(), new Comparator<RunReader>() {
+			@Override
+			public int compare(final RunReader first, final RunReader second) {
+				final int result = comparator.compare(first.current, second.current);
+				return (result != 0) ? result : (first.runIndex - second.runIndex);
+			}
+		});
+		final List<RunReader> readers = new ArrayList<RunReader>();
+		try {
+			for (int i = 0; i < runs.size(); i++) {
+				final RunReader reader = new RunReader(runs.get(i), i, keys.size());
+				readers.add(reader);
+				if (reader.next()) {
+					heap.add(reader);
+				}
+			}
+			RunReader reader;
+			while ((reader = heap.poll()) != null) {
+				if (out != null) {
+					reader.current.write(out);
+				} else {
+					output.writeLine(reader.current.cells);
+				}
+				if (reader.next()) {
+					heap.add(reader);
+				}
+			}
+		} finally {
+			for (final RunReader runReader : readers) {
+				runReader.in.close();
+			}
+		}
+	}
+
+	/**
+	 * Cl de tri : cellule lue, colonne du schma pour une cl type (-1 pour une cl texte) et sens
+	 */
+	private static final class Key {
+		private final int cellIndex;
+		private final int schemaColumn;
+		private final boolean floating;
+		private final boolean ascending;
+
+		private Key(final int cellIndex, final int schemaColumn, final boolean floating, final boolean ascending) {
+			if (cellIndex < 0) {
+				throw new IllegalArgumentException("L'argument cellIndex doit tre positif !");
+			}
+			this.cellIndex = cellIndex;
+			this.schemaColumn = schemaColumn;
+			this.floating = floating;
+			this.ascending = ascending;
+		}
+	}
+
+	/**
+	 * Ligne en cours de tri : ses cellules et les valeurs de ses cls types (les DOUBLE sous forme de bits)
+	 */
+	private static final class SortRow {
+		private final String[] cells;
+		private final long[] values;
+		private final boolean[] nulls;
+
+		private SortRow(final String[] cells, final int keyCount) {
+			this.cells = cells;
+			values = new long[keyCount];
+			nulls = new boolean[keyCount];
+		}
+
+		/**
+		 * Estimation de la mmoire occupe par la ligne, en octets
+		 */
+		private long estimateSize() {
+			long size = 64L + (16L * values.length) + (8L * cells.length);
+			for (final String cell : cells) {
+				size += 40L + (2L * cell.length());
+			}
+			return size;
+		}
+
+		private void write(final DataOutputStream out) throws IOException {
+			out.writeInt(cells.length);
+			for (final String cell : cells) {
+				out.writeInt(cell.length());
+				out.writeChars(cell);
+			}
+			for (int k = 0; k < values.length; k++) {
+				out.writeBoolean(nulls[k]);
+				out.writeLong(values[k]);
+			}
+		}
+	}
+
+	/**
+	 * Lecteur d'une squence trie
+	 */
+	private static final class RunReader {
+		private final DataInputStream in;
+		private final int runIndex;
+		private final int keyCount;
+		private char[] chars = new char[256];
+		private SortRow current;
+
+		private RunReader(final File runFile, final int runIndex, final int keyCount) throws IOException {
+			in = new DataInputStream(new BufferedInputStream(new FileInputStream(runFile), 64 * 1024));
+			this.runIndex = runIndex;
+			this.keyCount = keyCount;
+		}
+
+		private boolean next() throws IOException {
+			final int cellCount;
+			try {
+				cellCount = in.readInt();
+			} catch (final EOFException eof) {
+				current = null;
+				return false;
+			}
+			final String[] cells = new String[cellCount];
+			for (int i = 0; i < cellCount; i++) {
+				final int length = in.readInt();
+				if (length > chars.length) {
+					chars = new char[Math.max(length, chars.length * 2)];
+				}
+				for (int j = 0; j < length; j++) {
+					chars[j] = in.readChar();
+				}
+				cells[i] = new String(chars, 0, length);
+			}
+			current = new SortRow(cells, keyCount);
+			for (int k = 0; k < keyCount; k++) {
+				current.nulls[k] = in.readBoolean();
+				current.values[k] = in.readLong();
+			}
+			return true;
+		}
+	}
+
+	/**
+	 * Ordre des lignes selon les cls de tri
+	 */
+	private static final class RowComparator implements Comparator<SortRow> {
+		private final Key[] keys;
+
+		private RowComparator(final List<Key> keys) {
+			this.keys = keys.toArray(new Key[keys.size()]);
+		}
+
+		@Override
+		public int compare(final SortRow first, final SortRow second) {
+			for (int k = 0; k < keys.length; k++) {
+				final Key key = keys[k];
+				final int result;
+				if (key.schemaColumn < 0) {
+					result = first.cells[key.cellIndex].compareTo(second.cells[key.cellIndex]);
+				} else if (first.nulls[k] || second.nulls[k]) {
+					result = (first.nulls[k] == second.nulls[k]) ? 0 : (first.nulls[k] ? -1 : 1);
+				} else if (key.floating) {
+					result = Double.compare(Double.longBitsToDouble(first.values[k]), Double.longBitsToDouble(second.values[k]));
+				} else {
+					result = (first.values[k] < second.values[k]) ? -1 : ((first.values[k] == second.values[k]) ? 0 : 1);
+				}
+				if (result != 0) {
+					return key.ascending ? result : -result;
+				}
+			}
+			return 0;
+		}
+	}
+
+	/**
+	 * Tri fusion stable : les moitis sont tries en parallle puis fusionnes via le tableau auxiliaire
+	 */
+	private static final class SortTask extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+
+		private final SortRow[] rows;
+		private final SortRow[] buffer;
+		private final int from;
+		private final int to;
+		private final RowComparator comparator;
+
+		private SortTask(final SortRow[] rows, final SortRow[] buffer, final int from, final int to, final RowComparator comparator) {
+			this.rows = rows;
+			this.buffer = buffer;
+			this.from = from;
+			this.to = to;
+			this.comparator = comparator;
+		}
+
+		@Override
+		protected void compute() {
+			if ((to - from) <= SORT_THRESHOLD) {
+				Arrays.sort(rows, from, to, comparator);
+				return;
+			}
+			final int middle = (from + to) >>> 1;
+			invokeAll(new SortTask(rows, buffer, from, middle, comparator), new SortTask(rows, buffer, middle, to, comparator));
+			if (comparator.compare(rows[middle - 1], rows[middle]) <= 0) {
+				return;
+			}
+			System.arraycopy(rows, from, buffer, from, to - from);
+			int left = from;
+			int right = middle;
+			for (int i = from; i < to; i++) {
+				if ((right >= to) || ((left < middle) && (comparator.compare(buffer[left], buffer[right]) <= 0))) {
+					rows[i] = buffer[left++];
+				} else {
+					rows[i] = buffer[right++];
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,127 @@
+package com.humbletools.smalljavatools;
+
+/**
+ * CSVTypedRow contient les valeurs dcodes d'une ligne selon un CSVSchema. Une mme instance est rutilise pour toutes les lignes d'une lecture : les
+ * valeurs sont stockes dans des tableaux primitifs et ne sont valables que jusqu' la ligne suivante. Les colonnes sont dsignes par leur rang dans le
+ * schma.
+ *
+ * @author lmadeuf
+ */
+public final class CSVTypedRow {
+
+	private final CSVSchema schema;
+	private final long[] longValues;
+	private final double[] doubleValues;
+	private final boolean[] nulls;
+	private long lineNumber;
+
+	CSVTypedRow(final CSVSchema schema) {
+		this.schema = schema;
+		longValues = new long[schema.getColumnCount()];
+		doubleValues = new double[schema.getColumnCount()];
+		nulls = new boolean[schema.getColumnCount()];
+	}
+
+	/**
+	 * Dcode toutes les colonnes du schma depuis la ligne courante du curseur
+	 *
+	 * @throws IllegalStateException si une cellule est absente ou mal forme
+	 */
+	void read(final CSVRowCursor row) {
+		lineNumber = row.getLineNumber();
+		for (int column = 0; column < nulls.length; column++) {
+			nulls[column] = schema.isNull(row, column);
+			if (nulls[column]) {
+				longValues[column] = 0L;
+				doubleValues[column] = 0d;
+			} else if (schema.getColumnType(column) == CSVColumnType.DOUBLE) {
+				doubleValues[column] = schema.decodeDouble(row, column);
+			} else {
+				longValues[column] = schema.decodeLong(row, column);
+			}
+		}
+	}
+
+	/**
+	 * Retourne le schma utilis pour dcoder cette ligne
+	 */
+	public CSVSchema getSchema() {
+		return schema;
+	}
+
+	/**
+	 * Retourne le numro de la ligne dcode, tel que compt par getNumberOfLinesRead()
+	 */
+	public long getLineNumber() {
+		return lineNumber;
+	}
+
+	/**
+	 * Retourne true si la cellule de la colonne column tait vide
+	 */
+	public boolean isNull(final int column) {
+		return nulls[column];
+	}
+
+	/**
+	 * Retourne la valeur de la colonne INT column
+	 */
+	public int getInt(final int column) {
+		checkType(column, CSVColumnType.INT);
+		return (int) longValues[column];
+	}
+
+	/**
+	 * Retourne la valeur de la colonne LONG column
+	 */
+	public long getLong(final int column) {
+		checkType(column, CSVColumnType.LONG);
+		return longValues[column];
+	}
+
+	/**
+	 * Retourne la valeur de la colonne DOUBLE column
+	 */
+	public double getDouble(final int column) {
+		checkType(column, CSVColumnType.DOUBLE);
+		return doubleValues[column];
+	}
+
+	/**
+	 * Retourne la valeur non mise  l'chelle de la colonne DECIMAL column (voir CSVSchema.getScale)
+	 */
+	public long getDecimal(final int column) {
+		checkType(column, CSVColumnType.DECIMAL);
+		return longValues[column];
+	}
+
+	/**
+	 * Retourne la date de la colonne DATE column, en nombre de jours depuis le 01/01/1970
+	 */
+	public int getDate(final int column) {
+		checkType(column, CSVColumnType.DATE);
+		return (int) longValues[column];
+	}
+
+	/**
+	 * Retourne l'instance canonique de la colonne ENUM column, null si la cellule tait vide
+	 */
+	public String getString(final int column) {
+		checkType(column, CSVColumnType.ENUM);
+		return nulls[column] ? null : schema.getDictionary(column).getValue((int) longValues[column]);
+	}
+
+	/**
+	 * Retourne le code de la colonne ENUM column dans le dictionnaire du schma
+	 */
+	public int getCode(final int column) {
+		checkType(column, CSVColumnType.ENUM);
+		return (int) longValues[column];
+	}
+
+	private void checkType(final int column, final CSVColumnType type) {
+		if (schema.getColumnType(column) != type) {
+			throw new IllegalArgumentException(String.format("La colonne %d est de type %s et non %s !", column, schema.getColumnType(column), type));
+		}
+	}
+}
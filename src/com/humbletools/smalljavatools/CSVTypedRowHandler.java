@@ -0,0 +1,17 @@
+package com.humbletools.smalljavatools;
+
+/**
+ * CSVTypedRowHandler reoit les lignes d'un fichier CSV dcodes selon un CSVSchema par CSVParser.readRows. Le CSVTypedRow transmis est rutilis d'une
+ * ligne  l'autre.
+ *
+ * @author lmadeuf
+ */
+public interface CSVTypedRowHandler {
+
+	/**
+	 * Traite une ligne dcode
+	 *
+	 * @param row les valeurs types de la ligne lue
+	 */
+	void handleRow(CSVTypedRow row);
+}
@@ -0,0 +1,631 @@
+package com.humbletools.smalljavatools;
+import java.io.Closeable;
+import java.io.FileOutputStream;
+import java.io.Flushable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * CSVWriter est le pendant de CSVParser : il crit un fichier CSV avec les mmes conventions de sparateur (';' par dfaut) et d'encodage
+ * (CSVParser.DEFAULT_CHARSET par dfaut), et peut commencer le fichier par une ligne "sep=" que CSVParser reconnat.</br></br> Les cellules sont encodes
+ * directement dans un grand tampon d'octets rutilis, vid dans le fichier par FileChannel. Une cellule n'est mise entre guillemets que si elle contient le
+ * sparateur, un guillemet ou une fin de ligne (RFC 4180). Les lignes se terminent par "\r\n".</br></br> Cas d'utilisation : </br> - Instancier un
+ * CSVWriter via l'un des constructeurs</br> - Pour chaque ligne, appeler writeCell pour chaque cellule puis endLine(), ou writeLine(String...)</br> -
+ * Appeler close() (ou dclarer le CSVWriter dans un try-with-resources)</br></br> Les cellules int, long et dcimales sont formates sans crer d'objet.
+ * Pour de gros volumes, writeBlocks fait formater des blocs de lignes par plusieurs threads pendant que le thread appelant les crit dans l'ordre.
+ *
+ * @author lmadeuf
+ */
+public class CSVWriter implements Closeable, Flushable {
+
+	/**
+	 * Taille par dfaut du tampon d'criture
+	 */
+	public static final int DEFAULT_BUFFER_SIZE = 1024 * 1024;
+
+	private static final int BLOCK_BUFFER_SIZE = 64 * 1024;
+	private static final char QUOTE = '"';
+	private static final byte UNMAPPABLE = '?';
+
+	private final FileOutputStream outputStream;
+	private final FileChannel channel;
+	private final String filePath;
+	private final String charset;
+	private final Character separator;
+	private final Charset encodingCharset;
+	private final boolean utf8;
+	private final byte[] encodeTable;
+	private final CharsetEncoder encoder;
+	private final char[] chars;
+	private final char[] digits = new char[21];
+
+	private byte[] bytes;
+	private int length;
+	private int charLength;
+	private int cellsInLine;
+	private long numberOfLinesWritten;
+	private boolean closed;
+
+	/**
+	 * Cre un CSVWriter vers le fichier spcifi par le filePath, avec le sparateur ';' par dfaut et l'encodage par dfaut CSVParser.DEFAULT_CHARSET
+	 *
+	 * @throws IOException si le fichier ne peut pas tre cr
+	 */
+	public CSVWriter(final String filePath) throws IOException {
+		this(filePath, CSVParser.DEFAULT_CHARSET, CSVParser.DEFAULT_CSV_SEPARATOR_FR);
+	}
+
+	/**
+	 * Cre un CSVWriter vers le fichier spcifi par le filePath, avec le sparateur csvSeparator et l'encodage par dfaut CSVParser.DEFAULT_CHARSET
+	 *
+	 * @throws IOException si le fichier ne peut pas tre cr
+	 */
+	public CSVWriter(final String filePath, final Character csvSeparator) throws IOException {
+		this(filePath, CSVParser.DEFAULT_CHARSET, csvSeparator);
+	}
+
+	/**
+	 * Cre un CSVWriter vers le fichier spcifi par le filePath, avec le sparateur csvSeparator et l'encodage charset
+	 *
+	 * @throws IOException si le fichier ne peut pas tre cr
+	 */
+	public CSVWriter(final String filePath, final String charset, final Character csvSeparator) throws IOException {
+		this(filePath, charset, csvSeparator, false, DEFAULT_BUFFER_SIZE);
+	}
+
+	/**
+	 * Cre un CSVWriter vers le fichier spcifi par le filePath, avec le sparateur csvSeparator, l'encodage charset et un tampon de bufferSize octets. Si
+	 * separatorHeader vaut true, le fichier commence par la ligne "sep=" dclarant le sparateur.
+	 *
+	 * @throws IOException si le fichier ne peut pas tre cr
+	 */
+	public CSVWriter(final String filePath, final String charset, final Character csvSeparator, final boolean separatorHeader, final int bufferSize)
+			throws IOException {
+		if (filePath == null) {
+			throw new IllegalArgumentException("L'argument filePath doit tre spcifi !");
+		}
+		if (bufferSize < 16) {
+			throw new IllegalArgumentException("L'argument bufferSize doit valoir au moins 16 !");
+		}
+		this.filePath = filePath;
+		this.charset = checkArguments(charset, csvSeparator);
+		separator = csvSeparator;
+		encodingCharset = Charset.forName(charset);
+		utf8 = CSVCharsets.isUtf8(encodingCharset);
+		encodeTable = utf8 ? null : encodeTable(encodingCharset);
+		encoder = (utf8 || (encodeTable != null)) ? null : newEncoder(encodingCharset);
+		chars = (encoder != null) ? new char[bufferSize] : null;
+		bytes = new byte[bufferSize];
+		outputStream = new FileOutputStream(filePath);
+		channel = outputStream.getChannel();
+		if (separatorHeader) {
+			appendText("sep=", 0, 4, false);
+			appendChar(separator);
+			appendChar('\r');
+			appendChar('\n');
+		}
+	}
+
+	/**
+	 * Cre un CSVWriter en mmoire pour un bloc de writeBlocks
+	 */
+	private CSVWriter(final CSVWriter target) {
+		filePath = null;
+		charset = target.charset;
+		separator = target.separator;
+		encodingCharset = target.encodingCharset;
+		utf8 = target.utf8;
+		encodeTable = target.encodeTable;
+		// l'encodeur "UTF-16" crit un BOM au dbut de chaque flux : les blocs suivent l'ordre d'octets du fichier sans le rpter
+		encoder = (target.encoder == null) ? null : newEncoder("UTF-16".equals(charset) ? Charset.forName("UTF-16BE") : encodingCharset);
+		chars = (encoder != null) ? new char[BLOCK_BUFFER_SIZE] : null;
+		bytes = new byte[BLOCK_BUFFER_SIZE];
+		outputStream = null;
+		channel = null;
+	}
+
+	private static String checkArguments(final String charset, final Character csvSeparator) {
+		if (charset == null) {
+			throw new IllegalArgumentException("L'encodage du fichier doit tre spcifi !");
+		}
+		if (csvSeparator == null) {
+			throw new IllegalArgumentException("L'argument csvSeparator doit tre renseign !");
+		}
+		if ((csvSeparator == QUOTE) || (csvSeparator == '\r') || (csvSeparator == '\n')) {
+			throw new IllegalArgumentException(String.format("Le caractre '%s' ne peut pas servir de sparateur !", csvSeparator));
+		}
+		return charset;
+	}
+
+	private static CharsetEncoder newEncoder(final Charset charset) {
+		return charset.newEncoder().onMalformedInput(CodingErrorAction.REPLACE).onUnmappableCharacter(CodingErrorAction.REPLACE);
+	}
+
+	/**
+	 * Retourne la table d'encodage des caractres non ASCII si charset est un encodage sur un octet compatible ASCII, null sinon. Un caractre absent de la
+	 * table est remplac par '?', comme le fait String.getBytes.
+	 */
+	private static byte[] encodeTable(final Charset charset) {
+		final char[] decodeTable = CSVCharsets.singleByteTable(charset);
+		if (decodeTable == null) {
+			return null;
+		}
+		final byte[] table = new byte[Character.MAX_VALUE + 1];
+		Arrays.fill(table, UNMAPPABLE);
+		for (int i = 0x80; i < decodeTable.length; i++) {
+			if (decodeTable[i] != '\uFFFD') {
+				table[decodeTable[i]] = (byte) i;
+			}
+		}
+		return table;
+	}
+
+	/**
+	 * crit une cellule texte sur la ligne courante, entre guillemets seulement si ncessaire. Une valeur null produit une cellule vide.
+	 *
+	 * @throws IOException si une erreur I/O survient
+	 */
+	public void writeCell(final CharSequence value) throws IOException {
+		startCell();
+		if (value == null) {
+			return;
+		}
+		final int end = value.length();
+		final char sep = separator;
+		boolean quoted = false;
+		for (int i = 0; i < end; i++) {
+			final char c = value.charAt(i);
+			if ((c == sep) || (c == QUOTE) || (c == '\n') || (c == '\r')) {
+				quoted = true;
+				break;
+			}
+		}
+		if (quoted) {
+			appendChar(QUOTE);
+			appendText(value, 0, end, true);
+			appendChar(QUOTE);
+		} else {
+			appendText(value, 0, end, false);
+		}
+	}
+
+	/**
+	 * crit une cellule int sur la ligne courante
+	 *
+	 * @throws IOException si une erreur I/O survient
+	 */
+	public void writeCell(final int value) throws IOException {
+		writeCell((long) value);
+	}
+
+	/**
+	 * crit une cellule long sur la ligne courante
+	 *
+	 * @throws IOException si une erreur I/O survient
+	 */
+	public void writeCell(final long value) throws IOException {
+		startCell();
+		appendDigits(value, 0);
+	}
+
+	/**
+	 * crit une cellule double sur la ligne courante, au format de Double.toString. Pour un nombre de dcimales fixe sans cration d'objet, utiliser
+	 * writeDecimalCell.
+	 *
+	 * @throws IOException si une erreur I/O survient
+	 */
+	public void writeCell(final double value) throws IOException {
+		startCell();
+		final String text = Double.toString(value);
+		appendText(text, 0, text.length(), false);
+	}
+
+	/**
+	 * crit la valeur dcimale unscaledValue / 10^scale avec scale dcimales et le point comme sparateur dcimal, pendant de CSVRowCursor.getDecimal
+	 *
+	 * @throws IOException si une erreur I/O survient
+	 */
+	public void writeDecimalCell(final long unscaledValue, final int scale) throws IOException {
+		if ((scale < 0) || (scale > 18)) {
+			throw new IllegalArgumentException("L'argument scale doit tre compris entre 0 et 18 !");
+		}
+		startCell();
+		appendDigits(unscaledValue, scale);
+	}
+
+	/**
+	 * crit les cellules fournies puis termine la ligne
+	 *
+	 * @throws IOException si une erreur I/O survient
+	 */
+	public void writeLine(final String... cells) throws IOException {
+		for (final String cell : cells) {
+			writeCell(cell);
+		}
+		endLine();
+	}
+
+	/**
+	 * Termine la ligne courante
+	 *
+	 * @throws IOException si une erreur I/O survient
+	 */
+	public void endLine() throws IOException {
+		checkOpen();
+		appendChar('\r');
+		appendChar('\n');
+		cellsInLine = 0;
+		numberOfLinesWritten++;
+	}
+
+	/**
+	 * Fait formater blockCount blocs de lignes par formatter sur les threads de executor, et les crit dans l'ordre des blocs  la suite du fichier. Le
+	 * formatage d'un bloc se fait pendant l'criture des prcdents ; au plus deux blocs par processeur sont en mmoire  la fois. Si executor est null, un
+	 * pool d'un thread par processeur est cr puis arrt.
+	 *
+	 * @return le nombre de lignes crites par les blocs
+	 * @throws IOException si une erreur I/O survient ou si formatter en lve une
+	 * @throws IllegalStateException si une ligne est en cours d'criture
+	 */
+	public long writeBlocks(final int blockCount, final CSVBlockFormatter formatter, final ExecutorService executor) throws IOException {
+		if (formatter == null) {
+			throw new IllegalArgumentException("L'argument formatter doit tre renseign !");
+		}
+		checkOpen();
+		if (cellsInLine != 0) {
+			throw new IllegalStateException("La ligne en cours doit tre termine par endLine() avant d'crire des blocs !");
+		}
+		final int processors = Runtime.getRuntime().availableProcessors();
+		final ExecutorService pool = (executor != null) ? executor : Executors.newFixedThreadPool(processors);
+		final int window = 2 * processors;
+		final List<Future<CSVWriter>> pending = new ArrayList<Future<CSVWriter>>(blockCount);
+		long lines = 0L;
+		try {
+			for (int blockIndex = 0; blockIndex < blockCount; blockIndex++) {
+				while ((pending.size() < blockCount) && (pending.size() <= (blockIndex + window))) {
+					pending.add(pool.submit(new BlockTask(this, formatter, pending.size())));
+				}
+				final CSVWriter block = awaitBlock(pending.get(blockIndex));
+				pending.set(blockIndex, null);
+				appendBlock(block);
+				lines += block.numberOfLinesWritten;
+			}
+		} finally {
+			for (final Future<CSVWriter> future : pending) {
+				if (future != null) {
+					future.cancel(true);
+				}
+			}
+			if (executor == null) {
+				pool.shutdown();
+			}
+		}
+		numberOfLinesWritten += lines;
+		return lines;
+	}
+
+	private static CSVWriter awaitBlock(final Future<CSVWriter> future) throws IOException {
+		try {
+			return future.get();
+		} catch (final InterruptedException ie) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("criture des blocs interrompue !", ie);
+		} catch (final ExecutionException ee) {
+			final Throwable cause = ee.getCause();
+			if (cause instanceof IOException) {
+				throw (IOException) cause;
+			} else if (cause instanceof RuntimeException) {
+				throw (RuntimeException) cause;
+			} else if (cause instanceof Error) {
+				throw (Error) cause;
+			}
+			throw new IllegalStateException(cause);
+		}
+	}
+
+	/**
+	 * Ajoute au tampon les octets d'un bloc format en mmoire
+	 */
+	private void appendBlock(final CSVWriter block) throws IOException {
+		if (block.cellsInLine != 0) {
+			block.endLine();
+		}
+		block.finishEncoding();
+		encodeChars(false);
+		if (block.length > (bytes.length - length)) {
+			flushBytes();
+		}
+		if ((channel != null) && (block.length > bytes.length)) {
+			writeFully(block.bytes, block.length);
+		} else {
+			ensureCapacity(block.length);
+			System.arraycopy(block.bytes, 0, bytes, length, block.length);
+			length += block.length;
+		}
+	}
+
+	private void startCell() throws IOException {
+		checkOpen();
+		if (cellsInLine++ > 0) {
+			appendChar(separator);
+		}
+	}
+
+	/**
+	 * crit la valeur value / 10^scale en caractres ASCII, sans crer d'objet
+	 */
+	private void appendDigits(final long value, final int scale) throws IOException {
+		final char[] buffer = digits;
+		int start = buffer.length;
+		// les chiffres sont calculs sur la valeur ngative pour couvrir Long.MIN_VALUE
+		long remaining = (value < 0) ? value : -value;
+		int written = 0;
+		do {
+			if ((written == scale) && (scale > 0)) {
+				buffer[--start] = '.';
+			}
+			buffer[--start] = (char) ('0' - (remaining % 10));
+			remaining /= 10;
+			written++;
+		} while ((remaining != 0L) || (written <= scale));
+		if (value < 0) {
+			buffer[--start] = '-';
+		}
+		for (int i = start; i < buffer.length; i++) {
+			appendChar(buffer[i]);
+		}
+	}
+
+	/**
+	 * crit un caractre isol (sparateur, guillemet, fin de ligne ou chiffre)
+	 */
+	private void appendChar(final char c) throws IOException {
+		if (encoder != null) {
+			if (charLength == chars.length) {
+				encodeChars(false);
+			}
+			chars[charLength++] = c;
+			return;
+		}
+		if ((bytes.length - length) < 3) {
+			flushBytes();
+		}
+		if (c < 0x80) {
+			bytes[length++] = (byte) c;
+		} else {
+			encodeNonAscii(c);
+		}
+	}
+
+	/**
+	 * Encode les caractres [start, end[ de text dans le tampon, en doublant les guillemets si doubleQuotes vaut true
+	 */
+	private void appendText(final CharSequence text, final int start, final int end, final boolean doubleQuotes) throws IOException {
+		if (encoder != null) {
+			for (int i = start; i < end; i++) {
+				final char c = text.charAt(i);
+				if (charLength >= (chars.length - 1)) {
+					encodeChars(false);
+				}
+				chars[charLength++] = c;
+				if (doubleQuotes && (c == QUOTE)) {
+					chars[charLength++] = QUOTE;
+				}
+			}
+			return;
+		}
+		for (int i = start; i < end; i++) {
+			if ((bytes.length - length) < 4) {
+				flushBytes();
+			}
+			final char c = text.charAt(i);
+			if (c < 0x80) {
+				bytes[length++] = (byte) c;
+				if (doubleQuotes && (c == QUOTE)) {
+					bytes[length++] = (byte) QUOTE;
+				}
+			} else if (Character.isHighSurrogate(c) && ((i + 1) < end) && Character.isLowSurrogate(text.charAt(i + 1))) {
+				final int codePoint = Character.toCodePoint(c, text.charAt(++i));
+				if (!utf8) {
+					bytes[length++] = UNMAPPABLE;
+					continue;
+				}
+				bytes[length++] = (byte) (0xF0 | (codePoint >> 18));
+				bytes[length++] = (byte) (0x80 | ((codePoint >> 12) & 0x3F));
+				bytes[length++] = (byte) (0x80 | ((codePoint >> 6) & 0x3F));
+				bytes[length++] = (byte) (0x80 | (codePoint & 0x3F));
+			} else {
+				encodeNonAscii(c);
+			}
+		}
+	}
+
+	/**
+	 * Encode un caractre non ASCII isol (au plus 3 octets), un demi-caractre de substitution seul tant remplac par '?'
+	 */
+	private void encodeNonAscii(final char c) {
+		if (!utf8) {
+			bytes[length++] = encodeTable[c];
+		} else if (c < 0x800) {
+			bytes[length++] = (byte) (0xC0 | (c >> 6));
+			bytes[length++] = (byte) (0x80 | (c & 0x3F));
+		} else if (Character.isSurrogate(c)) {
+			bytes[length++] = UNMAPPABLE;
+		} else {
+			bytes[length++] = (byte) (0xE0 | (c >> 12));
+			bytes[length++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+			bytes[length++] = (byte) (0x80 | (c & 0x3F));
+		}
+	}
+
+	/**
+	 * Encode les caractres en attente avec l'encodeur gnrique (encodages autres que UTF-8 et ceux sur un octet)
+	 */
+	private void encodeChars(final boolean endOfInput) throws IOException {
+		if (encoder == null) {
+			return;
+		}
+		final CharBuffer in = CharBuffer.wrap(chars, 0, charLength);
+		while (true) {
+			final ByteBuffer out = ByteBuffer.wrap(bytes, length, bytes.length - length);
+			final CoderResult result = encoder.encode(in, out, endOfInput);
+			length = out.position();
+			if (!result.isOverflow()) {
+				break;
+			}
+			flushBytes();
+		}
+		charLength = in.remaining();
+		System.arraycopy(chars, in.position(), chars, 0, charLength);
+	}
+
+	/**
+	 * Termine l'encodage des caractres en attente,  la fermeture ou avant l'criture d'un bloc
+	 */
+	private void finishEncoding() throws IOException {
+		if (encoder == null) {
+			return;
+		}
+		encodeChars(true);
+		while (true) {
+			final ByteBuffer out = ByteBuffer.wrap(bytes, length, bytes.length - length);
+			final CoderResult result = encoder.flush(out);
+			length = out.position();
+			if (!result.isOverflow()) {
+				break;
+			}
+			flushBytes();
+		}
+	}
+
+	/**
+	 * Vide le tampon d'octets dans le fichier ; un CSVWriter en mmoire agrandit son tampon  la place
+	 */
+	private void flushBytes() throws IOException {
+		if (channel == null) {
+			bytes = Arrays.copyOf(bytes, bytes.length * 2);
+			return;
+		}
+		writeFully(bytes, length);
+		length = 0;
+	}
+
+	private void ensureCapacity(final int count) {
+		if ((bytes.length - length) < count) {
+			bytes = Arrays.copyOf(bytes, Math.max(bytes.length * 2, length + count));
+		}
+	}
+
+	private void writeFully(final byte[] source, final int count) throws IOException {
+		final ByteBuffer buffer = ByteBuffer.wrap(source, 0, count);
+		while (buffer.hasRemaining()) {
+			channel.write(buffer);
+		}
+	}
+
+	private void checkOpen() {
+		if (closed) {
+			throw new IllegalStateException("Le CSVWriter est ferm !");
+		}
+	}
+
+	/**
+	 * crit dans le fichier le contenu du tampon. Une ligne commence reste ouverte.
+	 *
+	 * @throws IOException si une erreur I/O survient
+	 */
+	@Override
+	public void flush() throws IOException {
+		checkOpen();
+		encodeChars(false);
+		flushBytes();
+	}
+
+	/**
+	 * Termine la ligne en cours s'il y en a une, crit le contenu du tampon et ferme le fichier
+	 *
+	 * @throws IOException si une erreur I/O survient
+	 */
+	@Override
+	public void close() throws IOException {
+		if (closed) {
+			return;
+		}
+		try {
+			if (cellsInLine != 0) {
+				endLine();
+			}
+			finishEncoding();
+			flushBytes();
+		} finally {
+			closed = true;
+			if (outputStream != null) {
+				outputStream.close();
+			}
+		}
+	}
+
+	/**
+	 * Retourne le chemin vers le fichier crit par ce CSVWriter, null pour un bloc en mmoire
+	 */
+	public String getFilePath() {
+		return filePath;
+	}
+
+	/**
+	 * Retourne le charset utilis par ce CSVWriter
+	 */
+	public String getCharset() {
+		return charset;
+	}
+
+	/**
+	 * Retourne le sparateur CSV utilis par ce CSVWriter
+	 */
+	public Character getSeparator() {
+		return separator;
+	}
+
+	/**
+	 * Retourne le nombre de lignes crites, sans compter la ligne "sep="
+	 */
+	public long getNumberOfLinesWritten() {
+		return numberOfLinesWritten;
+	}
+
+	/**
+	 * Tche de formatage d'un bloc dans un CSVWriter en mmoire
+	 */
+	private static final class BlockTask implements Callable<CSVWriter> {
+		private final CSVWriter target;
+		private final CSVBlockFormatter formatter;
+		private final int blockIndex;
+
+		private BlockTask(final CSVWriter target, final CSVBlockFormatter formatter, final int blockIndex) {
+			this.target = target;
+			this.formatter = formatter;
+			this.blockIndex = blockIndex;
+		}
+
+		@Override
+		public CSVWriter call() throws IOException {
+			final CSVWriter block = new CSVWriter(target);
+			formatter.formatBlock(blockIndex, block);
+			return block;
+		}
+	}
+}
@@ -1,16 +1,42 @@
 package com.humbletools.smalljavatools;
-import java.io.BufferedInputStream;
-import java.io.FileOutputStream;
+import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.MalformedURLException;
 import java.net.URL;
 import java.net.URLConnection;
+import java.net.UnknownHostException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.FileSystemException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * This class is a small program able to download files from urls to a path on
@@ -24,7 +50,84 @@ public class GoFetch {
 	/**
 	 * Command line example.
 	 */
-	private static final String ARG_EXAMPLE = "EXAMPLE : (java) GoFetch --url http://www.website.com/img[X].jpg --target C:/folder/a/ --range 1-6";
+	private static final String ARG_EXAMPLE = "EXAMPLE : (java) GoFetch --url http://www.website.com/img[X].jpg --target C:/folder/a/ --range 1-6 --parallel 8";
+
+	/**
+	 * Default maximum number of simultaneous connections to the same host.
+	 */
+	private static final int DEFAULT_PER_HOST = 6;
+
+	/**
+	 * Size of the buffer a download goes through on its way to disk.
+	 */
+	private static final int BUFFER_SIZE = 64 * 1024;
+
+	/**
+	 * Extension of the temporary file a download is written to before being renamed to its target.
+	 */
+	private static final String PART_EXTENSION = ".part";
+
+	/**
+	 * Extension of the file next to a temporary file which records, in resume mode, the length, ETag and Last-Modified of
+	 * the content being downloaded, written as soon as the response arrives.
+	 */
+	private static final String PART_INFO_EXTENSION = ".part.info";
+
+	/**
+	 * Name of the manifest file written in the target folder by the resume mode.
+	 */
+	private static final String MANIFEST_FILE_NAME = ".gofetch-manifest";
+
+	/**
+	 * Minimum delay in milliseconds between two saves of the manifest during a batch.
+	 */
+	private static final long MANIFEST_SAVE_INTERVAL = 5000;
+
+	/**
+	 * HTTP status code of a Range request beyond the end of the content (no constant in HttpURLConnection).
+	 */
+	private static final int HTTP_RANGE_NOT_SATISFIABLE = 416;
+
+	/**
+	 * Minimum size of a segment in segmented mode: smaller files are downloaded with less connections.
+	 */
+	private static final long MIN_SEGMENT_SIZE = 1024 * 1024;
+
+	/**
+	 * Default number of retries of a download after a transient failure.
+	 */
+	private static final int DEFAULT_RETRIES = 3;
+
+	/**
+	 * Delay in milliseconds before the first retry, doubled at each following one.
+	 */
+	private static final long RETRY_BASE_DELAY = 500;
+
+	/**
+	 * Maximum delay in milliseconds between two retries, unless the server asks for more with Retry-After.
+	 */
+	private static final long RETRY_MAX_DELAY = 30000;
+
+	/**
+	 * HTTP status code of a request refused by a rate limit (no constant in HttpURLConnection).
+	 */
+	private static final int HTTP_TOO_MANY_REQUESTS = 429;
+
+	/**
+	 * Ratio between the smoothed latency of a host and its baseline latency above which the adaptive mode runs less downloads.
+	 */
+	private static final double LATENCY_TOLERANCE = 2;
+
+	/**
+	 * Weight of each new latency in the baseline latency of a host: the baseline follows at once a lower latency, and
+	 * slowly a higher one, so that a lasting change of the latency of a server stops counting as congestion.
+	 */
+	private static final double BASELINE_WEIGHT = 0.05;
+
+	/**
+	 * Minimum delay in nanoseconds between two decreases of the number of downloads in adaptive mode.
+	 */
+	private static final long MIN_DECREASE_INTERVAL = TimeUnit.MILLISECONDS.toNanos(100);
 
 	/**
 	 * Enum holding all the possible arguments for this program.
@@ -37,7 +140,15 @@ public class GoFetch {
 		TARGET("-t", "--target", "-t/--target		target argument, the value is a folder path on disk, required to write the files."),
 		RANGE("-r", "--range", "-r/--range		range argument, requires a specific syntax value 'n1:n2' where n1 and n2 are two positive integers >= 0 and n1 >= n2."),
 		HELP("-h", "--help", "-h/--help		help argument without value, will display the help of the program and shut it down."),
-		SIMULATION("-s", "--simul", "-s/--simul		simul argument, no value required. If present, the files will not really be downloaded or written to disk, it will fake everything for debug/demonstration purposes.");
+		SIMULATION("-s", "--simul", "-s/--simul		simul argument, no value required. If present, the files will not really be downloaded or written to disk, it will fake everything for debug/demonstration purposes."),
+		PARALLEL("-p", "--parallel", "-p/--parallel		parallel argument, the number of files downloaded at the same time (1 by default)."),
+		PER_HOST("-ph", "--per-host", "-ph/--per-host		per-host argument, the maximum number of simultaneous connections to the same host (" + DEFAULT_PER_HOST + " by default)."),
+		RESUME("-re", "--resume", "-re/--resume		resume argument, no value required. If present, files already downloaded are only downloaded again if they changed on the server, and interrupted downloads are continued where they stopped. The state of the downloads is kept in the file " + MANIFEST_FILE_NAME + " of the target folder."),
+		SEGMENTS("-sg", "--segments", "-sg/--segments		segments argument, the number of connections used to download each file of at least " + (MIN_SEGMENT_SIZE >> 20) + " MB in byte ranges, when the server accepts ranges (1 by default). These connections count against --per-host: a file gets less segments when the connections to its host are in use."),
+		REQUESTS_PER_SECOND("-rps", "--requests-per-second", "-rps/--requests-per-second	requests-per-second argument, the maximum number of HTTP requests sent per second by the whole batch, retries and segments included (no limit by default)."),
+		BYTES_PER_SECOND("-bps", "--bytes-per-second", "-bps/--bytes-per-second	bytes-per-second argument, the maximum number of bytes downloaded per second by the whole batch (no limit by default)."),
+		RETRIES("-rt", "--retries", "-rt/--retries		retries argument, the number of times a download is tried again after a transient failure (network error, HTTP 429, 502, 503 or 504), with an exponential backoff from " + RETRY_BASE_DELAY + " ms and a random jitter, or the delay asked by a Retry-After header (" + DEFAULT_RETRIES + " by default)."),
+		ADAPTIVE("-ad", "--adaptive", "-ad/--adaptive		adaptive argument, no value required. If present, the number of files downloaded at the same time goes down to 1 when transient failures occur or the latency of the server rises, and back up to --parallel when they stop.");
 
 		/**
 		 * The short version of the argument name.
@@ -84,6 +195,242 @@ public class GoFetch {
 		}
 	}
 
+	/**
+	 * Arguments whose value must be a strictly positive integer.
+	 */
+	private static final List<Argument> POSITIVE_INTEGER_ARGUMENTS = Arrays.asList(Argument.PARALLEL, Argument.PER_HOST, Argument.SEGMENTS,
+			Argument.REQUESTS_PER_SECOND, Argument.BYTES_PER_SECOND);
+
+	/**
+	 * Arguments whose value must be a positive or zero integer.
+	 */
+	private static final List<Argument> NON_NEGATIVE_INTEGER_ARGUMENTS = Arrays.asList(Argument.RETRIES);
+
+	/**
+	 * Outcome of the download of one url, filled in by the thread which downloaded it.
+	 */
+	private static final class FetchResult {
+		private final String url;
+		private final String targetFile;
+		private final AtomicLong bytes = new AtomicLong();
+		private boolean unchanged;
+		private boolean resumed;
+		private int retries;
+		private long latencyNanos;
+		private long elapsedNanos;
+		private Exception failure;
+
+		private FetchResult(final String url, final String targetFile) {
+			this.url = url;
+			this.targetFile = targetFile;
+		}
+	}
+
+	/**
+	 * State shared by the downloads of a batch.
+	 */
+	private static final class FetchContext {
+		private final boolean simulation;
+		private final Manifest manifest;
+		private final int segments;
+		private final ExecutorService segmentExecutor;
+		private int retries = DEFAULT_RETRIES;
+		private TokenBucket requestRate;
+		private TokenBucket byteRate;
+		private ConcurrencyLimit concurrency;
+
+		private FetchContext(final boolean simulation, final Manifest manifest, final int parallel, final int segments) {
+			this.simulation = simulation;
+			this.manifest = manifest;
+			this.segments = segments;
+			// at most parallel downloads, each requesting at most segments - 1 segments: no segment ever waits for a thread
+			segmentExecutor = (segments > 1) ? Executors.newFixedThreadPool(parallel * (segments - 1)) : null;
+		}
+
+		/**
+		 * Waits until the request rate limit allows one more request.
+		 */
+		private void beforeRequest() throws InterruptedIOException {
+			if (requestRate != null) {
+				requestRate.take(1);
+			}
+		}
+
+		/**
+		 * Waits until the byte rate limit allows count more bytes.
+		 */
+		private void afterRead(final long count) throws InterruptedIOException {
+			if (byteRate != null) {
+				byteRate.take(count);
+			}
+		}
+	}
+
+	/**
+	 * Token bucket limiting a rate (requests or bytes per second) for all the threads of a batch. It holds at most one second
+	 * worth of tokens, so that a burst after an idle period is bounded. Taking more tokens than available puts the bucket in
+	 * debt: the caller waits until the debt is paid back, and the following callers wait behind it.
+	 */
+	private static final class TokenBucket {
+		private final long rate;
+		private double tokens;
+		private long refilled = System.nanoTime();
+
+		private TokenBucket(final long rate) {
+			this.rate = rate;
+			tokens = rate;
+		}
+
+		private void take(final long count) throws InterruptedIOException {
+			final long waitNanos;
+			synchronized (this) {
+				final long now = System.nanoTime();
+				tokens = Math.min(rate, tokens + (now - refilled) * (rate / 1e9d)) - count;
+				refilled = now;
+				waitNanos = (tokens < 0) ? (long) (-tokens * 1e9d / rate) : 0;
+			}
+			if (waitNanos > 0) {
+				try {
+					TimeUnit.NANOSECONDS.sleep(waitNanos);
+				} catch (final InterruptedException e) {
+					Thread.currentThread().interrupt();
+					throw new InterruptedIOException("Interrupted while waiting for the rate limit");
+				}
+			}
+		}
+	}
+
+	/**
+	 * Limit on the number of downloads running at the same time. Without --adaptive it is simply --parallel. With --adaptive it
+	 * moves between 1 and --parallel by additive increase and multiplicative decrease: each successful download raises it by
+	 * 1/limit (about one per round of downloads) as long as the latency of its host is stable, a transient failure halves it,
+	 * and a smoothed latency rising above LATENCY_TOLERANCE times the baseline latency of the host lowers it by a tenth. The
+	 * baseline of each host is its lowest recent latency, which drifts up by BASELINE_WEIGHT towards higher latencies: a
+	 * server which stays slower becomes the new normal instead of holding the limit down forever. Decreases happen at most
+	 * once per smoothed latency, so that the failures caused by the same overload only count once.
+	 */
+	private static final class ConcurrencyLimit {
+		private final int maximum;
+		private final boolean adaptive;
+		private double limit;
+		private int running;
+		private final Map<String, HostLatency> latencies = new HashMap<String, HostLatency>();
+		private long nextDecrease = System.nanoTime();
+
+		private ConcurrencyLimit(final int maximum, final boolean adaptive) {
+			this.maximum = maximum;
+			this.adaptive = adaptive;
+			limit = maximum;
+		}
+
+		/**
+		 * Waits until one more download may run.
+		 */
+		private synchronized void acquire() {
+			boolean interrupted = false;
+			while (running >= (int) limit) {
+				try {
+					wait();
+				} catch (final InterruptedException e) {
+					interrupted = true;
+				}
+			}
+			running++;
+			if (interrupted) {
+				Thread.currentThread().interrupt();
+			}
+		}
+
+		private synchronized void release() {
+			running--;
+			notifyAll();
+		}
+
+		/**
+		 * Records a successful request to host and the delay before its response (0 if unknown).
+		 */
+		private synchronized void onSuccess(final String host, final long latencyNanos) {
+			if (!adaptive) {
+				return;
+			}
+			final HostLatency latency = latency(host);
+			if (latencyNanos > 0) {
+				if (latency.smoothed == 0) {
+					latency.baseline = latencyNanos;
+					latency.smoothed = latencyNanos;
+				} else {
+					latency.baseline = Math.min(latencyNanos, latency.baseline + BASELINE_WEIGHT * (latencyNanos - latency.baseline));
+					latency.smoothed = 0.8 * latency.smoothed + 0.2 * latencyNanos;
+				}
+				if (latency.smoothed > LATENCY_TOLERANCE * latency.baseline) {
+					decrease(0.9, latency);
+					return;
+				}
+			}
+			limit = Math.min(maximum, limit + 1 / limit);
+			notifyAll();
+		}
+
+		/**
+		 * Records a transient failure of a request to host.
+		 */
+		private synchronized void onFailure(final String host) {
+			if (adaptive) {
+				decrease(0.5, latency(host));
+			}
+		}
+
+		private HostLatency latency(final String host) {
+			HostLatency latency = latencies.get(host);
+			if (latency == null) {
+				latency = new HostLatency();
+				latencies.put(host, latency);
+			}
+			return latency;
+		}
+
+		private void decrease(final double factor, final HostLatency latency) {
+			final long now = System.nanoTime();
+			if (now - nextDecrease >= 0) {
+				limit = Math.max(1, limit * factor);
+				nextDecrease = now + Math.max(MIN_DECREASE_INTERVAL, (long) latency.smoothed);
+			}
+		}
+
+		/**
+		 * Baseline and smoothed response latencies of a host, in nanoseconds (0 before its first response).
+		 */
+		private static final class HostLatency {
+			private double baseline;
+			private double smoothed;
+		}
+	}
+
+	/**
+	 * HTTP error response, with the delay asked by its Retry-After header if any.
+	 */
+	private static final class HttpStatusException extends IOException {
+		private static final long serialVersionUID = 1L;
+		private final int code;
+		private final long retryAfterMillis;
+
+		private HttpStatusException(final String url, final HttpURLConnection uc) throws IOException {
+			super(String.format("Server returned HTTP response code %d for %s", uc.getResponseCode(), url));
+			code = uc.getResponseCode();
+			final String retryAfter = uc.getHeaderField("Retry-After");
+			long delay = -1;
+			if (retryAfter != null) {
+				try {
+					delay = TimeUnit.SECONDS.toMillis(Long.parseLong(retryAfter.trim()));
+				} catch (final NumberFormatException e) {
+					final long date = uc.getHeaderFieldDate("Retry-After", -1);
+					delay = (date > 0) ? Math.max(0, date - System.currentTimeMillis()) : -1;
+				}
+			}
+			retryAfterMillis = delay;
+		}
+	}
+
 	/**
 	 * Where the magic happens.
 	 * @param args the command line from the user.
@@ -94,21 +441,226 @@ public class GoFetch {
 			if(!arguments.containsKey(Argument.HELP)){
 				final List<String> urlList = buildUrlList(arguments);
 				if (urlList != null) {
-					for(final String url : urlList){
+					final long start = System.nanoTime();
+					final List<FetchResult> results = fetchAll(urlList, arguments);
+					printReport(results, System.nanoTime() - start);
+				}
+			} else {
+				printHelp();
+			}
+		}
+	}
+
+	/**
+	 * Downloads all the urls of the list, at most --parallel at the same time (less in adaptive mode) and at most --per-host at
+	 * the same time from a given host. The urls are started in the order of the list. A failure only affects its own url: it is
+	 * recorded in its result and the other downloads go on.
+	 * @param urlList the urls to download
+	 * @param arguments the parsed command line
+	 * @return the results, in the order of the list
+	 */
+	private static List<FetchResult> fetchAll(final List<String> urlList, final Map<Argument, String> arguments) {
+		final int parallel = getIntArgument(arguments, Argument.PARALLEL, 1);
+		final int perHost = getIntArgument(arguments, Argument.PER_HOST, DEFAULT_PER_HOST);
+		final boolean simulation = arguments.containsKey(Argument.SIMULATION);
+		final List<FetchResult> results = new ArrayList<FetchResult>(urlList.size());
+		final FetchContext context;
+		try {
+			context = new FetchContext(simulation, (arguments.containsKey(Argument.RESUME) && !simulation)
+					? new Manifest(Paths.get(buildTargetFileName(arguments.get(Argument.TARGET), MANIFEST_FILE_NAME))) : null,
+					parallel, getIntArgument(arguments, Argument.SEGMENTS, 1));
+		} catch (final IOException e) {
+			System.out.println(String.format("Could not read the manifest : %s", e));
+			return results;
+		}
+		context.retries = getIntArgument(arguments, Argument.RETRIES, DEFAULT_RETRIES);
+		if (arguments.containsKey(Argument.REQUESTS_PER_SECOND)) {
+			context.requestRate = new TokenBucket(getIntArgument(arguments, Argument.REQUESTS_PER_SECOND, 0));
+		}
+		if (arguments.containsKey(Argument.BYTES_PER_SECOND)) {
+			context.byteRate = new TokenBucket(getIntArgument(arguments, Argument.BYTES_PER_SECOND, 0));
+		}
+		context.concurrency = new ConcurrencyLimit(parallel, arguments.containsKey(Argument.ADAPTIVE));
+		final ConcurrencyLimit slots = context.concurrency;
+		final Map<String, Semaphore> hostSlots = new HashMap<String, Semaphore>();
+		final ExecutorService executor = Executors.newFixedThreadPool(parallel);
+		try {
+			for (final String url : urlList) {
+				final FetchResult result = new FetchResult(url, buildTargetFileName(arguments.get(Argument.TARGET), url));
+				results.add(result);
+				final String host;
+				try {
+					host = new URL(url).getHost();
+				} catch (final IOException e) {
+					result.failure = e;
+					continue;
+				}
+				Semaphore hostSlot = hostSlots.get(host);
+				if (hostSlot == null) {
+					hostSlot = new Semaphore(perHost);
+					hostSlots.put(host, hostSlot);
+				}
+				// only this thread acquires permits: taking the global one first cannot deadlock
+				slots.acquire();
+				hostSlot.acquireUninterruptibly();
+				final Semaphore acquiredHostSlot = hostSlot;
+				executor.execute(new Runnable() {
+					@Override
+					public void run() {
 						try {
-							boolean simulation = arguments.containsKey(Argument.SIMULATION);
-							final byte[] data = download(new URL(url), simulation);
-							writeToDisk(data, buildTargetFileName(arguments.get(Argument.TARGET), url), simulation);
-						} catch (final IOException e) {
-							e.printStackTrace();
-							break;
+							fetch(result, context, host, acquiredHostSlot);
+						} finally {
+							acquiredHostSlot.release();
+							slots.release();
 						}
 					}
+				});
+			}
+		} finally {
+			executor.shutdown();
+			try {
+				while (!executor.awaitTermination(1, TimeUnit.MINUTES)) {
+					// downloads are still running, keep waiting
+				}
+			} catch (final InterruptedException e) {
+				executor.shutdownNow();
+				Thread.currentThread().interrupt();
+			}
+			if (context.segmentExecutor != null) {
+				context.segmentExecutor.shutdown();
+			}
+			if (context.manifest != null) {
+				try {
+					context.manifest.save();
+				} catch (final IOException e) {
+					System.out.println(String.format("Could not save the manifest : %s", e));
 				}
+			}
+		}
+		return results;
+	}
+
+	/**
+	 * Downloads one url and writes it to disk, recording the outcome in its result. After a transient failure the download is
+	 * tried again, up to --retries times, once the backoff delay has passed; in resume mode it continues from its temporary
+	 * file. Every attempt is reported to the concurrency limit.
+	 * @param result the result of the url to download
+	 * @param context the state shared by the downloads of the batch
+	 * @param host the host of the url
+	 * @param hostSlot the connections to the host, one of them already taken by this download
+	 */
+	private static void fetch(final FetchResult result, final FetchContext context, final String host, final Semaphore hostSlot) {
+		final long start = System.nanoTime();
+		for (int attempt = 0;; attempt++) {
+			result.failure = null;
+			result.latencyNanos = 0;
+			try {
+				download(result, context, hostSlot);
+				context.concurrency.onSuccess(host, result.latencyNanos);
+				break;
+			} catch (final IOException e) {
+				result.failure = e;
+			} catch (final RuntimeException e) {
+				result.failure = e;
+				break;
+			}
+			if (!isTransient(result.failure)) {
+				break;
+			}
+			context.concurrency.onFailure(host);
+			if (attempt >= context.retries) {
+				break;
+			}
+			final long delay = retryDelay(attempt, result.failure);
+			System.out.println(String.format("Retrying in %d ms : %s (%s)", delay, result.url, result.failure));
+			result.retries++;
+			try {
+				Thread.sleep(delay);
+			} catch (final InterruptedException e) {
+				Thread.currentThread().interrupt();
+				break;
+			}
+		}
+		result.elapsedNanos = System.nanoTime() - start;
+		if (context.manifest != null) {
+			try {
+				context.manifest.saveIfDue();
+			} catch (final IOException e) {
+				System.out.println(String.format("Could not save the manifest : %s", e));
+			}
+		}
+	}
+
+	/**
+	 * Tells whether a failure may not happen again: a network error, or an HTTP status meaning that the server or a gateway is
+	 * overloaded or rate limited. Unknown hosts, malformed urls, missing files, file system errors and interruptions are final.
+	 */
+	private static boolean isTransient(final Exception failure) {
+		if (failure instanceof HttpStatusException) {
+			final int code = ((HttpStatusException) failure).code;
+			return code == HTTP_TOO_MANY_REQUESTS || code == HttpURLConnection.HTTP_BAD_GATEWAY || code == HttpURLConnection.HTTP_UNAVAILABLE
+					|| code == HttpURLConnection.HTTP_GATEWAY_TIMEOUT;
+		}
+		return failure instanceof IOException && !(failure instanceof UnknownHostException) && !(failure instanceof MalformedURLException)
+				&& !(failure instanceof FileNotFoundException) && !(failure instanceof FileSystemException) && !Thread.currentThread().isInterrupted();
+	}
+
+	/**
+	 * Returns the delay in milliseconds before retrying after the given attempt (0 for the first one): RETRY_BASE_DELAY doubled
+	 * at each attempt up to RETRY_MAX_DELAY, of which a random half is kept so that the downloads which failed together do
+	 * not retry together, or the Retry-After delay of the server if it is longer.
+	 */
+	private static long retryDelay(final int attempt, final Exception failure) {
+		final long backoff = Math.min(RETRY_MAX_DELAY, RETRY_BASE_DELAY << Math.min(attempt, 20));
+		final long delay = backoff / 2 + ThreadLocalRandom.current().nextLong(backoff / 2 + 1);
+		if (failure instanceof HttpStatusException) {
+			return Math.max(delay, ((HttpStatusException) failure).retryAfterMillis);
+		}
+		return delay;
+	}
+
+	/**
+	 * Prints out the final report: number of files downloaded, resumed or unchanged, retries, bytes transferred (failed
+	 * downloads and retries included), throughput, and every failed url with its cause.
+	 * @param results the results of all the urls
+	 * @param elapsedNanos the duration of the whole batch
+	 */
+	private static void printReport(final List<FetchResult> results, final long elapsedNanos) {
+		long bytes = 0;
+		int downloaded = 0;
+		int unchanged = 0;
+		int resumed = 0;
+		int retries = 0;
+		final List<FetchResult> failures = new ArrayList<FetchResult>();
+		for (final FetchResult result : results) {
+			bytes += result.bytes.get();
+			retries += result.retries;
+			if (result.failure != null) {
+				failures.add(result);
+			} else if (result.unchanged) {
+				unchanged++;
 			} else {
-				printHelp();
+				downloaded++;
+				resumed += result.resumed ? 1 : 0;
 			}
 		}
+		final double seconds = elapsedNanos / 1e9d;
+		System.out.println();
+		System.out.println(String.format("REPORT : %d file(s) downloaded (%d resumed), %d unchanged, %d failure(s), %d retry(ies), %d bytes in %.1f s (%.1f files/s, %.0f bytes/s)",
+				downloaded, resumed, unchanged, failures.size(), retries, bytes, seconds, seconds > 0 ? downloaded / seconds : 0d, seconds > 0 ? bytes / seconds : 0d));
+		for (final FetchResult failure : failures) {
+			System.out.println(String.format("FAILED : %s after %d ms (%s)", failure.url, failure.elapsedNanos / 1000000, failure.failure));
+		}
+	}
+
+	/**
+	 * Reads the integer value of an argument, validated by resolveCommandLine.
+	 * @param args the parsed command line
+	 * @param argument the argument to read
+	 * @param defaultValue the value to return if the argument is absent
+	 */
+	private static int getIntArgument(final Map<Argument, String> args, final Argument argument, final int defaultValue) {
+		return args.containsKey(argument) ? Integer.parseInt(args.get(argument)) : defaultValue;
 	}
 
 	/**
@@ -166,7 +718,8 @@ public class GoFetch {
 				final String arg = (String) it.next();
 				final Argument argument = Argument.resolve(arg);
 				if (argument != null) {
-					if(Argument.HELP.equals(argument) || Argument.SIMULATION.equals(argument)){
+					if(Argument.HELP.equals(argument) || Argument.SIMULATION.equals(argument) || Argument.RESUME.equals(argument)
+							|| Argument.ADAPTIVE.equals(argument)){
 						result.put(argument, "");
 					}else{
 						result.put(argument, (String) it.next());
@@ -186,10 +739,35 @@ public class GoFetch {
 					result = null;
 				}
 			}
+			for (final Argument argument : POSITIVE_INTEGER_ARGUMENTS) {
+				if (result != null && result.containsKey(argument) && !isIntegerAtLeast(result.get(argument), 1)) {
+					System.out.println(String.format("The value of %s must be a strictly positive integer : %s", argument.longLabel, result.get(argument)));
+					printHelp();
+					result = null;
+				}
+			}
+			for (final Argument argument : NON_NEGATIVE_INTEGER_ARGUMENTS) {
+				if (result != null && result.containsKey(argument) && !isIntegerAtLeast(result.get(argument), 0)) {
+					System.out.println(String.format("The value of %s must be a positive or zero integer : %s", argument.longLabel, result.get(argument)));
+					printHelp();
+					result = null;
+				}
+			}
 		}
 		return result;
 	}
 
+	/**
+	 * Checks that a value is an integer greater than or equal to minimum.
+	 */
+	private static boolean isIntegerAtLeast(final String value, final int minimum) {
+		try {
+			return Integer.parseInt(value) >= minimum;
+		} catch (final NumberFormatException e) {
+			return false;
+		}
+	}
+
 	/**
 	 * Prints out the help contents.
 	 */
@@ -203,75 +781,422 @@ public class GoFetch {
 	}
 
 	/**
-	 * Writes the data array to the path name specified.
+	 * Downloads a file from any url straight to disk. The response body goes through a fixed size buffer into a temporary
+	 * file next to the target, which is renamed to the target once complete: memory use does not depend on the size of the
+	 * file, chunked responses without content length are supported, and the target never contains a partial download.
+	 * </br></br>
+	 * With a manifest (resume mode), an existing target is only downloaded again if the server says it has changed since
+	 * (If-None-Match/If-Modified-Since), and a temporary file left by an interrupted download is continued with a Range
+	 * request, provided the content has not changed since (If-Range). The ETag and Last-Modified of each url are recorded
+	 * in the manifest, and the temporary file of a failed download is kept. As the manifest is only saved from time to
+	 * time, they are also written next to the temporary file as soon as the response arrives: a download stopped by a kill
+	 * can still be resumed.
+	 * 
+	 * </br></br>
+	 * In segmented mode, a file of known length served by a server which accepts ranges (Accept-Ranges: bytes) is split
+	 * into segments: the response to the first request provides the first segment, the others are requested at the same
+	 * time with Range requests and each one is written at its offset in the temporary file. Each of these requests takes
+	 * a connection to the host, so that --per-host still holds: the file is split into less segments when they are in use.
 	 * 
-	 * @param data
-	 *            the byte[] containing the data of the downloaded file.
-	 * @param fullPathName
-	 *            the path name on disk, ended by the file name.
-	 * @param simulation 
+	 * @param result
+	 *            the result of the url to download, receiving the number of bytes downloaded.
+	 * @param context the state shared by the downloads of the batch
+	 * @param hostSlot the connections to the host of the url, one of them already taken by this download
 	 * @throws IOException
-	 *             If an IOException is thrown by FileOutputStream (opening,
-	 *             writing, closing).
+	 *             if less bytes have been received than announced by the server, or if the connection, the reading of
+	 *             the response or the writing of the file fails.
 	 */
-	private static void writeToDisk(final byte[] data, final String fullPathName, final boolean simulation)
-			throws IOException {
-		if (fullPathName == null || fullPathName.length() == 0) {
-			throw new IllegalArgumentException("fullPathName null or empty");
+	private static void download(final FetchResult result, final FetchContext context, final Semaphore hostSlot) throws IOException {
+		if (result.targetFile == null || result.targetFile.length() == 0) {
+			throw new IllegalArgumentException("target file name null or empty");
+		}
+		System.out.println(String.format("Downloading from : %s", result.url));
+		final Manifest manifest = context.manifest;
+		if (context.simulation) {
+			System.out.println(String.format("Writing to : %s", result.targetFile));
+			return;
+		}
+		final Path target = Paths.get(result.targetFile);
+		final Path temp = Paths.get(result.targetFile + PART_EXTENSION);
+		final Path partInfo = Paths.get(result.targetFile + PART_INFO_EXTENSION);
+		final URLConnection uc = new URL(result.url).openConnection();
+		context.beforeRequest();
+		long resumeFrom = 0;
+		final String[] known = (manifest != null) ? manifest.get(result.url) : null;
+		if (manifest != null && uc instanceof HttpURLConnection) {
+			if (Files.exists(target)) {
+				if (known == null) {
+					uc.setIfModifiedSince(Files.getLastModifiedTime(target).toMillis());
+				} else if (Long.parseLong(known[0]) == Files.size(target)) {
+					setValidators(uc, known);
+				}
+			} else if (Files.exists(temp) && Files.size(temp) > 0) {
+				final String[] part = readPartInfo(partInfo, result.url);
+				final String[] partKnown = (part != null) ? part : known;
+				if (partKnown != null && (partKnown[1] != null || partKnown[2] != null)) {
+					resumeFrom = Files.size(temp);
+					uc.setRequestProperty("Range", "bytes=" + resumeFrom + "-");
+					uc.setRequestProperty("If-Range", partKnown[1] != null ? partKnown[1] : partKnown[2]);
+				}
+			}
+		}
+		if (uc instanceof HttpURLConnection) {
+			final long requestStart = System.nanoTime();
+			final int code = ((HttpURLConnection) uc).getResponseCode();
+			result.latencyNanos = System.nanoTime() - requestStart;
+			if (code == HttpURLConnection.HTTP_NOT_MODIFIED) {
+				((HttpURLConnection) uc).disconnect();
+				result.unchanged = true;
+				System.out.println(String.format("Unchanged : %s", result.targetFile));
+				return;
+			}
+			if (code == HTTP_RANGE_NOT_SATISFIABLE && resumeFrom > 0) {
+				// the partial file does not match the content any more: start again from scratch
+				((HttpURLConnection) uc).disconnect();
+				Files.delete(temp);
+				Files.deleteIfExists(partInfo);
+				download(result, context, hostSlot);
+				return;
+			}
+			if (code == HttpURLConnection.HTTP_PARTIAL) {
+				final String contentRange = uc.getHeaderField("Content-Range");
+				if (resumeFrom == 0 || contentRange == null || !contentRange.startsWith("bytes " + resumeFrom + "-")) {
+					((HttpURLConnection) uc).disconnect();
+					throw new IOException(String.format("Unexpected Content-Range %s, expected bytes %d-", contentRange, resumeFrom));
+				}
+				result.resumed = true;
+			} else if (code >= HttpURLConnection.HTTP_BAD_REQUEST) {
+				final HttpStatusException failure = new HttpStatusException(result.url, (HttpURLConnection) uc);
+				((HttpURLConnection) uc).disconnect();
+				throw failure;
+			} else {
+				resumeFrom = 0;
+			}
+		}
+		final long len = uc.getContentLengthLong();
+		if (manifest != null) {
+			manifest.put(result.url, (len >= 0) ? resumeFrom + len : -1, uc.getHeaderField("ETag"), uc.getHeaderField("Last-Modified"));
 		}
-		if (data == null || data.length == 0) {
-			throw new IllegalArgumentException("data null or empty");
+		final int segmentCount = (resumeFrom == 0 && uc instanceof HttpURLConnection) ? segmentCount(context, uc, len) : 1;
+		if (manifest != null && resumeFrom == 0) {
+			if (segmentCount == 1) {
+				writePartInfo(partInfo, result.url, len, uc.getHeaderField("ETag"), uc.getHeaderField("Last-Modified"));
+			} else {
+				Files.deleteIfExists(partInfo);
+			}
 		}
-		System.out.println(String.format("Writing to : %s", fullPathName));
-		if(!simulation){
-			final FileOutputStream out = new FileOutputStream(fullPathName);
+		long offset = resumeFrom;
+		boolean complete = false;
+		final ReadableByteChannel in = Channels.newChannel(uc.getInputStream());
+		try {
+			final FileChannel out = (resumeFrom > 0) ? FileChannel.open(temp, StandardOpenOption.WRITE)
+					: FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
 			try {
-				out.write(data);
+				System.out.println(String.format("Writing to : %s", result.targetFile));
+				if (segmentCount > 1) {
+					downloadSegments(result, context, hostSlot, (HttpURLConnection) uc, in, out, len, segmentCount);
+					offset = len;
+				} else {
+					offset += transfer(in, out, resumeFrom, Long.MAX_VALUE, result, context);
+					if (len >= 0 && offset - resumeFrom < len) {
+						throw new IOException(String.format("Read %d bytes; expected %d", offset - resumeFrom, len));
+					}
+				}
+				complete = true;
 			} finally {
 				out.close();
 			}
+		} finally {
+			in.close();
+			// a segmented download leaves holes in the temporary file: it cannot be resumed
+			if (!complete && (manifest == null || segmentCount > 1)) {
+				Files.deleteIfExists(temp);
+			}
+		}
+		moveAtomically(temp, target);
+		if (manifest != null) {
+			Files.deleteIfExists(partInfo);
+		}
+		if (uc.getLastModified() > 0) {
+			Files.setLastModifiedTime(target, FileTime.fromMillis(uc.getLastModified()));
+		}
+		if (manifest != null) {
+			manifest.put(result.url, offset, uc.getHeaderField("ETag"), uc.getHeaderField("Last-Modified"));
 		}
 	}
 
 	/**
-	 * Downloads a file as a byte array from any url. This snippet has been
-	 * taken from albertb on stackoverflow.
-	 * 
-	 * @param url
-	 *            the url to download a file from.
-	 * @param simulation if true, the file will not really be downloaded
-	 * @return byte[] the raw data
-	 * @throws IOException
-	 *             if less bytes have been received than expected, or if read()
-	 *             from {@link java.io.InputStream} throws it, or if
-	 *             openConnection() from {@link java.net.URL} throws it.
-	 */
-	private static byte[] download(final URL url, final boolean simulation) throws IOException {
-		byte[] data = null;
-		System.out.println(String.format("Downloading from : %s", url));
-		if(!simulation){
-			final URLConnection uc = url.openConnection();
-			final int len = uc.getContentLength();
-			final InputStream is = new BufferedInputStream(uc.getInputStream());
-			try {
-				data = new byte[len];
-				int offset = 0;
-				while (offset < len) {
-					int read = is.read(data, offset, data.length - offset);
-					if (read < 0) {
-						break;
+	 * Returns the largest number of segments to download a file with: 1 unless the segmented mode is on and the server accepts
+	 * ranges for a file of known length, and no more than one segment per MIN_SEGMENT_SIZE bytes.
+	 */
+	private static int segmentCount(final FetchContext context, final URLConnection uc, final long length) {
+		if (context.segments <= 1 || length < 2 * MIN_SEGMENT_SIZE || !"bytes".equalsIgnoreCase(uc.getHeaderField("Accept-Ranges"))) {
+			return 1;
+		}
+		return (int) Math.min(context.segments, length / MIN_SEGMENT_SIZE);
+	}
+
+	/**
+	 * Downloads a file in segments of equal size written at their offset in out: the first one is read from the response
+	 * already received, the others are requested at the same time by the segment executor. Each of them takes a connection
+	 * to the host, without waiting: there are at most maxSegments segments, and only one if no connection is free. If-Range
+	 * guarantees that all the segments belong to the same version of the file.
+	 */
+	private static void downloadSegments(final FetchResult result, final FetchContext context, final Semaphore hostSlot,
+			final HttpURLConnection first, final ReadableByteChannel firstIn, final FileChannel out, final long length, final int maxSegments)
+			throws IOException {
+		int segmentCount = 1;
+		while (segmentCount < maxSegments && hostSlot.tryAcquire()) {
+			segmentCount++;
+		}
+		final long segmentSize = (length + segmentCount - 1) / segmentCount;
+		final String validator = (first.getHeaderField("ETag") != null) ? first.getHeaderField("ETag") : first.getHeaderField("Last-Modified");
+		final List<Future<Long>> segments = new ArrayList<Future<Long>>(segmentCount - 1);
+		try {
+			for (int i = 1; i < segmentCount; i++) {
+				final long from = i * segmentSize;
+				final long to = Math.min(length, from + segmentSize) - 1;
+				segments.add(context.segmentExecutor.submit(new Callable<Long>() {
+					@Override
+					public Long call() throws IOException {
+						return downloadSegment(result, context, validator, out, from, to);
 					}
-					offset += read;
-				}
-				if (offset < len) {
-					throw new IOException(String.format("Read %d bytes; expected %d", offset, len));
+				}));
+			}
+			final long read = transfer(firstIn, out, 0, segmentSize, result, context);
+			if (read < segmentSize) {
+				throw new IOException(String.format("Read %d bytes; expected %d", read, segmentSize));
+			}
+			for (final Future<Long> segment : segments) {
+				segment.get();
+			}
+		} catch (final InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException(String.format("Download of %s interrupted", result.url));
+		} catch (final ExecutionException e) {
+			if (e.getCause() instanceof IOException) {
+				throw (IOException) e.getCause();
+			}
+			throw new IOException(e.getCause());
+		} finally {
+			for (final Future<Long> segment : segments) {
+				segment.cancel(true);
+			}
+			// the first response still holds the rest of the file: close its connection instead of reading it
+			first.disconnect();
+			hostSlot.release(segmentCount - 1);
+		}
+	}
+
+	/**
+	 * Downloads the bytes from..to (included) of a file with a Range request and writes them at their offset in out.
+	 * @return the number of bytes downloaded
+	 */
+	private static long downloadSegment(final FetchResult result, final FetchContext context, final String validator, final FileChannel out,
+			final long from, final long to) throws IOException {
+		final HttpURLConnection uc = (HttpURLConnection) new URL(result.url).openConnection();
+		context.beforeRequest();
+		uc.setRequestProperty("Range", "bytes=" + from + "-" + to);
+		if (validator != null) {
+			uc.setRequestProperty("If-Range", validator);
+		}
+		boolean complete = false;
+		try {
+			if (uc.getResponseCode() >= HttpURLConnection.HTTP_BAD_REQUEST) {
+				throw new HttpStatusException(result.url, uc);
+			}
+			final String contentRange = uc.getHeaderField("Content-Range");
+			if (uc.getResponseCode() != HttpURLConnection.HTTP_PARTIAL || contentRange == null || !contentRange.startsWith("bytes " + from + "-" + to + "/")) {
+				throw new IOException(String.format("Segment %d-%d of %s not served as a range (HTTP %d, Content-Range %s)", from, to, result.url,
+						uc.getResponseCode(), contentRange));
+			}
+			final ReadableByteChannel in = Channels.newChannel(uc.getInputStream());
+			try {
+				final long read = transfer(in, out, from, to - from + 1, result, context);
+				if (read < to - from + 1) {
+					throw new IOException(String.format("Read %d bytes; expected %d", read, to - from + 1));
 				}
+				complete = true;
+				return read;
 			} finally {
-				is.close();
+				in.close();
 			}
-		} else {
-			data = new byte[1];
+		} finally {
+			if (!complete) {
+				uc.disconnect();
+			}
+		}
+	}
+
+	/**
+	 * Copies at most limit bytes from in to out, starting at the given position of out, through a fixed size buffer. Positional
+	 * writes let several segments of the same file be written at the same time. The byte rate limit is applied after each read.
+	 * @return the number of bytes copied, less than limit if in reached its end
+	 */
+	private static long transfer(final ReadableByteChannel in, final FileChannel out, final long position, final long limit, final FetchResult result,
+			final FetchContext context) throws IOException {
+		final ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+		long copied = 0;
+		while (copied < limit) {
+			buffer.limit((int) Math.min(buffer.capacity(), limit - copied));
+			if (in.read(buffer) < 0) {
+				break;
+			}
+			buffer.flip();
+			final int read = buffer.remaining();
+			while (buffer.hasRemaining()) {
+				copied += out.write(buffer, position + copied);
+			}
+			result.bytes.addAndGet(read);
+			context.afterRead(read);
+			buffer.clear();
+		}
+		return copied;
+	}
+
+	/**
+	 * Writes the length (-1 if unknown), ETag and Last-Modified of the content of url, in the format of the manifest, to
+	 * the file next to its temporary file.
+	 */
+	private static void writePartInfo(final Path partInfo, final String url, final long length, final String etag, final String lastModified)
+			throws IOException {
+		final Properties info = new Properties();
+		info.setProperty(url, Manifest.format(length, etag, lastModified));
+		final OutputStream out = Files.newOutputStream(partInfo);
+		try {
+			info.store(out, "GoFetch partial download: url = length, ETag and Last-Modified separated by tabs");
+		} finally {
+			out.close();
+		}
+	}
+
+	/**
+	 * Reads the length, ETag and Last-Modified recorded next to a temporary file for url, or null if there are none or
+	 * if the file cannot be read (a kill while writing it).
+	 */
+	private static String[] readPartInfo(final Path partInfo, final String url) {
+		if (!Files.exists(partInfo)) {
+			return null;
+		}
+		final Properties info = new Properties();
+		try {
+			final InputStream in = Files.newInputStream(partInfo);
+			try {
+				info.load(in);
+			} finally {
+				in.close();
+			}
+		} catch (final IOException e) {
+			return null;
+		} catch (final IllegalArgumentException e) {
+			return null;
+		}
+		final String entry = info.getProperty(url);
+		return (entry != null) ? Manifest.parse(entry) : null;
+	}
+
+	/**
+	 * Makes a request conditional on the ETag or the Last-Modified date recorded in the manifest.
+	 */
+	private static void setValidators(final URLConnection uc, final String[] known) {
+		if (known[1] != null) {
+			uc.setRequestProperty("If-None-Match", known[1]);
+		}
+		if (known[2] != null) {
+			uc.setRequestProperty("If-Modified-Since", known[2]);
+		}
+	}
+
+	/**
+	 * Renames a file, atomically if the file system supports it, replacing the target if it exists.
+	 */
+	private static void moveAtomically(final Path source, final Path target) throws IOException {
+		try {
+			Files.move(source, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+		} catch (final AtomicMoveNotSupportedException e) {
+			Files.move(source, target, StandardCopyOption.REPLACE_EXISTING);
+		}
+	}
+
+	/**
+	 * Manifest of the downloads of a target folder, used by the resume mode: the length, ETag and Last-Modified of each url
+	 * downloaded, as a properties file. It is saved at the end of the batch and every MANIFEST_SAVE_INTERVAL milliseconds
+	 * meanwhile, through a temporary file renamed over the previous manifest.
+	 */
+	private static final class Manifest {
+		private final Path path;
+		private final Properties entries = new Properties();
+		private long lastSave = System.currentTimeMillis();
+		private boolean dirty;
+
+		private Manifest(final Path path) throws IOException {
+			this.path = path;
+			if (Files.exists(path)) {
+				final InputStream in = Files.newInputStream(path);
+				try {
+					entries.load(in);
+				} finally {
+					in.close();
+				}
+			}
+		}
+
+		/**
+		 * Returns the length (-1 if unknown), ETag and Last-Modified recorded for a url (null if absent), or null if the url
+		 * is not in the manifest.
+		 */
+		private synchronized String[] get(final String url) {
+			final String entry = entries.getProperty(url);
+			return (entry != null) ? parse(entry) : null;
+		}
+
+		private synchronized void put(final String url, final long length, final String etag, final String lastModified) {
+			entries.setProperty(url, format(length, etag, lastModified));
+			dirty = true;
+		}
+
+		/**
+		 * Formats an entry: length, ETag and Last-Modified separated by tabs.
+		 */
+		private static String format(final long length, final String etag, final String lastModified) {
+			return length + "\t" + (etag != null ? etag : "") + "\t" + (lastModified != null ? lastModified : "");
+		}
+
+		/**
+		 * Splits an entry into its length, ETag and Last-Modified (null if empty).
+		 */
+		private static String[] parse(final String entry) {
+			final String[] fields = entry.split("\t", -1);
+			for (int i = 1; i < fields.length; i++) {
+				if (fields[i].length() == 0) {
+					fields[i] = null;
+				}
+			}
+			return fields;
+		}
+
+		/**
+		 * Saves the manifest if it has changed and was last saved more than MANIFEST_SAVE_INTERVAL milliseconds ago.
+		 */
+		private synchronized void saveIfDue() throws IOException {
+			if (System.currentTimeMillis() - lastSave >= MANIFEST_SAVE_INTERVAL) {
+				save();
+			}
+		}
+
+		private synchronized void save() throws IOException {
+			if (dirty) {
+				final Path temp = Paths.get(path + PART_EXTENSION);
+				final OutputStream out = Files.newOutputStream(temp);
+				try {
+					entries.store(out, "GoFetch manifest: url = length, ETag and Last-Modified separated by tabs");
+				} finally {
+					out.close();
+				}
+				moveAtomically(temp, path);
+				dirty = false;
+			}
+			lastSave = System.currentTimeMillis();
 		}
-		return data;
 	}
 }
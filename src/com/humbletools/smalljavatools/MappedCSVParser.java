@@ -0,0 +1,621 @@
+package com.humbletools.smalljavatools;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * MappedCSVParser est une variante de CSVParser destine aux trs gros fichiers (plusieurs dizaines de Go). Au lieu de passer par java.util.Scanner, le
+ * fichier est projet en mmoire par fentres glissantes via FileChannel.map et les octets bruts sont parcourus directement pour trouver les sparateurs et
+ * les fins de ligne. Une cellule n'est dcode en String que lorsque le code appelant la demande.</br></br> Cas d'utilisation : </br> - Instancier un
+ * MappedCSVParser via l'un des constructeurs</br> - Dans une boucle while (appeler hasNextLine()) appeler readNextLine() puis getCell(int) pour les seules
+ * cellules utiles, ou getNextLineOfCells() pour obtenir toute la ligne comme avec CSVParser</br> - Quand on sort de la boucle, les ressources sont cltures
+ * automatiquement</br></br> Le sparateur et les fins de ligne doivent tre cods sur un seul octet dans l'encodage utilis (c'est le cas de CP1252,
+ * ISO-8859-1 et UTF-8). Ces encodages sont dcods par les dcodeurs rapides de CSVCharsets. Comme CSVParser, MappedCSVParser est Iterable et Closeable.
+ *
+ * @author lmadeuf
+ */
+public class MappedCSVParser implements Closeable, Iterable<String[]> {
+
+	/**
+	 * Taille par dfaut de la fentre de fichier projete en mmoire
+	 */
+	public static final int DEFAULT_WINDOW_SIZE = 64 * 1024 * 1024;
+
+	private static final byte LF = '\n';
+	private static final byte CR = '\r';
+	private static final byte QUOTE = '"';
+	private static final byte[] SEP_PREFIX = { 's', 'e', 'p', '=' };
+
+	/**
+	 * Etats de l'automate de lecture d'une ligne
+	 */
+	private static final int FIELD_START = 0;
+	private static final int UNQUOTED = 1;
+	private static final int QUOTED = 2;
+	private static final int QUOTE_IN_QUOTED = 3;
+
+	private final RandomAccessFile file;
+	private final FileChannel channel;
+	private final String filePath;
+	private final String charset;
+	private final Charset decodingCharset;
+	private final char[] decodeTable;
+	private final boolean utf8;
+	private final long fileSize;
+	private final long rangeEnd;
+	private final int windowSize;
+	private final boolean separatorDetection;
+
+	private Character separator;
+	private byte separatorByte;
+	private Long numberOfLinesRead;
+
+	private MappedByteBuffer window;
+	private long windowStart;
+	private int windowLimit;
+	private long position;
+	private long lineStart;
+
+	private int[] cellStarts;
+	private int[] cellEnds;
+	private boolean[] cellQuoted;
+	private int cellCount;
+	private byte[] decodeBuffer;
+	private char[] decodeChars;
+	private CSVDictionary[] columnDictionaries = new CSVDictionary[0];
+
+	/**
+	 * Cre un MappedCSVParser avec le fichier spcifi par le filePath, le sparateur ';' par dfaut et l'encodage par dfaut DEFAULT_CHARSET
+	 *
+	 * @throws IOException si le fichier spcifi n'existe pas ou ne peut pas tre projet en mmoire
+	 */
+	public MappedCSVParser(final String filePath) throws IOException {
+		this(filePath, CSVParser.DEFAULT_CHARSET, CSVParser.DEFAULT_CSV_SEPARATOR_FR);
+	}
+
+	/**
+	 * Cre un MappedCSVParser avec le fichier spcifi par le filePath, le sparateur ';' par dfaut et l'encodage charset
+	 *
+	 * @throws IOException si le fichier spcifi n'existe pas ou ne peut pas tre projet en mmoire
+	 */
+	public MappedCSVParser(final String filePath, final String charset) throws IOException {
+		this(filePath, charset, CSVParser.DEFAULT_CSV_SEPARATOR_FR);
+	}
+
+	/**
+	 * Cre un MappedCSVParser avec le fichier spcifi par le filePath, le sparateur csvSeparator et l'encodage par dfaut DEFAULT_CHARSET
+	 *
+	 * @throws IOException si le fichier spcifi n'existe pas ou ne peut pas tre projet en mmoire
+	 */
+	public MappedCSVParser(final String filePath, final Character csvSeparator) throws IOException {
+		this(filePath, CSVParser.DEFAULT_CHARSET, csvSeparator);
+	}
+
+	/**
+	 * Cre un MappedCSVParser avec le fichier spcifi par le filePath, le sparateur csv csvSeparator et l'encodage charset
+	 *
+	 * @throws IOException si le fichier spcifi n'existe pas ou ne peut pas tre projet en mmoire
+	 */
+	public MappedCSVParser(final String filePath, final String charset, final Character csvSeparator) throws IOException {
+		this(filePath, charset, csvSeparator, DEFAULT_WINDOW_SIZE);
+	}
+
+	/**
+	 * Cre un MappedCSVParser avec le fichier spcifi par le filePath, le sparateur csv csvSeparator, l'encodage charset et une fentre de projection de
+	 * windowSize octets
+	 *
+	 * @throws IOException si le fichier spcifi n'existe pas ou ne peut pas tre projet en mmoire
+	 */
+	public MappedCSVParser(final String filePath, final String charset, final Character csvSeparator, final int windowSize) throws IOException {
+		this(filePath, charset, csvSeparator, windowSize, 0L, Long.MAX_VALUE);
+	}
+
+	/**
+	 * Cre un MappedCSVParser qui reprend la lecture du fichier de l'index  la ligne lineNumber (numrote comme getNumberOfLinesRead()), sans relire les
+	 * lignes prcdentes. L'encodage et le sparateur sont ceux retenus lors de la construction de l'index, et getNumberOfLinesRead() poursuit la numrotation
+	 * du fichier.
+	 *
+	 * @throws IOException si le fichier ne peut pas tre lu
+	 * @throws IllegalArgumentException si lineNumber est hors du fichier
+	 */
+	public MappedCSVParser(final CSVLineIndex index, final long lineNumber) throws IOException {
+		this(index.getFilePath(), index.getCharset(), index.getSeparator(), DEFAULT_WINDOW_SIZE, index.getOffset(lineNumber), Long.MAX_VALUE);
+		numberOfLinesRead = lineNumber - 1;
+	}
+
+	/**
+	 * Cre un MappedCSVParser limit aux lignes qui commencent entre les octets rangeStart (inclus) et rangeEnd (exclus) du fichier. Si rangeStart ne tombe
+	 * pas sur un dbut de ligne, la lecture commence  la ligne suivante : deux plages contigus se partagent donc les lignes du fichier sans doublon. La
+	 * dtection du "sep=" n'est faite que pour la plage qui commence au dbut du fichier. Si charset vaut CSVCharsets.AUTO_DETECT, l'encodage est dtect 
+	 * partir du dbut du fichier.
+	 */
+	MappedCSVParser(final String filePath, final String charset, final Character csvSeparator, final int windowSize, final long rangeStart, final long rangeEnd)
+			throws IOException {
+		if (charset == null) {
+			throw new IllegalArgumentException("L'encodage du fichier doit tre spcifi !");
+		}
+		if (filePath == null) {
+			throw new IllegalArgumentException("L'argument filePath doit tre spcifi !");
+		}
+		if (csvSeparator == null) {
+			throw new IllegalArgumentException("L'argument csvSeparator doit tre renseign !");
+		}
+		if (windowSize <= 0) {
+			throw new IllegalArgumentException("L'argument windowSize doit tre strictement positif !");
+		}
+		this.filePath = filePath;
+		this.charset = CSVCharsets.AUTO_DETECT.equals(charset) ? CSVCharsets.detect(filePath) : charset;
+		this.windowSize = windowSize;
+		decodingCharset = Charset.forName(this.charset);
+		decodeTable = CSVCharsets.singleByteTable(decodingCharset);
+		utf8 = CSVCharsets.isUtf8(decodingCharset);
+		separator = csvSeparator;
+		separatorByte = toSingleByte(csvSeparator);
+		if ((toSingleByte('\n') != LF) || (toSingleByte('\r') != CR)) {
+			throw new IllegalArgumentException(String.format("L'encodage %s n'est pas support par MappedCSVParser !", this.charset));
+		}
+		file = new RandomAccessFile(filePath, "r");
+		channel = file.getChannel();
+		fileSize = channel.size();
+		this.rangeEnd = Math.min(rangeEnd, fileSize);
+		separatorDetection = rangeStart == 0L;
+		numberOfLinesRead = 0L;
+		cellStarts = new int[16];
+		cellEnds = new int[16];
+		cellQuoted = new boolean[16];
+		decodeBuffer = new byte[256];
+		decodeChars = new char[256];
+		try {
+			position = alignOnLineStart(rangeStart);
+			if (utf8 && (position == 0L) && (fileSize >= 3) && ((readByte(0) & 0xFF) == 0xEF) && ((readByte(1) & 0xFF) == 0xBB)
+					&& ((readByte(2) & 0xFF) == 0xBF)) {
+				position = 3L;
+			}
+		} catch (final IOException ioe) {
+			closeResources();
+			throw ioe;
+		}
+	}
+
+	/**
+	 * Permet de lire la ligne suivante dans le fichier et de la retourner sous forme de String[], avec le mme dcoupage que CSVParser (RFC 4180). Si on
+	 * cherche  lire la premire ligne et que le sparateur CSV est spcifi par le fichier, alors ce sparateur sera utilis pour parser le fichier CSV. Dans
+	 * ce cas, la mthode retournera directement la seconde ligne.
+	 *
+	 * @throws IOException - Si une erreur I/O survient
+	 * @throws IllegalStateException - Si le fichier ne contient pas de donnes
+	 */
+	public String[] getNextLineOfCells() throws IOException, IllegalStateException {
+		readNextLine();
+		final String[] cellulesRetour = new String[cellCount];
+		for (int i = 0; i < cellCount; i++) {
+			cellulesRetour[i] = ((i < columnDictionaries.length) && (columnDictionaries[i] != null)) ? getInterned(i, columnDictionaries[i]) : getCell(i);
+		}
+		return cellulesRetour;
+	}
+
+	/**
+	 * Associe un CSVDictionary  la cellule cellIndex : getNextLineOfCells() retourne alors pour cette cellule l'instance canonique du dictionnaire au lieu
+	 * d'une nouvelle String  chaque ligne (voir getInterned). Pour les colonnes de faible cardinalit (pays, statut, code produit), les lignes conserves en
+	 * mmoire partagent ainsi leurs valeurs. Un dictionary null retire l'association.
+	 */
+	public void setColumnDictionary(final int cellIndex, final CSVDictionary dictionary) {
+		if (cellIndex < 0) {
+			throw new IllegalArgumentException("L'argument cellIndex doit tre positif !");
+		}
+		if (cellIndex >= columnDictionaries.length) {
+			columnDictionaries = Arrays.copyOf(columnDictionaries, cellIndex + 1);
+		}
+		columnDictionaries[cellIndex] = dictionary;
+	}
+
+	/**
+	 * Retourne le code dans le dictionnaire de la cellule d'indice index de la dernire ligne lue, en l'y ajoutant si elle n'y est pas encore. La cellule
+	 * est recherche directement sur les octets du fichier projet : elle n'est dcode que la premire fois que ses octets sont rencontrs.
+	 *
+	 * @throws IndexOutOfBoundsException si la ligne ne contient pas cette cellule
+	 * @throws IllegalArgumentException si le dictionnaire a dj servi pour un fichier d'un autre encodage
+	 */
+	public int getCode(final int index, final CSVDictionary dictionary) {
+		checkIndex(index);
+		final int start = cellStarts[index];
+		final int length = cellEnds[index] - start;
+		final int hash = CSVDictionary.hashEncoded(window, start, length);
+		int code = dictionary.findEncoded(window, start, length, hash, decodingCharset.name());
+		if (code < 0) {
+			code = dictionary.code(getCell(index));
+			dictionary.addEncoded(window, start, length, hash, code);
+		}
+		return code;
+	}
+
+	/**
+	 * Retourne l'instance canonique dans le dictionnaire de la cellule d'indice index de la dernire ligne lue, sans rien dcoder ni allouer si ses octets
+	 * ont dj t rencontrs
+	 *
+	 * @throws IndexOutOfBoundsException si la ligne ne contient pas cette cellule
+	 * @throws IllegalArgumentException si le dictionnaire a dj servi pour un fichier d'un autre encodage
+	 */
+	public String getInterned(final int index, final CSVDictionary dictionary) {
+		return dictionary.getValue(getCode(index, dictionary));
+	}
+
+	/**
+	 * Lit la ligne suivante sans dcoder ses cellules et retourne son nombre de cellules. Les cellules de la ligne lue sont ensuite accessibles par
+	 * getCell(int) jusqu'au prochain appel. La dtection du "sep=" est identique  celle de getNextLineOfCells().
+	 *
+	 * @throws IOException - Si une erreur I/O survient
+	 * @throws IllegalStateException - Si le fichier ne contient pas de donnes ou s'il n'y a plus de ligne  lire
+	 */
+	public int readNextLine() throws IOException, IllegalStateException {
+		try {
+			if (position >= rangeEnd) {
+				throw new IllegalStateException("Il n'y a plus de ligne  lire !");
+			}
+			lineStart = position;
+			scanLine();
+			numberOfLinesRead++;
+			if (separatorDetection && (numberOfLinesRead == 1L) && isSeparatorLine()) {
+				separatorByte = window.get(cellStarts[0] + SEP_PREFIX.length);
+				separator = new String(new byte[] { separatorByte }, decodingCharset).charAt(0);
+				if (position < rangeEnd) {
+					lineStart = position;
+					scanLine();
+					numberOfLinesRead++;
+				} else {
+					throw new IllegalStateException("Le fichier CSV ne contient pas de donnes !");
+				}
+			}
+		} catch (final IllegalStateException ise) {
+			closeResources();
+			throw ise;
+		} catch (final IOException ioe) {
+			closeResources();
+			throw ioe;
+		}
+		return cellCount;
+	}
+
+	/**
+	 * Repositionne la lecture sur la ligne qui commence  l'octet offset, pour la relire avec skipLine()
+	 */
+	void seek(final long offset) {
+		position = offset;
+	}
+
+	/**
+	 * Franchit la ligne suivante sans dtection du "sep=" et retourne la position de la ligne d'aprs
+	 */
+	long skipLine() throws IOException {
+		lineStart = position;
+		scanLine();
+		numberOfLinesRead++;
+		return position;
+	}
+
+	/**
+	 * Renvoie true si le fichier lu contient encore une ligne aprs celle que l'on vient de lire. Renvoie false si on a atteint la fin du fichier. Cette
+	 * mthode cloture automatiquement les ressources utilises.
+	 *
+	 * @throws IOException si une erreur I/O survient
+	 */
+	public boolean hasNextLine() throws IOException {
+		final boolean hasNextLine = channel.isOpen() && (position < rangeEnd);
+		if (!hasNextLine) {
+			closeResources();
+		}
+		return hasNextLine;
+	}
+
+	/**
+	 * Retourne le nombre de cellules de la dernire ligne lue
+	 */
+	public int getCellCount() {
+		return cellCount;
+	}
+
+	/**
+	 * Dcode et retourne la cellule d'indice index de la dernire ligne lue
+	 *
+	 * @throws IndexOutOfBoundsException si la ligne ne contient pas cette cellule
+	 */
+	public String getCell(final int index) {
+		checkIndex(index);
+		final int start = cellStarts[index];
+		final int end = cellEnds[index];
+		if (decodeBuffer.length < (end - start)) {
+			decodeBuffer = new byte[Math.max(end - start, decodeBuffer.length * 2)];
+		}
+		int length = 0;
+		if (cellQuoted[index]) {
+			boolean inQuotes = true;
+			for (int i = start + 1; i < end; i++) {
+				final byte b = window.get(i);
+				if (inQuotes && (b == QUOTE)) {
+					if (((i + 1) < end) && (window.get(i + 1) == QUOTE)) {
+						decodeBuffer[length++] = QUOTE;
+						i++;
+					} else {
+						inQuotes = false;
+					}
+				} else {
+					decodeBuffer[length++] = b;
+				}
+			}
+		} else {
+			for (int i = start; i < end; i++) {
+				decodeBuffer[length++] = window.get(i);
+			}
+		}
+		if ((decodeTable == null) && !utf8) {
+			return new String(decodeBuffer, 0, length, decodingCharset);
+		}
+		if (decodeChars.length < length) {
+			decodeChars = new char[decodeBuffer.length];
+		}
+		final int charCount = utf8 ? CSVCharsets.decodeUtf8(decodeBuffer, 0, length, decodeChars) : CSVCharsets.decodeSingleByte(decodeBuffer, 0, length,
+				decodeTable, decodeChars);
+		return new String(decodeChars, 0, charCount);
+	}
+
+	/**
+	 * Parcourt les octets de l'enregistrement qui commence  position, note les bornes de chaque cellule et place position sur le dbut de l'enregistrement
+	 * suivant. Les guillemets sont traits selon la RFC 4180 : une cellule entre guillemets peut contenir le sparateur et des fins de ligne, et n'est
+	 * dbarrasse de ses guillemets qu'au dcodage. Si l'enregistrement dborde de la fentre courante, la fentre est reprojete  partir de son dbut, et
+	 * agrandie s'il est plus long qu'une fentre.
+	 */
+	private void scanLine() throws IOException {
+		int mappingSize = windowSize;
+		while (true) {
+			ensureMapped(position, mappingSize);
+			final MappedByteBuffer buffer = window;
+			final byte sep = separatorByte;
+			final int limit = windowLimit;
+			final boolean windowHoldsEndOfFile = (windowStart + limit) >= fileSize;
+			int i = (int) (position - windowStart);
+			int cellStart = i;
+			int state = FIELD_START;
+			boolean quoted = false;
+			cellCount = 0;
+			while (i < limit) {
+				final byte b = buffer.get(i);
+				if (state == QUOTED) {
+					if (b == QUOTE) {
+						state = QUOTE_IN_QUOTED;
+					}
+				} else if (b == sep) {
+					addCell(cellStart, i, quoted);
+					cellStart = i + 1;
+					quoted = false;
+					state = FIELD_START;
+				} else if (b == LF) {
+					addCell(cellStart, i, quoted);
+					position = windowStart + i + 1;
+					return;
+				} else if (b == CR) {
+					if ((i + 1) < limit) {
+						addCell(cellStart, i, quoted);
+						position = windowStart + i + ((buffer.get(i + 1) == LF) ? 2 : 1);
+						return;
+					} else if (windowHoldsEndOfFile) {
+						addCell(cellStart, i, quoted);
+						position = fileSize;
+						return;
+					}
+					break;
+				} else if ((state == FIELD_START) && (b == QUOTE)) {
+					quoted = true;
+					state = QUOTED;
+				} else if (state == QUOTE_IN_QUOTED) {
+					state = (b == QUOTE) ? QUOTED : UNQUOTED;
+				} else {
+					state = UNQUOTED;
+				}
+				i++;
+			}
+			if (windowHoldsEndOfFile) {
+				addCell(cellStart, limit, quoted);
+				position = fileSize;
+				return;
+			}
+			if (windowStart == position) {
+				if (mappingSize == Integer.MAX_VALUE) {
+					throw new IOException(String.format("Ligne trop longue  partir de l'octet %d !", position));
+				}
+				mappingSize = (int) Math.min(Integer.MAX_VALUE, mappingSize * 2L);
+			}
+			window = null;
+		}
+	}
+
+	/**
+	 * Projette en mmoire au moins la fentre [start, start + size[ du fichier si la fentre courante ne commence pas dj  start
+	 */
+	private void ensureMapped(final long start, final int size) throws IOException {
+		if ((window == null) || (start < windowStart) || (start >= (windowStart + windowLimit))) {
+			windowStart = start;
+			windowLimit = (int) Math.min(size, fileSize - start);
+			window = channel.map(FileChannel.MapMode.READ_ONLY, windowStart, windowLimit);
+		}
+	}
+
+	/**
+	 * Retourne la position du premier dbut de ligne situ  partir de l'octet start
+	 */
+	private long alignOnLineStart(final long start) throws IOException {
+		if ((start <= 0L) || (start >= fileSize)) {
+			return Math.max(0L, Math.min(start, fileSize));
+		}
+		long current = start - 1;
+		while (current < fileSize) {
+			ensureMapped(current, windowSize);
+			final int limit = windowLimit;
+			for (int i = (int) (current - windowStart); i < limit; i++) {
+				final byte b = window.get(i);
+				if (b == LF) {
+					return windowStart + i + 1;
+				} else if (b == CR) {
+					final long next = windowStart + i + 1;
+					if ((next < fileSize) && (readByte(next) == LF)) {
+						return next + 1;
+					}
+					return next;
+				}
+			}
+			current = windowStart + limit;
+		}
+		return fileSize;
+	}
+
+	private byte readByte(final long absolutePosition) throws IOException {
+		ensureMapped(absolutePosition, windowSize);
+		return window.get((int) (absolutePosition - windowStart));
+	}
+
+	private void checkIndex(final int index) {
+		if ((index < 0) || (index >= cellCount)) {
+			throw new IndexOutOfBoundsException(String.format("La ligne lue ne contient pas de cellule d'indice %d !", index));
+		}
+	}
+
+	private void addCell(final int start, final int end, final boolean quoted) {
+		if (cellCount == cellStarts.length) {
+			final int[] newStarts = new int[cellCount * 2];
+			final int[] newEnds = new int[cellCount * 2];
+			final boolean[] newQuoted = new boolean[cellCount * 2];
+			System.arraycopy(cellStarts, 0, newStarts, 0, cellCount);
+			System.arraycopy(cellEnds, 0, newEnds, 0, cellCount);
+			System.arraycopy(cellQuoted, 0, newQuoted, 0, cellCount);
+			cellStarts = newStarts;
+			cellEnds = newEnds;
+			cellQuoted = newQuoted;
+		}
+		cellStarts[cellCount] = start;
+		cellEnds[cellCount] = end;
+		cellQuoted[cellCount] = quoted;
+		cellCount++;
+	}
+
+	private boolean isSeparatorLine() {
+		if ((cellEnds[cellCount - 1] - cellStarts[0]) != (SEP_PREFIX.length + 1)) {
+			return false;
+		}
+		for (int i = 0; i < SEP_PREFIX.length; i++) {
+			if (window.get(cellStarts[0] + i) != SEP_PREFIX[i]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private byte toSingleByte(final char character) {
+		final byte[] encoded = String.valueOf(character).getBytes(decodingCharset);
+		if (encoded.length != 1) {
+			throw new IllegalArgumentException(String.format("Le caractre '%s' doit tre cod sur un seul octet en %s !", character, charset));
+		}
+		return encoded[0];
+	}
+
+	/**
+	 * Retourne un itrateur paresseux sur les lignes restantes du fichier, pour utiliser ce MappedCSVParser dans une boucle for-each. Les ressources sont cltures
+	 *  la fin du fichier ; en cas de sortie anticipe de la boucle, il faut appeler close() (ou dclarer le MappedCSVParser dans un try-with-resources). Les
+	 * erreurs I/O sont remontes sous forme d'IllegalStateException.
+	 */
+	@Override
+	public Iterator<String[]> iterator() {
+		return new Iterator<String[]>() {
+			@Override
+			public boolean hasNext() {
+				try {
+					return hasNextLine();
+				} catch (final IOException ioe) {
+					throw new IllegalStateException(String.format("Erreur de lecture du fichier %s !", filePath), ioe);
+				}
+			}
+
+			@Override
+			public String[] next() {
+				if (!hasNext()) {
+					throw new NoSuchElementException("Il n'y a plus de ligne  lire !");
+				}
+				try {
+					return getNextLineOfCells();
+				} catch (final IOException ioe) {
+					throw new IllegalStateException(String.format("Erreur de lecture du fichier %s !", filePath), ioe);
+				}
+			}
+
+			@Override
+			public void remove() {
+				throw new UnsupportedOperationException("Un MappedCSVParser ne permet pas de supprimer une ligne !");
+			}
+		};
+	}
+
+	/**
+	 * Clture les ressources utilises par ce MappedCSVParser, mme si le fichier n'a pas t lu jusqu'au bout. Aprs cet appel, hasNextLine() renvoie false.
+	 */
+	@Override
+	public void close() throws IOException {
+		closeResources();
+	}
+
+	private void closeResources() throws IOException {
+		window = null;
+		if (channel != null) {
+			channel.close();
+		}
+		if (file != null) {
+			file.close();
+		}
+	}
+
+	/**
+	 * Retourne le chemin vers le fichier utilis par ce MappedCSVParser
+	 */
+	public String getFilePath() {
+		return filePath;
+	}
+
+	/**
+	 * Retourne le charset utilis par ce MappedCSVParser
+	 */
+	public String getCharset() {
+		return charset;
+	}
+
+	/**
+	 * Retourne le sparateur CSV utilis par ce MappedCSVParser
+	 */
+	public Character getSeparator() {
+		return separator;
+	}
+
+	/**
+	 * Retourne la position, en octets depuis le dbut du fichier, de la dernire ligne lue
+	 */
+	public long getLineStartOffset() {
+		return lineStart;
+	}
+
+	/**
+	 * Retourne la position, en octets depuis le dbut du fichier, de la ligne qui suit la dernire ligne lue. Associe  getNumberOfLinesRead(), elle
+	 * constitue un point de reprise (voir CSVLineIndex).
+	 */
+	public long getNextLineOffset() {
+		return position;
+	}
+
+	/**
+	 * Retourne le nombre de lignes lues par le parseur
+	 */
+	public Long getNumberOfLinesRead() {
+		return numberOfLinesRead;
+	}
+}
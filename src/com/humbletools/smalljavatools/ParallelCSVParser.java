@@ -0,0 +1,371 @@
+package com.humbletools.smalljavatools;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * ParallelCSVParser permet de lire un fichier CSV sur plusieurs coeurs. Le fichier est dcoup en plages d'octets, chaque plage est raligne sur le dbut
+ * de ligne suivant puis lue par un MappedCSVParser dans un ForkJoinPool. Les lignes sont transmises  un CSVRowHandler, soit dans l'ordre du fichier, soit
+ * dans l'ordre o elles sont lues (plus rapide, mais le handler doit alors tre thread-safe). Dans l'ordre, les plages sont lues dans l'ordre du fichier et
+ * au plus ORDERED_WINDOW_FACTOR fois le paralllisme du pool sont lues ou en attente de transmission  la fois : la mmoire occupe par les lignes en
+ * attente est borne par cette fentre de plages, quelle que soit la taille du fichier.</br></br> Le "sep=" ventuel de la premire ligne est pris en
+ * compte pour toutes les plages et le nombre total de lignes lues est le mme que celui d'un CSVParser squentiel.</br></br> Le ralignement des plages se
+ * fait sur les fins de ligne physiques : les cellules entre guillemets ne doivent donc pas contenir de fin de ligne.
+ *
+ * @author lmadeuf
+ */
+public class ParallelCSVParser {
+
+	/**
+	 * Taille par dfaut d'une plage d'octets lue par une tche
+	 */
+	public static final int DEFAULT_CHUNK_SIZE = 32 * 1024 * 1024;
+
+	/**
+	 * Nombre de plages lues ou en attente de transmission  la fois, par thread du pool, pour une lecture dans l'ordre
+	 */
+	private static final int ORDERED_WINDOW_FACTOR = 2;
+
+	private final String filePath;
+	private final int chunkSize;
+	private final ForkJoinPool pool;
+
+	private String charset;
+	private Character separator;
+	private Long numberOfLinesRead;
+
+	/**
+	 * Cre un ParallelCSVParser avec le fichier spcifi par le filePath, le sparateur ';' par dfaut et l'encodage par dfaut DEFAULT_CHARSET
+	 */
+	public ParallelCSVParser(final String filePath) {
+		this(filePath, CSVParser.DEFAULT_CHARSET, CSVParser.DEFAULT_CSV_SEPARATOR_FR);
+	}
+
+	/**
+	 * Cre un ParallelCSVParser avec le fichier spcifi par le filePath, le sparateur csv csvSeparator et l'encodage charset
+	 */
+	public ParallelCSVParser(final String filePath, final String charset, final Character csvSeparator) {
+		this(filePath, charset, csvSeparator, DEFAULT_CHUNK_SIZE, null);
+	}
+
+	/**
+	 * Cre un ParallelCSVParser avec le fichier spcifi par le filePath, le sparateur csv csvSeparator, l'encodage charset, des plages de chunkSize octets
+	 * et le pool fourni. Si pool est null, un ForkJoinPool est cr puis arrt  chaque lecture. Si charset vaut CSVCharsets.AUTO_DETECT, l'encodage est
+	 * dtect une seule fois au dbut de la lecture.
+	 */
+	public ParallelCSVParser(final String filePath, final String charset, final Character csvSeparator, final int chunkSize, final ForkJoinPool pool) {
+		if (charset == null) {
+			throw new IllegalArgumentException("L'encodage du fichier doit tre spcifi !");
+		}
+		if (filePath == null) {
+			throw new IllegalArgumentException("L'argument filePath doit tre spcifi !");
+		}
+		if (csvSeparator == null) {
+			throw new IllegalArgumentException("L'argument csvSeparator doit tre renseign !");
+		}
+		if (chunkSize <= 0) {
+			throw new IllegalArgumentException("L'argument chunkSize doit tre strictement positif !");
+		}
+		this.filePath = filePath;
+		this.charset = charset;
+		this.chunkSize = chunkSize;
+		this.pool = pool;
+		separator = csvSeparator;
+		numberOfLinesRead = 0L;
+	}
+
+	/**
+	 * Lit tout le fichier et transmet chaque ligne au handler. Si ordered vaut true, les lignes sont transmises dans l'ordre du fichier et jamais
+	 * simultanment ; sinon elles sont transmises depuis les threads de lecture ds qu'elles sont lues.
+	 *
+	 * @return le nombre de lignes lues, "sep=" compris
+	 * @throws IOException - Si une erreur I/O survient
+	 * @throws IllegalStateException - Si le fichier ne contient pas de donnes
+	 */
+	public long parse(final CSVRowHandler handler, final boolean ordered) throws IOException, IllegalStateException {
+		return parse(handler, ordered, false);
+	}
+
+	/**
+	 * Identique  parse(handler, ordered), mais si header vaut true la premire ligne de donnes (aprs le "sep=" ventuel) est un en-tte : elle est
+	 * compte dans les lignes lues mais n'est pas transmise au handler.
+	 *
+	 * @return le nombre de lignes lues, "sep=" et en-tte compris
+	 * @throws IOException - Si une erreur I/O survient
+	 * @throws IllegalStateException - Si le fichier ne contient pas de donnes
+	 */
+	public long parse(final CSVRowHandler handler, final boolean ordered, final boolean header) throws IOException, IllegalStateException {
+		if (handler == null) {
+			throw new IllegalArgumentException("L'argument handler doit tre renseign !");
+		}
+		return parse(handler, null, ordered, header).lines.get();
+	}
+
+	/**
+	 * Identique  parse(handler, false, header), mais chaque ligne est transmise avec l'indice de sa plage et son numro dans cette plage (numrot comme
+	 * MappedCSVParser.getNumberOfLinesRead()). Le numro d'une ligne dans le fichier est la somme des lignes lues par les plages prcdentes, retournes
+	 * par cette mthode, et de son numro dans sa plage.
+	 *
+	 * @return le nombre de lignes lues par chaque plage, "sep=" et en-tte compris
+	 */
+	long[] parse(final ChunkRowHandler handler, final boolean header) throws IOException, IllegalStateException {
+		if (handler == null) {
+			throw new IllegalArgumentException("L'argument handler doit tre renseign !");
+		}
+		return parse(null, handler, false, header).chunkLines;
+	}
+
+	/**
+	 * Lecture commune aux mthodes parse : les lignes sont transmises  chunkHandler s'il est renseign,  handler sinon
+	 */
+	private ChunkContext parse(final CSVRowHandler handler, final ChunkRowHandler chunkHandler, final boolean ordered, final boolean header)
+			throws IOException, IllegalStateException {
+		if (CSVCharsets.AUTO_DETECT.equals(charset)) {
+			charset = CSVCharsets.detect(filePath);
+		}
+		final long fileSize;
+		final int headerLength;
+		final RandomAccessFile file = new RandomAccessFile(filePath, "r");
+		try {
+			fileSize = file.length();
+			headerLength = detectSeparatorHeader(file);
+		} finally {
+			file.close();
+		}
+		final int chunkCount = (int) Math.max(1L, (((fileSize - headerLength) + chunkSize) - 1) / chunkSize);
+		final ForkJoinPool executor = (pool != null) ? pool : new ForkJoinPool();
+		final ChunkContext context = new ChunkContext(handler, chunkHandler, ordered, header, chunkCount, headerLength,
+				ORDERED_WINDOW_FACTOR * executor.getParallelism());
+		try {
+			if (ordered) {
+				parseInOrder(context, executor, chunkCount);
+			} else {
+				executor.invoke(new ChunkTask(context, 0, chunkCount));
+			}
+		} finally {
+			if (pool == null) {
+				executor.shutdown();
+			}
+		}
+		if (context.failure.get() != null) {
+			throw context.failure.get();
+		}
+		numberOfLinesRead = context.lines.get();
+		return context;
+	}
+
+	/**
+	 * Lit l'en-tte "sep=X" ventuel du fichier, en dduit le sparateur  utiliser pour toutes les plages et retourne la longueur en octets de cet en-tte
+	 * (0 s'il est absent). La premire plage est allonge de cette longueur pour contenir au moins une ligne de donnes en plus de l'en-tte.
+	 */
+	private int detectSeparatorHeader(final RandomAccessFile file) throws IOException {
+		final byte[] header = new byte[10];
+		final int read = Math.max(0, file.read(header));
+		final int bom = ((read >= 3) && ((header[0] & 0xFF) == 0xEF) && ((header[1] & 0xFF) == 0xBB) && ((header[2] & 0xFF) == 0xBF)) ? 3 : 0;
+		final int length = read - bom;
+		int headerLength = 0;
+		if ((length >= 5) && (header[bom] == 's') && (header[bom + 1] == 'e') && (header[bom + 2] == 'p') && (header[bom + 3] == '=')) {
+			if (length == 5) {
+				headerLength = 5;
+			} else if ((header[bom + 5] == '\r') && (length > 6) && (header[bom + 6] == '\n')) {
+				headerLength = 7;
+			} else if ((header[bom + 5] == '\n') || (header[bom + 5] == '\r')) {
+				headerLength = 6;
+			}
+			if (headerLength > 0) {
+				separator = new String(header, bom + 4, 1, charset).charAt(0);
+			}
+		}
+		return (headerLength > 0) ? (bom + headerLength) : bom;
+	}
+
+	/**
+	 * Lecture dans l'ordre : les plages sont soumises au pool dans l'ordre du fichier, chacune aprs avoir pris une place dans la fentre, rendue quand
+	 * ses lignes sont transmises. La plage la plus ancienne non transmise est toujours en cours de lecture, si bien que la fentre se libre toujours.
+	 */
+	private void parseInOrder(final ChunkContext context, final ForkJoinPool executor, final int chunkCount) {
+		final List<ForkJoinTask<?>> tasks = new ArrayList<ForkJoinTask<?>>(chunkCount);
+		for (int i = 0; i < chunkCount; i++) {
+			context.window.acquireUninterruptibly();
+			if (context.aborted || (context.failure.get() != null)) {
+				context.window.release();
+				break;
+			}
+			tasks.add(executor.submit(new ChunkTask(context, i, i + 1)));
+		}
+		for (final ForkJoinTask<?> task : tasks) {
+			task.join();
+		}
+	}
+
+	/**
+	 * Lit la plage d'indice chunkIndex et retourne ses lignes si elles doivent tre transmises dans l'ordre
+	 */
+	private List<String[]> parseChunk(final ChunkContext context, final int chunkIndex) throws IOException {
+		final long end = context.headerLength + ((chunkIndex + 1L) * chunkSize);
+		final long start = (chunkIndex == 0) ? 0L : (end - chunkSize);
+		final List<String[]> rows = context.ordered ? new ArrayList<String[]>() : null;
+		final MappedCSVParser parser = new MappedCSVParser(filePath, charset, separator, chunkSize, start, end);
+		try {
+			if (context.header && (chunkIndex == 0) && parser.hasNextLine()) {
+				parser.readNextLine();
+			}
+			while ((context.failure.get() == null) && parser.hasNextLine()) {
+				final String[] cells = parser.getNextLineOfCells();
+				if (rows != null) {
+					rows.add(cells);
+				} else if (context.chunkHandler != null) {
+					context.chunkHandler.handleRow(chunkIndex, parser.getNumberOfLinesRead(), cells);
+				} else {
+					context.handler.handleRow(cells);
+				}
+			}
+			context.chunkLines[chunkIndex] = parser.getNumberOfLinesRead();
+			context.lines.addAndGet(parser.getNumberOfLinesRead());
+		} finally {
+			parser.close();
+		}
+		return rows;
+	}
+
+	/**
+	 * Reoit les lignes d'une lecture par plages avec leur position, pour les traitements qui doivent retrouver les numros de ligne du fichier (voir
+	 * parse(ChunkRowHandler, boolean)). Les lignes sont transmises depuis les threads de lecture.
+	 */
+	interface ChunkRowHandler {
+		void handleRow(int chunkIndex, long lineInChunk, String[] cells);
+	}
+
+	/**
+	 * Etat partag par les tches d'une mme lecture
+	 */
+	private static class ChunkContext {
+		private final CSVRowHandler handler;
+		private final ChunkRowHandler chunkHandler;
+		private final boolean ordered;
+		private final boolean header;
+		private final int headerLength;
+		private final List<List<String[]>> pendingChunks;
+		private final long[] chunkLines;
+		private final AtomicLong lines = new AtomicLong();
+		private final AtomicReference<IOException> failure = new AtomicReference<IOException>();
+		private final Semaphore window;
+		private volatile boolean aborted;
+		private int nextChunkToDeliver;
+
+		private ChunkContext(final CSVRowHandler handler, final ChunkRowHandler chunkHandler, final boolean ordered, final boolean header,
+				final int chunkCount, final int headerLength, final int windowSize) {
+			this.handler = handler;
+			this.chunkHandler = chunkHandler;
+			this.ordered = ordered;
+			this.header = header;
+			this.headerLength = headerLength;
+			window = new Semaphore(windowSize);
+			chunkLines = new long[chunkCount];
+			pendingChunks = new ArrayList<List<String[]>>(ordered ? chunkCount : 0);
+			for (int i = 0; ordered && (i < chunkCount); i++) {
+				pendingChunks.add(null);
+			}
+		}
+
+		/**
+		 * Enregistre les lignes d'une plage lue et transmet au handler toutes les plages conscutives disponibles depuis la dernire transmise, en rendant
+		 * leur place dans la fentre. Si le handler choue, la lecture est abandonne et plus aucune ligne n'est transmise.
+		 */
+		private synchronized void deliver(final int chunkIndex, final List<String[]> rows) {
+			pendingChunks.set(chunkIndex, rows);
+			while (!aborted && (nextChunkToDeliver < pendingChunks.size()) && (pendingChunks.get(nextChunkToDeliver) != null)) {
+				try {
+					for (final String[] cells : pendingChunks.get(nextChunkToDeliver)) {
+						handler.handleRow(cells);
+					}
+				} catch (final RuntimeException e) {
+					aborted = true;
+					throw e;
+				}
+				pendingChunks.set(nextChunkToDeliver, null);
+				nextChunkToDeliver++;
+				window.release();
+			}
+		}
+	}
+
+	/**
+	 * Tche fork-join qui dcoupe rcursivement un intervalle d'indices de plages jusqu' n'en lire qu'une seule. Pour une lecture dans l'ordre, chaque
+	 * tche ne lit qu'une plage et rend sa place dans la fentre si ses lignes ne peuvent pas tre transmises.
+	 */
+	private class ChunkTask extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+
+		private final ChunkContext context;
+		private final int fromChunk;
+		private final int toChunk;
+
+		private ChunkTask(final ChunkContext context, final int fromChunk, final int toChunk) {
+			this.context = context;
+			this.fromChunk = fromChunk;
+			this.toChunk = toChunk;
+		}
+
+		@Override
+		protected void compute() {
+			if ((toChunk - fromChunk) > 1) {
+				final int middle = (fromChunk + toChunk) >>> 1;
+				invokeAll(new ChunkTask(context, fromChunk, middle), new ChunkTask(context, middle, toChunk));
+			} else {
+				boolean stored = false;
+				try {
+					if ((context.failure.get() == null) && !context.aborted) {
+						final List<String[]> rows = parseChunk(context, fromChunk);
+						if (rows != null) {
+							stored = true;
+							context.deliver(fromChunk, rows);
+						}
+					}
+				} catch (final IOException ioe) {
+					context.failure.compareAndSet(null, ioe);
+				} finally {
+					// aprs un abandon, rendre la place en trop ne fait que dbloquer la soumission, qui s'arrte
+					if (context.ordered && (!stored || context.aborted)) {
+						context.window.release();
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Retourne le chemin vers le fichier utilis par ce ParallelCSVParser
+	 */
+	public String getFilePath() {
+		return filePath;
+	}
+
+	/**
+	 * Retourne le charset utilis par ce ParallelCSVParser
+	 */
+	public String getCharset() {
+		return charset;
+	}
+
+	/**
+	 * Retourne le sparateur CSV utilis par ce ParallelCSVParser
+	 */
+	public Character getSeparator() {
+		return separator;
+	}
+
+	/**
+	 * Retourne le nombre de lignes lues lors de la dernire lecture
+	 */
+	public Long getNumberOfLinesRead() {
+		return numberOfLinesRead;
+	}
+}
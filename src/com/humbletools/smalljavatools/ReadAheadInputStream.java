@@ -0,0 +1,240 @@
+package com.humbletools.smalljavatools;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * ReadAheadInputStream lit un canal en avance sur un thread ddi. Le thread de lecture remplit un anneau born de ByteBuffer directs pendant que le thread
+ * appelant (le parseur) consomme les tampons dj remplis : les attentes I/O ne bloquent plus l'analyse tant que le lecteur a de l'avance.</br></br> La
+ * taille des tampons et la profondeur de l'anneau sont configurables. Les compteurs getReaderStallNanos() (lecteur bloqu faute de tampon libre : l'analyse
+ * est le facteur limitant) et getConsumerStallNanos() (consommateur bloqu faute de tampon rempli : les I/O sont le facteur limitant) permettent de rgler
+ * ces deux paramtres.
+ *
+ * @author lmadeuf
+ */
+public class ReadAheadInputStream extends InputStream {
+
+	/**
+	 * Taille par dfaut d'un tampon de lecture
+	 */
+	public static final int DEFAULT_BUFFER_SIZE = 1024 * 1024;
+
+	/**
+	 * Nombre par dfaut de tampons de l'anneau
+	 */
+	public static final int DEFAULT_QUEUE_DEPTH = 4;
+
+	/**
+	 * Marqueur de fin de flux dpos par le thread de lecture
+	 */
+	private static final ByteBuffer END_OF_STREAM = ByteBuffer.allocate(0);
+
+	private final ReadableByteChannel source;
+	private final int bufferSize;
+	private final int queueDepth;
+	private final BlockingQueue<ByteBuffer> freeBuffers;
+	private final BlockingQueue<ByteBuffer> filledBuffers;
+	private final Thread readerThread;
+	private final AtomicLong readerStallNanos = new AtomicLong();
+	private final AtomicLong consumerStallNanos = new AtomicLong();
+	private final AtomicLong bytesRead = new AtomicLong();
+
+	private volatile Throwable failure;
+	private volatile boolean closed;
+	private ByteBuffer current;
+	private boolean endOfStream;
+
+	/**
+	 * Cre un ReadAheadInputStream sur le canal source avec DEFAULT_QUEUE_DEPTH tampons de DEFAULT_BUFFER_SIZE octets
+	 */
+	public ReadAheadInputStream(final ReadableByteChannel source) {
+		this(source, DEFAULT_BUFFER_SIZE, DEFAULT_QUEUE_DEPTH);
+	}
+
+	/**
+	 * Cre un ReadAheadInputStream sur le canal source avec queueDepth tampons de bufferSize octets, et dmarre son thread de lecture
+	 */
+	public ReadAheadInputStream(final ReadableByteChannel source, final int bufferSize, final int queueDepth) {
+		if (source == null) {
+			throw new IllegalArgumentException("L'argument source doit tre renseign !");
+		}
+		if ((bufferSize <= 0) || (queueDepth <= 0)) {
+			throw new IllegalArgumentException("Les arguments bufferSize et queueDepth doivent tre strictement positifs !");
+		}
+		this.source = source;
+		this.bufferSize = bufferSize;
+		this.queueDepth = queueDepth;
+		freeBuffers = new ArrayBlockingQueue<ByteBuffer>(queueDepth);
+		filledBuffers = new ArrayBlockingQueue<ByteBuffer>(queueDepth + 1);
+		for (int i = 0; i < queueDepth; i++) {
+			freeBuffers.add(ByteBuffer.allocateDirect(bufferSize));
+		}
+		readerThread = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				readAhead();
+			}
+		}, "ReadAheadInputStream");
+		readerThread.setDaemon(true);
+		readerThread.start();
+	}
+
+	/**
+	 * Boucle du thread de lecture : remplit les tampons libres et les transmet au consommateur jusqu' la fin du canal. Quelle que soit la cause de son
+	 * arrt, la fin du flux est signale au consommateur, qui sinon attendrait indfiniment un tampon rempli.
+	 */
+	private void readAhead() {
+		boolean ended = false;
+		try {
+			while (!closed) {
+				final long waitStart = System.nanoTime();
+				final ByteBuffer buffer = freeBuffers.take();
+				readerStallNanos.addAndGet(System.nanoTime() - waitStart);
+				buffer.clear();
+				int read = 0;
+				while (buffer.hasRemaining() && ((read = source.read(buffer)) >= 0)) {
+					// le tampon est rempli autant que possible avant d'tre transmis
+				}
+				buffer.flip();
+				bytesRead.addAndGet(buffer.remaining());
+				if (buffer.hasRemaining()) {
+					filledBuffers.put(buffer);
+				} else {
+					freeBuffers.put(buffer);
+				}
+				if (read < 0) {
+					filledBuffers.put(END_OF_STREAM);
+					ended = true;
+					return;
+				}
+			}
+		} catch (final InterruptedException ie) {
+			// interruption par close()
+		} catch (final Throwable t) {
+			if (!closed) {
+				failure = t;
+			}
+		} finally {
+			if (!ended) {
+				// au plus queueDepth tampons remplis : la place du marqueur est toujours libre
+				filledBuffers.offer(END_OF_STREAM);
+			}
+		}
+	}
+
+	@Override
+	public int read() throws IOException {
+		return nextBuffer() ? (current.get() & 0xFF) : -1;
+	}
+
+	@Override
+	public int read(final byte[] bytes, final int offset, final int length) throws IOException {
+		if (length == 0) {
+			return 0;
+		}
+		if (!nextBuffer()) {
+			return -1;
+		}
+		final int count = Math.min(length, current.remaining());
+		current.get(bytes, offset, count);
+		return count;
+	}
+
+	@Override
+	public int available() throws IOException {
+		return ((current != null) && !closed) ? current.remaining() : 0;
+	}
+
+	/**
+	 * Garantit que le tampon courant contient des octets, en rendant le tampon puis au thread de lecture. Retourne false  la fin du flux.
+	 */
+	private boolean nextBuffer() throws IOException {
+		if (closed) {
+			throw new IOException("Le flux est ferm !");
+		}
+		if ((current != null) && current.hasRemaining()) {
+			return true;
+		}
+		if (endOfStream) {
+			return false;
+		}
+		if (current != null) {
+			freeBuffers.offer(current);
+			current = null;
+		}
+		final ByteBuffer next;
+		final long waitStart = System.nanoTime();
+		try {
+			next = filledBuffers.take();
+		} catch (final InterruptedException ie) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Lecture anticipe interrompue");
+		} finally {
+			consumerStallNanos.addAndGet(System.nanoTime() - waitStart);
+		}
+		if (next == END_OF_STREAM) {
+			endOfStream = true;
+			if (failure instanceof IOException) {
+				throw (IOException) failure;
+			}
+			if (failure != null) {
+				throw new IOException("La lecture anticipe a chou !", failure);
+			}
+			return false;
+		}
+		current = next;
+		return true;
+	}
+
+	/**
+	 * Arrte le thread de lecture et ferme le canal source
+	 */
+	@Override
+	public void close() throws IOException {
+		if (!closed) {
+			closed = true;
+			readerThread.interrupt();
+			source.close();
+		}
+	}
+
+	/**
+	 * Retourne la taille d'un tampon de l'anneau
+	 */
+	public int getBufferSize() {
+		return bufferSize;
+	}
+
+	/**
+	 * Retourne le nombre de tampons de l'anneau
+	 */
+	public int getQueueDepth() {
+		return queueDepth;
+	}
+
+	/**
+	 * Retourne le nombre d'octets lus jusqu'ici par le thread de lecture
+	 */
+	public long getBytesRead() {
+		return bytesRead.get();
+	}
+
+	/**
+	 * Retourne le temps cumul, en nanosecondes, pendant lequel le thread de lecture a attendu un tampon libre
+	 */
+	public long getReaderStallNanos() {
+		return readerStallNanos.get();
+	}
+
+	/**
+	 * Retourne le temps cumul, en nanosecondes, pendant lequel le consommateur a attendu un tampon rempli
+	 */
+	public long getConsumerStallNanos() {
+		return consumerStallNanos.get();
+	}
+}